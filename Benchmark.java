@@ -0,0 +1,1103 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/*
+Benchmarks for the interpreter. The programs are built directly as ASTs
+so they only exercise the execution engines.
+USAGE: java Benchmark [name]
+ */
+public class Benchmark {
+
+    static final String[] ENGINES = {"map", "slots", "typed", "quick", "closures", "vm", "jvm", "tiered"};
+
+    public static void main(String[] args) throws Exception {
+        String which = args.length > 0 ? args[0] : "all";
+        if (which.equals("all") || which.equals("calls")) {
+            calls();
+        }
+        if (which.equals("all") || which.equals("loops")) {
+            loops();
+        }
+        if (which.equals("all") || which.equals("alloc")) {
+            alloc();
+        }
+        if (which.equals("all") || which.equals("fold")) {
+            fold();
+        }
+        if (which.equals("all") || which.equals("shake")) {
+            shake();
+        }
+        if (which.equals("all") || which.equals("licm")) {
+            licm();
+        }
+        if (which.equals("all") || which.equals("cse")) {
+            cse();
+        }
+        if (which.equals("all") || which.equals("inline")) {
+            inline();
+        }
+        if (which.equals("all") || which.equals("tail")) {
+            tail();
+        }
+        if (which.equals("all") || which.equals("tiers")) {
+            tiers();
+        }
+        if (which.equals("all") || which.equals("osr")) {
+            osr();
+        }
+        if (which.equals("all") || which.equals("pgo")) {
+            pgo();
+        }
+        if (which.equals("all") || which.equals("spec")) {
+            spec();
+        }
+        if (which.equals("all") || which.equals("unroll")) {
+            unroll();
+        }
+        if (which.equals("all") || which.equals("parse")) {
+            parse();
+        }
+        if (which.equals("all") || which.equals("lex")) {
+            lex();
+        }
+        if (which.equals("all") || which.equals("tokens")) {
+            tokens();
+        }
+        if (which.equals("all") || which.equals("stream")) {
+            stream();
+        }
+        if (which.equals("all") || which.equals("mapped")) {
+            mapped();
+        }
+        if (which.equals("disassemble")) {
+            System.out.print(new BytecodeVM(whileLoop()).disassemble());
+            System.out.print(new BytecodeVM(forLoop()).disassemble());
+            System.out.print(new BytecodeVM(callTree()).disassemble());
+        }
+    }
+
+    /*
+    Call-heavy recursion: deepest recursion that fits in an 8MB thread
+    stack, and calls/sec of a binary call tree
+     */
+    static void calls() throws Exception {
+        System.out.println("== calls ==");
+        for (String engine: ENGINES) {
+            System.out.println(engine + ": max recursion depth " + maxDepth(engine));
+
+            ExecutionEngine e = engine(engine, callTree());
+            int n = 18;
+            long calls = (1L << (n + 1)) - 1;
+            time(engine + ": call tree", calls, "calls", () -> e.run("tree", args(new IntegerDataType(n))));
+        }
+    }
+
+    /*
+    Statement throughput of tight while and for loops on every engine
+     */
+    static void loops() throws Exception {
+        System.out.println("== loops ==");
+        int n = 1_000_000;
+        for (String engine: ENGINES) {
+            ExecutionEngine whileEngine = engine(engine, whileLoop());
+            time(engine + ": while", 2L * n, "statements", () -> whileEngine.run("loop", args(new IntegerDataType(n), new IntegerDataType(0))));
+            ExecutionEngine forEngine = engine(engine, forLoop());
+            time(engine + ": for", n, "statements", () -> forEngine.run("loop", args(new IntegerDataType(n), new IntegerDataType(0))));
+        }
+    }
+
+    /*
+    Bytes allocated per loop iteration, and bytes and time per evaluated
+    operator. The operator figures are the difference between running a
+    1 and a 9 operator expression, so the loop itself cancels out
+     */
+    static void alloc() throws Exception {
+        System.out.println("== alloc ==");
+        int n = 500_000;
+        for (String engine: ENGINES) {
+            long[] one = allocated(engine(engine, chain(1)), n);
+            long[] nine = allocated(engine(engine, chain(9)), n);
+            double ops = 8.0 * n;
+            System.out.printf("%s: %.1f bytes/iteration, %.1f bytes/operator, %.1f ns/operator%n", engine,
+                    (double) one[0] / n, (nine[0] - one[0]) / ops, (nine[1] - one[1]) / ops);
+        }
+    }
+
+    /*
+    Loop over an expression made of constants, as parsed and after the
+    Optimizer has folded it
+     */
+    static void fold() throws Exception {
+        System.out.println("== fold ==");
+        int n = 1_000_000;
+        for (String engine: ENGINES) {
+            ExecutionEngine parsed = engine(engine, constants());
+            time(engine + ": as parsed", n, "statements", () -> parsed.run("loop", args(new IntegerDataType(n), new IntegerDataType(0))));
+            ProgramNode pn = constants();
+            new Optimizer().optimize(pn);
+            ExecutionEngine optimized = engine(engine, pn);
+            time(engine + ": optimized", n, "statements", () -> optimized.run("loop", args(new IntegerDataType(n), new IntegerDataType(0))));
+        }
+    }
+
+    /*
+    Time to get a generated script ready to run, where the entry function
+    only reaches one function in a hundred, with and without the
+    DeadCodeEliminator. Fails when an ill-typed function passes type
+    checking because the entry function doesn't reach it
+     */
+    static void shake() throws Exception {
+        System.out.println("== shake ==");
+        String unreachable = "define bad(a : integer)\n\tvariables r : integer\n\tr := 3.5\n\ndefine main()\n\tvariables t : integer\n\tt := 1\n";
+        for (String entry: new String[] {null, "main"}) {
+            try {
+                quietly(() -> new Interpreter(unreachable, false, false, entry));
+                throw new IllegalStateException("bad passed type checking with entry " + entry);
+            } catch (SyntaxErrorException expected) {
+            }
+        }
+        for (String engine: ENGINES) {
+            time(engine + ": setup", 1, "programs", () -> engine(engine, script(2000)));
+            time(engine + ": setup after shaking", 1, "programs", () -> {
+                ProgramNode pn = script(2000);
+                new DeadCodeEliminator("main").eliminate(pn);
+                engine(engine, pn);
+            });
+        }
+    }
+
+    /*
+    While loop with invariant expressions in its condition and body,
+    before and after LoopInvariantCodeMotion
+     */
+    static void licm() throws Exception {
+        System.out.println("== licm ==");
+        int n = 1_000_000;
+        for (String engine: ENGINES) {
+            ExecutionEngine parsed = engine(engine, invariant());
+            time(engine + ": as parsed", 2L * n, "statements", () -> parsed.run("loop", args(new IntegerDataType(n), new IntegerDataType(3), new IntegerDataType(7), new IntegerDataType(0))));
+            ProgramNode pn = invariant();
+            new LoopInvariantCodeMotion().optimize(pn);
+            ExecutionEngine hoisted = engine(engine, pn);
+            same(engine, parsed, hoisted, pn, "loop", () -> args(new IntegerDataType(n), new IntegerDataType(3), new IntegerDataType(7), new IntegerDataType(0)));
+            time(engine + ": hoisted", 2L * n, "statements", () -> hoisted.run("loop", args(new IntegerDataType(n), new IntegerDataType(3), new IntegerDataType(7), new IntegerDataType(0))));
+        }
+    }
+
+    /*
+    Loop body that works out the same expression three times, before and
+    after CommonSubexpressionElimination
+     */
+    static void cse() throws Exception {
+        System.out.println("== cse ==");
+        int n = 1_000_000;
+        CommonSubexpressionElimination counted = new CommonSubexpressionElimination();
+        counted.optimize(repeated());
+        System.out.println(counted.removed() + " evaluations removed");
+        for (String engine: ENGINES) {
+            ExecutionEngine parsed = engine(engine, repeated());
+            time(engine + ": as parsed", 3L * n, "statements", () -> parsed.run("loop", args(new IntegerDataType(n), new IntegerDataType(3), new IntegerDataType(7), new IntegerDataType(0))));
+            ProgramNode pn = repeated();
+            new CommonSubexpressionElimination().optimize(pn);
+            ExecutionEngine reused = engine(engine, pn);
+            same(engine, parsed, reused, pn, "loop", () -> args(new IntegerDataType(n), new IntegerDataType(3), new IntegerDataType(7), new IntegerDataType(0)));
+            time(engine + ": reused", 3L * n, "statements", () -> reused.run("loop", args(new IntegerDataType(n), new IntegerDataType(3), new IntegerDataType(7), new IntegerDataType(0))));
+        }
+    }
+
+    /*
+    Loop calling a one-statement helper, before and after the Inliner
+     */
+    static void inline() throws Exception {
+        System.out.println("== inline ==");
+        int n = 1_000_000;
+        for (String engine: ENGINES) {
+            ExecutionEngine parsed = engine(engine, helper());
+            time(engine + ": as parsed", 2L * n, "statements", () -> parsed.run("loop", args(new IntegerDataType(n), new IntegerDataType(0))));
+            ProgramNode pn = helper();
+            new Inliner().optimize(pn);
+            ExecutionEngine inlined = engine(engine, pn);
+            same(engine, parsed, inlined, pn, "loop", () -> args(new IntegerDataType(n), new IntegerDataType(0)));
+            same(engine, parsed, inlined, pn, "pair", () -> {
+                IntegerDataType cell = new IntegerDataType(1);
+                return args(cell, cell);
+            });
+            time(engine + ": inlined", 2L * n, "statements", () -> inlined.run("loop", args(new IntegerDataType(n), new IntegerDataType(0))));
+        }
+    }
+
+    /*
+    Deepest self recursion that fits in an 8MB thread stack, before and
+    after TailCallEliminator, and calls/sec of a recursion shallow enough
+    for both. The search stops at 4194304 levels
+     */
+    static void tail() throws Exception {
+        System.out.println("== tail ==");
+        for (String engine: ENGINES) {
+            System.out.println(engine + ": max recursion depth " + maxDepth(engine, Benchmark::countDown)
+                    + ", after eliminating tail calls " + maxDepth(engine, Benchmark::countDownLoop));
+            int n = 1000;
+            ExecutionEngine parsed = engine(engine, countDown());
+            time(engine + ": as parsed", n, "calls", () -> parsed.run("down", args(new IntegerDataType(n))));
+            ProgramNode pn = countDownLoop();
+            ExecutionEngine jumps = engine(engine, pn);
+            same(engine, parsed, jumps, pn, "down", () -> args(new IntegerDataType(n)));
+            kept(engine, jumps, pn, "down", args(new IntegerDataType(n)));
+            time(engine + ": eliminated", n, "calls", () -> jumps.run("down", args(new IntegerDataType(n))));
+        }
+    }
+
+    /*
+    A short script, made and run once, and a long one run repeatedly, on
+    the Interpreter, the JvmEngine and the TieredEngine. Prints the tier
+    log of the long one. Fails when a call changes a value argument in
+    either tier of the TieredEngine
+     */
+    static void tiers() throws Exception {
+        System.out.println("== tiers ==");
+        ProgramNode jumps = countDownLoop();
+        TieredEngine switching = new TieredEngine(jumps, 2, TieredEngine.DEFAULT_BACK_EDGE_THRESHOLD, false);
+        for (int i = 0; i < 4; i++) {
+            kept("tiered, call " + (i + 1), switching, jumps, "down", args(new IntegerDataType(100)));
+        }
+        if (switching.log().stream().noneMatch(line -> line.endsWith("down: interpreted -> compiled"))) {
+            throw new IllegalStateException("tiered: down was never compiled");
+        }
+        for (String engine: new String[] {"typed", "jvm", "tiered"}) {
+            time(engine + ": short script", 1, "scripts", () -> engine(engine, callTree()).run("tree", args(new IntegerDataType(4))));
+        }
+        int n = 18;
+        long calls = (1L << (n + 1)) - 1;
+        for (String engine: new String[] {"typed", "jvm", "tiered"}) {
+            ExecutionEngine e = engine(engine, callTree());
+            time(engine + ": long script", calls, "calls", () -> e.run("tree", args(new IntegerDataType(n))));
+            if (e instanceof TieredEngine) {
+                ((TieredEngine) e).log().forEach(line -> System.out.println("  " + line));
+            }
+        }
+    }
+
+    /*
+    One call to a function that is a single long while loop, so only
+    on-stack replacement can move it off the Interpreter. Each engine is
+    new, the time includes any compiling. Prints the tier log
+     */
+    static void osr() throws Exception {
+        System.out.println("== osr ==");
+        int n = 10_000_000;
+        for (String engine: new String[] {"typed", "jvm", "tiered"}) {
+            long start = System.nanoTime();
+            ExecutionEngine e = engine(engine, whileLoop());
+            e.run("loop", args(new IntegerDataType(n), new IntegerDataType(0)));
+            long time = System.nanoTime() - start;
+            System.out.printf("%s: one run: %.2f ms, %.0f statements/sec%n", engine, time / 1e6, 2.0 * n / (time / 1e9));
+            if (e instanceof TieredEngine) {
+                ((TieredEngine) e).log().forEach(line -> System.out.println("  " + line));
+            }
+        }
+    }
+
+    /*
+    An if chain whose last branch is the one nearly always taken. A
+    profile of one run is saved and loaded again, then every engine runs
+    the chain as parsed and reordered by it. Then one run on new
+    TieredEngines, without and with the profile, and their tier logs
+     */
+    static void pgo() throws Exception {
+        System.out.println("== pgo ==");
+        int n = 1_000_000;
+        Profile recorded = new Profile();
+        ProgramNode profiled = classifier();
+        recorded.number(profiled);
+        Interpreter i = new Interpreter(profiled, true, false, true);
+        i.profile = recorded;
+        i.run("classify", args(new IntegerDataType(n), new IntegerDataType(0)));
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("shank", ".profile");
+        recorded.save(file);
+        Profile profile = Profile.load(file);
+        java.nio.file.Files.delete(file);
+        for (String engine: ENGINES) {
+            ExecutionEngine parsed = engine(engine, classifier());
+            time(engine + ": as parsed", n, "calls", () -> parsed.run("classify", args(new IntegerDataType(n), new IntegerDataType(0))));
+            ProgramNode pn = classifier();
+            profile.number(pn);
+            new BranchReorderer(profile).optimize(pn);
+            ExecutionEngine guided = engine(engine, pn);
+            time(engine + ": reordered", n, "calls", () -> guided.run("classify", args(new IntegerDataType(n), new IntegerDataType(0))));
+        }
+        for (boolean eager: new boolean[] {false, true}) {
+            long start = System.nanoTime();
+            ProgramNode pn = classifier();
+            TieredEngine e;
+            if (eager) {
+                profile.number(pn);
+                e = new TieredEngine(pn, TieredEngine.DEFAULT_CALL_THRESHOLD, TieredEngine.DEFAULT_BACK_EDGE_THRESHOLD, true, profile);
+            } else {
+                e = new TieredEngine(pn);
+            }
+            e.run("classify", args(new IntegerDataType(n), new IntegerDataType(0)));
+            long time = System.nanoTime() - start;
+            System.out.printf("tiered%s: one run: %.2f ms%n", eager ? " with profile" : "", time / 1e6);
+            e.log().forEach(line -> System.out.println("  " + line));
+        }
+    }
+
+    /*
+    A loop that tests a mode argument on every iteration, called with a
+    literal mode, before and after the Specializer
+     */
+    static void spec() throws Exception {
+        System.out.println("== spec ==");
+        int n = 1_000_000;
+        for (String engine: ENGINES) {
+            ExecutionEngine parsed = engine(engine, modes());
+            time(engine + ": as parsed", n, "iterations", () -> parsed.run("main", args(new IntegerDataType(n), new IntegerDataType(0))));
+            ProgramNode pn = modes();
+            new Specializer().optimize(pn);
+            ExecutionEngine specialized = engine(engine, pn);
+            same(engine, parsed, specialized, pn, "main", () -> args(new IntegerDataType(n), new IntegerDataType(0)));
+            ProgramNode lookalikes = lookalikes();
+            new Specializer().optimize(lookalikes);
+            same(engine, engine(engine, lookalikes()), engine(engine, lookalikes), lookalikes, "main", () -> args(new StringDataType(""), new StringDataType("")));
+            time(engine + ": specialized", n, "iterations", () -> specialized.run("main", args(new IntegerDataType(n), new IntegerDataType(0))));
+        }
+    }
+
+    /*
+    A loop with a four-trip inner loop, fully unrolled, and a loop with
+    literal bounds, unrolled by four, before and after the LoopUnroller.
+    The Optimizer runs on both, after unrolling for the second
+     */
+    static void unroll() throws Exception {
+        System.out.println("== unroll ==");
+        int n = 250_000;
+        for (String engine: ENGINES) {
+            for (String fn: new String[] {"kernel", "sum"}) {
+                ProgramNode pn = kernels();
+                new Optimizer().optimize(pn);
+                ExecutionEngine parsed = engine(engine, pn);
+                time(engine + ": " + fn + " as parsed", 1_000_000, "iterations", () -> parsed.run(fn, args(new IntegerDataType(n), new IntegerDataType(0))));
+                ProgramNode unrolled = kernels();
+                new LoopUnroller().optimize(unrolled);
+                new Optimizer().optimize(unrolled);
+                ExecutionEngine copies = engine(engine, unrolled);
+                same(engine, parsed, copies, unrolled, fn, () -> args(new IntegerDataType(n), new IntegerDataType(0)));
+                time(engine + ": " + fn + " unrolled", 1_000_000, "iterations", () -> copies.run(fn, args(new IntegerDataType(n), new IntegerDataType(0))));
+            }
+        }
+    }
+
+    /*
+    Parser.parse() on generated sources from 1k to 1M tokens. Linear
+    parsing keeps the time per token flat. The Parser prints the tokens
+    as it lexes, that goes nowhere here
+     */
+    static void parse() throws Exception {
+        System.out.println("== parse ==");
+        for (int tokens = 1000; tokens <= 1_000_000; tokens *= 10) {
+            String source = source(tokens);
+            long best = Long.MAX_VALUE;
+            int count = 0;
+            for (int i = 0; i < 3; i++) {
+                Parser p = quietly(() -> new Parser(source));
+                count = p.tokens.size();
+                long start = System.nanoTime();
+                p.parse();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%d tokens: parsed in %.2f ms, %.1f ns/token%n", count, best / 1e6, (double) best / count);
+        }
+    }
+
+    /*
+    Lexer throughput of the original scanner and the table-driven one on
+    the same sources, best of five after a warm-up run
+     */
+    static void lex() throws Exception {
+        System.out.println("== lex ==");
+        for (int tokens = 10_000; tokens <= 1_000_000; tokens *= 10) {
+            String source = source(tokens);
+            for (boolean tables: new boolean[] {false, true}) {
+                int count = new Lexer(source, tables).tokens().size();
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < 5; i++) {
+                    long start = System.nanoTime();
+                    new Lexer(source, tables);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.printf("%s: %d chars, %d tokens in %.2f ms, %.1f MB/s%n", tables ? "tables" : "original",
+                        source.length(), count, best / 1e6, source.length() / (best / 1e3));
+            }
+        }
+    }
+
+    /*
+    Heap kept by the tokens of a source: the original Lexer's list of
+    Token objects, and the TokenBuffer the Parser reads. The buffer also
+    keeps the source String, which isn't counted as the benchmark holds
+    it anyway
+     */
+    static void tokens() throws Exception {
+        System.out.println("== tokens ==");
+        for (int tokens = 10_000; tokens <= 1_000_000; tokens *= 10) {
+            String source = source(tokens);
+            long before = retained();
+            ArrayList<Token> list = new Lexer(source).tokens();
+            long objects = retained() - before;
+            int count = list.size();
+            list = null;
+            before = retained();
+            TokenBuffer buffer = new Lexer(source, true).buffer();
+            long packed = retained() - before;
+            count = Math.max(count, buffer.size());
+            System.out.printf("%d tokens: Token objects %.1f bytes/token, packed %.1f bytes/token, %.1fx smaller%n", count,
+                    (double) objects / count, (double) packed / count, (double) objects / packed);
+            java.lang.ref.Reference.reachabilityFence(buffer);
+        }
+    }
+
+    /*
+    Lexing a generated source from a Reader with a TokenStream, releasing
+    each token as the Parser's cursor does. The source is made as it is
+    read, so the heap in use should stay the same however long it is
+     */
+    static void stream() throws Exception {
+        System.out.println("== stream ==");
+        for (long tokens = 1_000_000; tokens <= 100_000_000; tokens *= 10) {
+            long used = 0;
+            long paused = 0;
+            long start = System.nanoTime();
+            TokenStream stream = new TokenStream(sourceReader(tokens));
+            int i = 0;
+            for (; stream.has(i); i++) {
+                stream.release(i);
+                if (i == tokens / 2) {
+                    long gc = System.nanoTime();
+                    used = retained();
+                    paused = System.nanoTime() - gc;
+                }
+            }
+            long time = System.nanoTime() - start - paused;
+            System.out.printf("%d tokens in %.0f ms, %.1f M tokens/s, %.1f MB heap in use halfway%n", i, time / 1e6,
+                    i / (time / 1e3), used / 1e6);
+        }
+    }
+
+    /*
+    Lexing a file read into a String against lexing it from its mapped
+    bytes: fastest of five after a warm-up run, and the bytes that run
+    allocated
+     */
+    static void mapped() throws Exception {
+        System.out.println("== mapped ==");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        for (int tokens = 10_000; tokens <= 1_000_000; tokens *= 10) {
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("benchmark", ".shank");
+            java.nio.file.Files.writeString(file, source(tokens));
+            long size = java.nio.file.Files.size(file);
+            for (boolean map: new boolean[] {false, true}) {
+                int count = (map ? new Lexer(file) : new Lexer(java.nio.file.Files.readString(file), true)).buffer().size();
+                long best = Long.MAX_VALUE;
+                long bytes = Long.MAX_VALUE;
+                for (int i = 0; i < 5; i++) {
+                    long allocated = threads.getThreadAllocatedBytes(id);
+                    long start = System.nanoTime();
+                    Lexer lexer = map ? new Lexer(file) : new Lexer(java.nio.file.Files.readString(file), true);
+                    best = Math.min(best, System.nanoTime() - start);
+                    bytes = Math.min(bytes, threads.getThreadAllocatedBytes(id) - allocated);
+                    java.lang.ref.Reference.reachabilityFence(lexer);
+                }
+                System.out.printf("%s: %d bytes, %d tokens in %.2f ms, %.1f MB/s, %.1f bytes allocated per file byte%n",
+                        map ? "mapped" : "readString", size, count, best / 1e6, size / (best / 1e3), (double) bytes / size);
+            }
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    /*
+    Heap in use after collecting what can be
+     */
+    static long retained() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    static <T> T quietly(Maker<T> maker) throws Exception {
+        java.io.PrintStream out = System.out;
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+        try {
+            return maker.make();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /*
+    Fewest bytes allocated and nanoseconds taken by one run, after warming up
+     */
+    static long[] allocated(ExecutionEngine e, int n) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int i = 0; i < 8; i++) {
+            long bytes = threads.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            e.run("sum", args(new IntegerDataType(n), new IntegerDataType(0)));
+            long time = System.nanoTime() - start;
+            bytes = threads.getThreadAllocatedBytes(id) - bytes;
+            if (i >= 3) {
+                best[0] = Math.min(best[0], bytes);
+                best[1] = Math.min(best[1], time);
+            }
+        }
+        return best;
+    }
+
+    static ExecutionEngine engine(String name, ProgramNode pn) throws SyntaxErrorException {
+        return switch (name) {
+            case "map" -> new Interpreter(pn, false);
+            case "slots" -> new Interpreter(pn, true);
+            case "typed" -> new Interpreter(pn, true, false, true);
+            case "quick" -> new Interpreter(pn, true, true);
+            case "closures" -> new ClosureInterpreter(pn);
+            case "vm" -> new BytecodeVM(pn);
+            case "jvm" -> new JvmEngine(pn);
+            case "tiered" -> new TieredEngine(pn);
+            default -> throw new IllegalArgumentException("Unknown engine " + name);
+        };
+    }
+
+    static int maxDepth(String engine) throws Exception {
+        return maxDepth(engine, Benchmark::countDown);
+    }
+
+    static int maxDepth(String engine, Source source) throws Exception {
+        int[] deepest = new int[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                int low = 1, high = 1 << 22;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    try {
+                        engine(engine, source.build()).run("down", args(new IntegerDataType(mid)));
+                        low = mid;
+                    } catch (StackOverflowError e) {
+                        high = mid - 1;
+                    }
+                }
+                deepest[0] = low;
+            } catch (SyntaxErrorException e) {
+                throw new RuntimeException(e);
+            }
+        }, "depth", 8L << 20);
+        t.start();
+        t.join();
+        return deepest[0];
+    }
+
+    /*
+    define down(n : integer)
+        if n > 0 then
+            down n - 1
+     */
+    static ProgramNode countDown() throws SyntaxErrorException {
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new IfNode(cmp(Token.tokenType.GREATERTHAN, ref("n"), new IntNode(0)),
+                block(call("down", math(Token.tokenType.MINUS, ref("n"), new IntNode(1)))), null));
+        return program(function("down", vars(intVar("n", false)), vars(), body));
+    }
+
+    static ProgramNode countDownLoop() throws SyntaxErrorException {
+        ProgramNode pn = countDown();
+        new TailCallEliminator().optimize(pn);
+        return pn;
+    }
+
+    /*
+    define tree(n : integer)
+        if n > 0 then
+            tree n - 1
+            tree n - 1
+     */
+    static ProgramNode callTree() throws SyntaxErrorException {
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new IfNode(cmp(Token.tokenType.GREATERTHAN, ref("n"), new IntNode(0)),
+                block(call("tree", math(Token.tokenType.MINUS, ref("n"), new IntNode(1))),
+                        call("tree", math(Token.tokenType.MINUS, ref("n"), new IntNode(1)))), null));
+        return program(function("tree", vars(intVar("n", false)), vars(), body));
+    }
+
+    /*
+    define loop(n : integer; var total : integer)
+        variables i, s : integer
+        while i < n
+            s := s + i * 2
+            i := i + 1
+        total := s
+     */
+    static ProgramNode whileLoop() throws SyntaxErrorException {
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new WhileNode(cmp(Token.tokenType.LESSTHAN, ref("i"), ref("n")),
+                block(assign("s", math(Token.tokenType.PLUS, ref("s"), math(Token.tokenType.MUL, ref("i"), new IntNode(2)))),
+                        assign("i", math(Token.tokenType.PLUS, ref("i"), new IntNode(1))))));
+        body.add(assign("total", ref("s")));
+        return program(function("loop", vars(intVar("n", false), intVar("total", true)), vars(intVar("i", true), intVar("s", true)), body));
+    }
+
+    /*
+    define loop(n : integer; var total : integer)
+        variables i, s : integer
+        for i from 1 to n
+            s := s + i
+        total := s
+     */
+    static ProgramNode forLoop() throws SyntaxErrorException {
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new ForNode(ref("i"), new IntNode(1), ref("n"),
+                block(assign("s", math(Token.tokenType.PLUS, ref("s"), ref("i"))))));
+        body.add(assign("total", ref("s")));
+        return program(function("loop", vars(intVar("n", false), intVar("total", true)), vars(intVar("i", true), intVar("s", true)), body));
+    }
+
+    /*
+    define sum(n : integer; var total : integer)
+        variables i, x : integer
+        for i from 1 to n
+            x := i + 1 + 1 ... with the given number of operators
+        total := x
+     */
+    static ProgramNode chain(int operators) throws SyntaxErrorException {
+        Node e = ref("i");
+        for (int k = 0; k < operators; k++) {
+            e = math(Token.tokenType.PLUS, e, new IntNode(1));
+        }
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new ForNode(ref("i"), new IntNode(1), ref("n"), block(assign("x", e))));
+        body.add(assign("total", ref("x")));
+        return program(function("sum", vars(intVar("n", false), intVar("total", true)), vars(intVar("i", true), intVar("x", true)), body));
+    }
+
+    /*
+    define loop(n : integer; var total : integer)
+        constants k = 3
+        variables i, x : integer
+        for i from 1 to n
+            x := i + (((k) * -4) - (-5)) * k
+        total := x
+     */
+    static ProgramNode constants() throws SyntaxErrorException {
+        Node folded = math(Token.tokenType.MUL, math(Token.tokenType.MINUS, math(Token.tokenType.MUL, ref("k"), new IntNode(-4)), new IntNode(-5)), ref("k"));
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new ForNode(ref("i"), new IntNode(1), ref("n"), block(assign("x", math(Token.tokenType.PLUS, ref("i"), folded)))));
+        body.add(assign("total", ref("x")));
+        VariableNode k = new VariableNode("k", Token.tokenType.INTEGERLIT, "3", false);
+        return program(function("loop", vars(intVar("n", false), intVar("total", true)), vars(k, intVar("i", true), intVar("x", true)), body));
+    }
+
+    /*
+    define loop(n, a, b : integer; var total : integer)
+        variables i, x : integer
+        while i < n - a + a
+            x := x + a * b * a
+            i := i + 1
+        total := x
+     */
+    static ProgramNode invariant() throws SyntaxErrorException {
+        Node bound = math(Token.tokenType.PLUS, math(Token.tokenType.MINUS, ref("n"), ref("a")), ref("a"));
+        Node step = math(Token.tokenType.MUL, math(Token.tokenType.MUL, ref("a"), ref("b")), ref("a"));
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new WhileNode(cmp(Token.tokenType.LESSTHAN, ref("i"), bound), block(
+                assign("x", math(Token.tokenType.PLUS, ref("x"), step)),
+                assign("i", math(Token.tokenType.PLUS, ref("i"), new IntNode(1))))));
+        body.add(assign("total", ref("x")));
+        return program(function("loop", vars(intVar("n", false), intVar("a", false), intVar("b", false), intVar("total", true)),
+                vars(intVar("i", true), intVar("x", true)), body));
+    }
+
+    /*
+    define loop(n, y, z : integer; var total : integer)
+        variables i, a, b, c : integer
+        for i from 1 to n
+            a := i * y + z
+            b := i * y + z + a
+            c := (i * y + z) * b
+        total := c
+     */
+    static ProgramNode repeated() throws SyntaxErrorException {
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new ForNode(ref("i"), new IntNode(1), ref("n"), block(
+                assign("a", math(Token.tokenType.PLUS, math(Token.tokenType.MUL, ref("i"), ref("y")), ref("z"))),
+                assign("b", math(Token.tokenType.PLUS, math(Token.tokenType.PLUS, math(Token.tokenType.MUL, ref("i"), ref("y")), ref("z")), ref("a"))),
+                assign("c", math(Token.tokenType.MUL, math(Token.tokenType.PLUS, math(Token.tokenType.MUL, ref("i"), ref("y")), ref("z")), ref("b"))))));
+        body.add(assign("total", ref("c")));
+        return program(function("loop", vars(intVar("n", false), intVar("y", false), intVar("z", false), intVar("total", true)),
+                vars(intVar("i", true), intVar("a", true), intVar("b", true), intVar("c", true)), body));
+    }
+
+    /*
+    define addTwo(a : integer; var r : integer)
+        r := a + 2
+    define loop(n : integer; var total : integer)
+        variables i, t, s : integer
+        for i from 1 to n
+            addTwo i, t
+            s := s + t
+        total := s
+    define addTo(x : integer; var y : integer)
+        y := x + 1
+        y := y + x
+    define pair(var a, b : integer)
+        addTo a, b
+    pair is also called with the same variable for a and b
+     */
+    static ProgramNode helper() throws SyntaxErrorException {
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new ForNode(ref("i"), new IntNode(1), ref("n"), block(
+                call("addTwo", ref("i"), ref("t")),
+                assign("s", math(Token.tokenType.PLUS, ref("s"), ref("t"))))));
+        body.add(assign("total", ref("s")));
+        FunctionNode addTwo = function("addTwo", vars(intVar("a", false), intVar("r", true)), vars(),
+                block(assign("r", math(Token.tokenType.PLUS, ref("a"), new IntNode(2)))));
+        FunctionNode addTo = function("addTo", vars(intVar("x", false), intVar("y", true)), vars(),
+                block(assign("y", math(Token.tokenType.PLUS, ref("x"), new IntNode(1))),
+                        assign("y", math(Token.tokenType.PLUS, ref("y"), ref("x")))));
+        FunctionNode pair = function("pair", vars(intVar("a", true), intVar("b", true)), vars(),
+                block(call("addTo", ref("a"), ref("b"))));
+        return program(addTwo, addTo, pair, function("loop", vars(intVar("n", false), intVar("total", true)),
+                vars(intVar("i", true), intVar("t", true), intVar("s", true)), body));
+    }
+
+    /*
+    define bucket(x : integer; var s : integer)
+        if x = 0 then s := s + 1
+        elsif x = 1 then s := s + 2
+        ...
+        elsif x = 6 then s := s + 7
+        elsif x >= 7 then s := s + 8
+    define classify(n : integer; var total : integer)
+        variables i, s : integer
+        for i from 1 to n
+            bucket i mod 64, s
+        total := s
+     */
+    static ProgramNode classifier() throws SyntaxErrorException {
+        IfNode chain = null;
+        for (int k = 7; k >= 0; k--) {
+            Token.tokenType op = k == 7 ? Token.tokenType.GREATEREQ : Token.tokenType.EQUALS;
+            chain = new IfNode(cmp(op, ref("x"), new IntNode(k)),
+                    block(assign("s", math(Token.tokenType.PLUS, ref("s"), new IntNode(k + 1)))), chain);
+        }
+        FunctionNode bucket = function("bucket", vars(intVar("x", false), intVar("s", true)), vars(), block(chain));
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new ForNode(ref("i"), new IntNode(1), ref("n"),
+                block(call("bucket", math(Token.tokenType.MODULO, ref("i"), new IntNode(64)), ref("s")))));
+        body.add(assign("total", ref("s")));
+        return program(bucket, function("classify", vars(intVar("n", false), intVar("total", true)),
+                vars(intVar("i", true), intVar("s", true)), body));
+    }
+
+    /*
+    define scale(mode, n : integer; var total : integer)
+        variables i, s : integer
+        for i from 1 to n
+            if mode = 0 then s := s + i
+            elsif mode = 1 then s := s + i * 2
+            elsif mode = 2 then s := s + i * 3
+            elsif mode = 3 then s := s - i
+        total := s
+    define main(n : integer; var total : integer)
+        scale 2, n, total
+     */
+    static ProgramNode modes() throws SyntaxErrorException {
+        IfNode chain = new IfNode(cmp(Token.tokenType.EQUALS, ref("mode"), new IntNode(3)),
+                block(assign("s", math(Token.tokenType.MINUS, ref("s"), ref("i")))), null);
+        for (int k = 2; k >= 0; k--) {
+            Node step = k == 0 ? ref("i") : math(Token.tokenType.MUL, ref("i"), new IntNode(k + 1));
+            chain = new IfNode(cmp(Token.tokenType.EQUALS, ref("mode"), new IntNode(k)),
+                    block(assign("s", math(Token.tokenType.PLUS, ref("s"), step))), chain);
+        }
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new ForNode(ref("i"), new IntNode(1), ref("n"), block(chain)));
+        body.add(assign("total", ref("s")));
+        FunctionNode scale = function("scale", vars(intVar("mode", false), intVar("n", false), intVar("total", true)),
+                vars(intVar("i", true), intVar("s", true)), body);
+        return program(scale, function("main", vars(intVar("n", false), intVar("total", true)), vars(),
+                block(call("scale", new IntNode(2), ref("n"), ref("total")))));
+    }
+
+    /*
+    define kernel(n : integer; var total : integer)
+        variables i, j, s : integer
+        for i from 1 to n
+            for j from 1 to 4
+                s := s + j * i
+        total := s
+    define sum(n : integer; var total : integer)
+        variables i, s : integer
+        for i from 1 to 1000000
+            s := (s * 31 + 7) mod 65521
+        total := s
+     */
+    static ProgramNode kernels() throws SyntaxErrorException {
+        ArrayList<StatementNode> kernel = new ArrayList<>();
+        kernel.add(new ForNode(ref("i"), new IntNode(1), ref("n"), block(new ForNode(ref("j"), new IntNode(1), new IntNode(4),
+                block(assign("s", math(Token.tokenType.PLUS, ref("s"), math(Token.tokenType.MUL, ref("j"), ref("i")))))))));
+        kernel.add(assign("total", ref("s")));
+        ArrayList<StatementNode> sum = new ArrayList<>();
+        sum.add(new ForNode(ref("i"), new IntNode(1), new IntNode(1_000_000),
+                block(assign("s", math(Token.tokenType.MODULO, math(Token.tokenType.PLUS, math(Token.tokenType.MUL, ref("s"), new IntNode(31)), new IntNode(7)), new IntNode(65521))))));
+        sum.add(assign("total", ref("s")));
+        return program(function("kernel", vars(intVar("n", false), intVar("total", true)),
+                        vars(intVar("i", true), intVar("j", true), intVar("s", true)), kernel),
+                function("sum", vars(intVar("n", false), intVar("total", true)), vars(intVar("i", true), intVar("s", true)), sum));
+    }
+
+    /*
+    define f(a, b, c : string; var r : string)
+        r := a + b + c
+    define main(var t, u : string)
+        variables v : string
+        v := "v"
+        f "x StringNode:y", v, v, t
+        f "x", "y _", v, u
+    Both calls leave the same text if their literals are only put next to
+    each other, the Specializer must make a copy for each
+     */
+    static ProgramNode lookalikes() throws SyntaxErrorException {
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(assign("v", new StringNode("v")));
+        body.add(call("f", new StringNode("x StringNode:y"), ref("v"), ref("v"), ref("t")));
+        body.add(call("f", new StringNode("x"), new StringNode("y _"), ref("v"), ref("u")));
+        return program(function("f", vars(stringVar("a", false), stringVar("b", false), stringVar("c", false), stringVar("r", true)), vars(),
+                        block(assign("r", math(Token.tokenType.PLUS, math(Token.tokenType.PLUS, ref("a"), ref("b")), ref("c"))))),
+                function("main", vars(stringVar("t", true), stringVar("u", true)), vars(stringVar("v", true)), body));
+    }
+
+    /*
+    define fK(var t : integer)
+        variables i : integer
+        for i from 1 to 10
+            t := t + K
+    for K below functions, and a main(var t : integer) calling every
+    hundredth of them
+     */
+    static ProgramNode script(int functions) throws SyntaxErrorException {
+        ProgramNode pn = program();
+        ArrayList<StatementNode> main = new ArrayList<>();
+        for (int k = 0; k < functions; k++) {
+            ArrayList<StatementNode> body = block(new ForNode(ref("i"), new IntNode(1), new IntNode(10),
+                    block(assign("t", math(Token.tokenType.PLUS, ref("t"), new IntNode(k))))));
+            pn.addFunc(function("f" + k, vars(intVar("t", true)), vars(intVar("i", true)), body));
+            if (k % 100 == 0) {
+                main.add(call("f" + k, ref("t")));
+            }
+        }
+        pn.addFunc(function("main", vars(intVar("t", true)), vars(), main));
+        return pn;
+    }
+
+    /*
+    Shank source of about the given number of tokens, 34 per function:
+    define fxK(a : integer, var r : integer)
+        variables t : integer
+        t := a * 2 + K
+        r := t - a
+    with K spelled in letters in the name, identifiers can't hold digits.
+    No keyword starts with fx
+     */
+    static String source(int tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < Math.max(1, tokens / 34); k++) {
+            sb.append(sourceFunction(k));
+        }
+        return sb.toString();
+    }
+
+    static String sourceFunction(int k) {
+        StringBuilder sb = new StringBuilder();
+        if (k > 0) {
+            sb.append("\n"); // a blank line at the very end keeps the Parser looking for another function
+        }
+        StringBuilder name = new StringBuilder();
+        for (int n = k; ; n = n / 26 - 1) {
+            name.insert(0, (char) ('a' + n % 26));
+            if (n < 26) {
+                break;
+            }
+        }
+        return sb.append("define fx").append(name).append("(a : integer, var r : integer)\n")
+                .append("\tvariables t : integer\n")
+                .append("\tt := a * 2 + ").append(k).append("\n")
+                .append("\tr := t - a\n").toString();
+    }
+
+    /*
+    The text of source(tokens) made as it is read, so it is never all in
+    memory
+     */
+    static java.io.Reader sourceReader(long tokens) {
+        return new java.io.Reader() {
+            long k;
+            String function = "";
+            int at;
+
+            @Override
+            public int read(char[] into, int offset, int length) {
+                if (at == function.length()) {
+                    if (k == Math.max(1, tokens / 34)) {
+                        return -1;
+                    }
+                    function = sourceFunction((int) k++);
+                    at = 0;
+                }
+                int n = Math.min(length, function.length() - at);
+                function.getChars(at, at + n, into, offset);
+                at += n;
+                return n;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /*
+    Runs the body once to warm up, then reports the best of five runs
+     */
+    static void time(String label, long ops, String unit, Body body) throws Exception {
+        body.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%s: %.2f ms, %.0f %s/sec%n", label, best / 1e6, ops / (best / 1e9), unit);
+    }
+
+    /*
+    Runs fn of the program before and after optimizing with the same
+    arguments, and fails when its var parameters don't end up the same.
+    An optimization must not change what a program does
+     */
+    static void same(String engine, ExecutionEngine parsed, ExecutionEngine optimized, ProgramNode pn, String fn, Maker<ArrayList<InterpreterDataType>> args) throws Exception {
+        ArrayList<InterpreterDataType> expected = args.make();
+        ArrayList<InterpreterDataType> actual = args.make();
+        parsed.run(fn, expected);
+        optimized.run(fn, actual);
+        ArrayList<VariableNode> params = pn.getFunctions().get(fn).getParams();
+        for (int i = 0; i < expected.size(); i++) {
+            if (params.get(i).isChangeable() && !expected.get(i).ToString().equals(actual.get(i).ToString())) {
+                throw new IllegalStateException(engine + ": " + fn + " argument " + (i + 1) + " is " + actual.get(i).ToString()
+                        + " after optimizing, " + expected.get(i).ToString() + " as parsed");
+            }
+        }
+    }
+
+    /*
+    Runs fn and fails when one of its value parameters changed the
+    argument it was given
+     */
+    static void kept(String engine, ExecutionEngine e, ProgramNode pn, String fn, ArrayList<InterpreterDataType> args) throws Exception {
+        ArrayList<String> before = new ArrayList<>();
+        for (InterpreterDataType a: args) {
+            before.add(a.ToString());
+        }
+        e.run(fn, args);
+        ArrayList<VariableNode> params = pn.getFunctions().get(fn).getParams();
+        for (int i = 0; i < args.size(); i++) {
+            if (!params.get(i).isChangeable() && !before.get(i).equals(args.get(i).ToString())) {
+                throw new IllegalStateException(engine + ": " + fn + " changed value argument " + (i + 1) + " from " + before.get(i)
+                        + " to " + args.get(i).ToString());
+            }
+        }
+    }
+
+    interface Body {
+        void run() throws Exception;
+    }
+
+    interface Maker<T> {
+        T make() throws Exception;
+    }
+
+    interface Source {
+        ProgramNode build() throws SyntaxErrorException;
+    }
+
+    /*
+    AST helpers
+     */
+
+    static ProgramNode program(FunctionNode... fns) {
+        ProgramNode pn = new ProgramNode();
+        for (FunctionNode fn: fns) {
+            pn.addFunc(fn);
+        }
+        return pn;
+    }
+
+    static FunctionNode function(String name, ArrayList<VariableNode> params, ArrayList<VariableNode> vars, ArrayList<StatementNode> body) {
+        return new FunctionNode(name, params, vars, body);
+    }
+
+    static VariableNode intVar(String name, boolean changeable) throws SyntaxErrorException {
+        return new VariableNode(name, Token.tokenType.INTEGER, changeable);
+    }
+
+    static VariableNode stringVar(String name, boolean changeable) throws SyntaxErrorException {
+        return new VariableNode(name, Token.tokenType.STRING, changeable);
+    }
+
+    static ArrayList<VariableNode> vars(VariableNode... vs) {
+        ArrayList<VariableNode> l = new ArrayList<>();
+        for (VariableNode v: vs) {
+            l.add(v);
+        }
+        return l;
+    }
+
+    static ArrayList<StatementNode> block(StatementNode... ss) {
+        ArrayList<StatementNode> l = new ArrayList<>();
+        for (StatementNode s: ss) {
+            l.add(s);
+        }
+        return l;
+    }
+
+    static ArrayList<InterpreterDataType> args(InterpreterDataType... as) {
+        ArrayList<InterpreterDataType> l = new ArrayList<>();
+        for (InterpreterDataType a: as) {
+            l.add(a);
+        }
+        return l;
+    }
+
+    static VariableRefNode ref(String name) {
+        return new VariableRefNode(name);
+    }
+
+    static MathOpNode math(Token.tokenType op, Node l, Node r) throws SyntaxErrorException {
+        return new MathOpNode(op, l, r);
+    }
+
+    static BoolCompNode cmp(Token.tokenType op, Node l, Node r) {
+        return new BoolCompNode(op, l, r);
+    }
+
+    static AssignmentNode assign(String name, Node val) {
+        return new AssignmentNode(name, val);
+    }
+
+    static FunctionCallNode call(String name, Node... params) {
+        FunctionCallNode fc = new FunctionCallNode(name);
+        for (Node p: params) {
+            fc.addArg(new ParameterNode(p));
+        }
+        return fc;
+    }
+}
@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+
+/*
+Puts the branches of an if chain that a Profile says are taken most
+first, so the common case is found after fewer comparisons. Branches can
+only change places when at most one of their conditions can be true at
+a time, otherwise a different branch would win. That is known for
+conditions comparing the same variable with a literal: integer and
+character ranges (=, <, <=, >, >=) that don't overlap, and different
+strings with =. The chain is split into runs of such branches and each
+run is sorted by how often its branches were taken. Branches whose
+conditions aren't of that form stay where they are and end a run.
+
+Needs a well-typed program, real variables are never compared as
+ranges.
+ */
+public class BranchReorderer {
+
+    /*
+    Values a condition lets through, for one variable
+     */
+    private static class Range {
+        final String variable;
+        final long low;
+        final long high;
+        final String text; // Set for string equality instead of low/high
+
+        Range(String variable, long low, long high, String text) {
+            this.variable = variable;
+            this.low = low;
+            this.high = high;
+            this.text = text;
+        }
+
+        boolean disjoint(Range other) {
+            if (!variable.equals(other.variable)) {
+                return false;
+            }
+            if (text != null && other.text != null) {
+                return !text.equals(other.text);
+            }
+            if (text != null || other.text != null) {
+                return false;
+            }
+            return high < other.low || other.high < low;
+        }
+    }
+
+    private final Profile profile;
+    private int reordered;
+
+    public BranchReorderer(Profile profile) {
+        this.profile = profile;
+    }
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        new TypeChecker().check(pn);
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                optimizeBlock(fn.statements());
+            }
+        }
+    }
+
+    /*
+    Number of if chains whose branches changed order
+     */
+    public int reordered() {
+        return reordered;
+    }
+
+    private void optimizeBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (int k = 0; k < statements.size(); k++) {
+            StatementNode s = statements.get(k);
+            if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    optimizeBlock(i.statements());
+                }
+                statements.set(k, reorder((IfNode) s));
+            } else if (s instanceof ForNode) {
+                optimizeBlock(((ForNode) s).statements());
+            } else if (s instanceof WhileNode) {
+                optimizeBlock(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                optimizeBlock(((RepeatNode) s).statements());
+            }
+        }
+    }
+
+    /*
+    Returns the new first branch
+     */
+    private IfNode reorder(IfNode first) {
+        ArrayList<IfNode> branches = new ArrayList<>();
+        for (IfNode i = first; i != null; i = i.getElseBlock()) {
+            branches.add(i);
+        }
+        ArrayList<IfNode> result = new ArrayList<>(branches.size());
+        ArrayList<IfNode> run = new ArrayList<>();
+        ArrayList<Range> ranges = new ArrayList<>();
+        for (IfNode b: branches) {
+            Range r = profile.knows(b) ? range(b.getCondition()) : null;
+            boolean fits = r != null;
+            for (int k = 0; fits && k < ranges.size(); k++) {
+                fits = r.disjoint(ranges.get(k));
+            }
+            if (!fits) {
+                flush(run, result);
+                ranges.clear();
+            }
+            if (r == null) {
+                result.add(b);
+            } else {
+                run.add(b);
+                ranges.add(r);
+            }
+        }
+        flush(run, result);
+        if (result.equals(branches)) {
+            return first;
+        }
+        for (int k = 0; k < result.size(); k++) {
+            result.get(k).addElseBlock(k + 1 < result.size() ? result.get(k + 1) : null);
+        }
+        reordered++;
+        return result.get(0);
+    }
+
+    /*
+    Most taken first, ties keep their order
+     */
+    private void flush(ArrayList<IfNode> run, ArrayList<IfNode> result) {
+        run.sort((a, b) -> Long.compare(profile.taken(b), profile.taken(a)));
+        result.addAll(run);
+        run.clear();
+    }
+
+    /*
+    What a comparison of a variable with a literal lets through, null
+    for any other condition
+     */
+    private static Range range(BoolCompNode b) {
+        Node l = b.left();
+        Node r = b.right();
+        Token.tokenType op = b.condition();
+        if (!(l instanceof VariableRefNode)) {
+            Node t = l;
+            l = r;
+            r = t;
+            op = switch (op) {
+                case LESSTHAN -> Token.tokenType.GREATERTHAN;
+                case LESSEQ -> Token.tokenType.GREATEREQ;
+                case GREATERTHAN -> Token.tokenType.LESSTHAN;
+                case GREATEREQ -> Token.tokenType.LESSEQ;
+                default -> op;
+            };
+        }
+        if (!(l instanceof VariableRefNode) || ((VariableRefNode) l).getArrIndexExpr() != null) {
+            return null;
+        }
+        String name = ((VariableRefNode) l).getName();
+        if (l.staticType() == Token.tokenType.REALLIT) {
+            return null; // 2.5 is both < 3 and > 2
+        }
+        if (r instanceof StringNode) {
+            return op == Token.tokenType.EQUALS ? new Range(name, 0, 0, ((StringNode) r).getVal()) : null;
+        }
+        long c;
+        if (r instanceof IntNode) {
+            c = ((IntNode) r).getVal();
+        } else if (r instanceof CharNode) {
+            c = ((CharNode) r).getVal();
+        } else {
+            return null;
+        }
+        return switch (op) {
+            case EQUALS -> new Range(name, c, c, null);
+            case LESSTHAN -> new Range(name, Long.MIN_VALUE, c - 1, null);
+            case LESSEQ -> new Range(name, Long.MIN_VALUE, c, null);
+            case GREATERTHAN -> new Range(name, c + 1, Long.MAX_VALUE, null);
+            case GREATEREQ -> new Range(name, c, Long.MAX_VALUE, null);
+            default -> null;
+        };
+    }
+}
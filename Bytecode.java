@@ -0,0 +1,123 @@
+/*
+Instruction set of the bytecode backend. Code is a flat int array where
+each opcode is followed by its operands. Integers, floats (as raw bits),
+characters and booleans live on the int stack; strings and variable
+cells live on the object stack.
+ */
+public class Bytecode {
+
+    /*
+    Constants and variables
+     */
+    static final int ICONST = 0;    // value          push int
+    static final int FCONST = 1;    // float bits     push float
+    static final int SCONST = 2;    // pool index     push string
+    static final int ILOAD = 3;     // slot
+    static final int FLOAD = 4;     // slot
+    static final int SLOAD = 5;     // slot
+    static final int CLOAD = 6;     // slot
+    static final int BLOAD = 7;     // slot
+    static final int ISTORE = 8;    // slot
+    static final int FSTORE = 9;    // slot
+    static final int SSTORE = 10;   // slot
+    static final int CSTORE = 11;   // slot
+    static final int BSTORE = 12;   // slot
+
+    /*
+    Arithmetic
+     */
+    static final int IADD = 13;
+    static final int ISUB = 14;
+    static final int IMUL = 15;
+    static final int IDIV = 16;
+    static final int IMOD = 17;
+    static final int FADD = 18;
+    static final int FSUB = 19;
+    static final int FMUL = 20;
+    static final int FDIV = 21;
+    static final int FMOD = 22;
+    static final int SCONCAT = 23;
+    static final int I2F = 24;
+
+    /*
+    Comparisons, push 1 or 0. Characters and booleans use the int ones
+     */
+    static final int IEQ = 25;
+    static final int INE = 26;
+    static final int ILT = 27;
+    static final int ILE = 28;
+    static final int IGT = 29;
+    static final int IGE = 30;
+    static final int FEQ = 31;
+    static final int FNE = 32;
+    static final int FLT = 33;
+    static final int FLE = 34;
+    static final int FGT = 35;
+    static final int FGE = 36;
+    static final int SEQ = 37;
+    static final int SNE = 38;
+
+    /*
+    Control flow
+     */
+    static final int JUMP = 39;     // target
+    static final int JUMPF = 40;    // target         pop, jump if 0
+    static final int JUMPT = 41;    // target         pop, jump if not 0
+
+    /*
+    Calls. Arguments are passed as cells on the object stack
+     */
+    static final int IBOX = 42;     // pop int, push new cell
+    static final int FBOX = 43;
+    static final int SBOX = 44;
+    static final int CBOX = 45;
+    static final int BBOX = 46;
+    static final int REF = 47;      // slot           push the variable's own cell
+    static final int CALL = 48;     // pool index, argument count
+    static final int RETURN = 49;
+
+    /*
+    For loops keep [end, counter] on the int stack
+     */
+    static final int FORTEST = 50;  // target         pop both and jump if counter > end
+    static final int DUP = 51;
+    static final int INC = 52;      // counter + 1
+    static final int POP = 53;
+
+    static final String[] NAMES = {
+        "ICONST", "FCONST", "SCONST", "ILOAD", "FLOAD", "SLOAD", "CLOAD", "BLOAD",
+        "ISTORE", "FSTORE", "SSTORE", "CSTORE", "BSTORE",
+        "IADD", "ISUB", "IMUL", "IDIV", "IMOD", "FADD", "FSUB", "FMUL", "FDIV", "FMOD", "SCONCAT", "I2F",
+        "IEQ", "INE", "ILT", "ILE", "IGT", "IGE", "FEQ", "FNE", "FLT", "FLE", "FGT", "FGE", "SEQ", "SNE",
+        "JUMP", "JUMPF", "JUMPT",
+        "IBOX", "FBOX", "SBOX", "CBOX", "BBOX", "REF", "CALL", "RETURN",
+        "FORTEST", "DUP", "INC", "POP"
+    };
+
+    /*
+    Number of operands that follow each opcode
+     */
+    static int operands(int op) {
+        return switch (op) {
+            case ICONST, FCONST, SCONST, ILOAD, FLOAD, SLOAD, CLOAD, BLOAD,
+                 ISTORE, FSTORE, SSTORE, CSTORE, BSTORE, JUMP, JUMPF, JUMPT, REF, FORTEST -> 1;
+            case CALL -> 2;
+            default -> 0;
+        };
+    }
+}
+
+/*
+Compiled code of one function
+ */
+class Chunk {
+    FunctionNode fn;
+    int[] code;
+    Object[] constants;
+    int maxStack;       // deepest the int stack gets
+    int maxObjects;     // deepest the object stack gets
+
+    Chunk(FunctionNode fn) {
+        this.fn = fn;
+    }
+}
@@ -0,0 +1,343 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Compiles the functions of a resolved ProgramNode into Chunks of bytecode
+for the BytecodeVM. Operand types are known statically, so every
+instruction is typed and the VM never has to check what it is adding.
+ */
+public class BytecodeCompiler {
+
+    private HashMap<String, Chunk> chunks;
+    private ProgramNode pn;
+    private FunctionNode current;
+
+    private int[] code;
+    private int length;
+    private ArrayList<Object> constants;
+    private int depth;
+    private int objects;
+    private int maxDepth;
+    private int maxObjects;
+
+    /*
+    Compiles every user function. The program must have been run through
+    the Resolver first
+     */
+    public HashMap<String, Chunk> compile(ProgramNode pn) throws SyntaxErrorException {
+        this.pn = pn;
+        chunks = new HashMap<>();
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                chunks.put(fn.getName(), new Chunk(fn));
+            }
+        }
+        for (Chunk c: chunks.values()) {
+            compileFunction(c);
+        }
+        return chunks;
+    }
+
+    private void compileFunction(Chunk c) throws SyntaxErrorException {
+        current = c.fn;
+        code = new int[64];
+        length = 0;
+        constants = new ArrayList<>();
+        depth = objects = maxDepth = maxObjects = 0;
+
+        block(c.fn.statements());
+        emit(Bytecode.RETURN);
+
+        c.code = new int[length];
+        System.arraycopy(code, 0, c.code, 0, length);
+        c.constants = constants.toArray();
+        c.maxStack = maxDepth;
+        c.maxObjects = maxObjects;
+    }
+
+    /*
+    Statements
+     */
+
+    private void block(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            statement(s);
+        }
+    }
+
+    private void statement(StatementNode s) throws SyntaxErrorException {
+        if (s instanceof AssignmentNode) {
+            AssignmentNode a = (AssignmentNode) s;
+            int slot = a.getTarget().getSlot();
+            Token.tokenType targetType = slotType(slot);
+            Token.tokenType valType = typeOf(a.getVal());
+            if (targetType != valType) {
+                throw new SyntaxErrorException("Cannot assign " + valType + " to " + a.getTarget().getName() + " (" + targetType + ")");
+            }
+            expression(a.getVal());
+            emit(storeOp(targetType), slot);
+        } else if (s instanceof IfNode) {
+            ArrayList<Integer> ends = new ArrayList<>();
+            for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                expression(i.getCondition());
+                int next = emitJump(Bytecode.JUMPF);
+                block(i.statements());
+                if (i.getElseBlock() != null) {
+                    ends.add(emitJump(Bytecode.JUMP));
+                }
+                patch(next);
+            }
+            for (int end: ends) {
+                patch(end);
+            }
+        } else if (s instanceof WhileNode) {
+            int top = length;
+            expression(((WhileNode) s).getCondition());
+            int exit = emitJump(Bytecode.JUMPF);
+            block(((WhileNode) s).statements());
+            emit(Bytecode.JUMP, top);
+            patch(exit);
+        } else if (s instanceof RepeatNode) {
+            int top = length;
+            block(((RepeatNode) s).statements());
+            expression(((RepeatNode) s).getCondition());
+            emit(Bytecode.JUMPF, top);
+        } else if (s instanceof ForNode) {
+            forLoop((ForNode) s);
+        } else if (s instanceof FunctionCallNode) {
+            call((FunctionCallNode) s);
+        } else if (s instanceof SiteNode) {
+            // Only counted when profiling
+        } else {
+            throw new SyntaxErrorException("Invalid statement.");
+        }
+    }
+
+    /*
+    The loop keeps [end, counter] on the int stack and copies the counter
+    into the control variable at the start of every pass
+     */
+    private void forLoop(ForNode f) throws SyntaxErrorException {
+        if (!(f.getExpr() instanceof VariableRefNode) || slotType(((VariableRefNode) f.getExpr()).getSlot()) != Token.tokenType.INTEGERLIT) {
+            throw new SyntaxErrorException("For loop needs an integer control variable.");
+        }
+        int slot = ((VariableRefNode) f.getExpr()).getSlot();
+        integer(f.getTo());
+        integer(f.getFrom());
+        int top = length;
+        int exit = emitJump(Bytecode.FORTEST);
+        emit(Bytecode.DUP);
+        emit(Bytecode.ISTORE, slot);
+        block(f.statements());
+        emit(Bytecode.INC);
+        emit(Bytecode.JUMP, top);
+        patch(exit);
+        depth -= 2; // FORTEST pops both on the way out
+    }
+
+    /*
+    Built-ins are not executed by the Interpreter either, so calls to them
+    compile to nothing
+     */
+    private void call(FunctionCallNode fc) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(fc.getName());
+        if (fn == null) {
+            throw new SyntaxErrorException("Function " + fc.getName() + " is not defined.");
+        }
+        if (fn instanceof BuiltInFunction) {
+            return;
+        }
+        ArrayList<ParameterNode> fcParams = fc.getParams();
+        ArrayList<VariableNode> fnParams = fn.getParams();
+        if (fcParams.size() != fnParams.size()) {
+            throw new SyntaxErrorException("Incorrect number of parameters in " + fc.getName() + ".");
+        }
+        for (int i = 0; i < fcParams.size(); i++) {
+            Node arg = fcParams.get(i).getVar();
+            Token.tokenType paramType = ClosureInterpreter.normalize(fnParams.get(i).type());
+            if (typeOf(arg) != paramType) {
+                throw new SyntaxErrorException("Argument " + (i + 1) + " of " + fc.getName() + " must be " + paramType);
+            }
+            if (fnParams.get(i).isChangeable() && arg instanceof VariableRefNode) {
+                emit(Bytecode.REF, ((VariableRefNode) arg).getSlot());
+            } else {
+                expression(arg);
+                emit(boxOp(paramType));
+            }
+        }
+        emit(Bytecode.CALL, constant(chunks.get(fc.getName())), fcParams.size());
+    }
+
+    /*
+    Expressions
+     */
+
+    private void expression(Node n) throws SyntaxErrorException {
+        Token.tokenType type = typeOf(n);
+        if (n instanceof IntNode) {
+            emit(Bytecode.ICONST, ((IntNode) n).getVal());
+        } else if (n instanceof RealNode) {
+            emit(Bytecode.FCONST, Float.floatToRawIntBits(((RealNode) n).getVal()));
+        } else if (n instanceof StringNode) {
+            emit(Bytecode.SCONST, constant(((StringNode) n).getVal()));
+        } else if (n instanceof CharNode) {
+            emit(Bytecode.ICONST, ((CharNode) n).getVal());
+        } else if (n instanceof BooleanNode) {
+            emit(Bytecode.ICONST, ((BooleanNode) n).getVal() ? 1 : 0);
+        } else if (n instanceof VariableRefNode) {
+            emit(loadOp(type), ((VariableRefNode) n).getSlot());
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            expression(m.left());
+            expression(m.right());
+            if (type == Token.tokenType.STRINGLIT) {
+                emit(Bytecode.SCONCAT);
+            } else {
+                int base = type == Token.tokenType.INTEGERLIT ? Bytecode.IADD : Bytecode.FADD;
+                emit(base + m.op.ordinal()); // ADD, SUB, MUL, DIV, MOD are laid out in MathOp order
+            }
+        } else if (n instanceof BoolCompNode) {
+            comparison((BoolCompNode) n);
+        } else {
+            throw new SyntaxErrorException("Illegal Node type in expression: " + n);
+        }
+    }
+
+    private void integer(Node n) throws SyntaxErrorException {
+        if (typeOf(n) != Token.tokenType.INTEGERLIT) {
+            throw new SyntaxErrorException("Expected an integer expression: " + n);
+        }
+        expression(n);
+    }
+
+    /*
+    Comparisons only take place between the same data types, except that
+    integers and reals can be compared with each other
+     */
+    private void comparison(BoolCompNode b) throws SyntaxErrorException {
+        Token.tokenType lt = typeOf(b.left());
+        Token.tokenType rt = typeOf(b.right());
+        int offset = switch (b.condition()) {
+            case EQUALS -> 0;
+            case NOTEQ -> 1;
+            case LESSTHAN -> 2;
+            case LESSEQ -> 3;
+            case GREATERTHAN -> 4;
+            case GREATEREQ -> 5;
+            default -> throw new SyntaxErrorException("Unexpected boolean comparison operation type");
+        };
+        boolean ordered = offset > 1;
+        if (lt == rt && (lt == Token.tokenType.INTEGERLIT || lt == Token.tokenType.CHARLIT
+                || (lt == Token.tokenType.BOOLEAN && !ordered))) {
+            expression(b.left());
+            expression(b.right());
+            emit(Bytecode.IEQ + offset);
+        } else if (ClosureInterpreter.isNumeric(lt) && ClosureInterpreter.isNumeric(rt)) {
+            expression(b.left());
+            if (lt == Token.tokenType.INTEGERLIT) {
+                emit(Bytecode.I2F);
+            }
+            expression(b.right());
+            if (rt == Token.tokenType.INTEGERLIT) {
+                emit(Bytecode.I2F);
+            }
+            emit(Bytecode.FEQ + offset);
+        } else if (lt == Token.tokenType.STRINGLIT && rt == Token.tokenType.STRINGLIT && !ordered) {
+            expression(b.left());
+            expression(b.right());
+            emit(Bytecode.SEQ + offset);
+        } else {
+            throw new SyntaxErrorException("Incompatible operands for " + b.condition() + ": " + b);
+        }
+    }
+
+    private Token.tokenType typeOf(Node n) throws SyntaxErrorException {
+        return ClosureInterpreter.typeOf(n, current);
+    }
+
+    private Token.tokenType slotType(int slot) throws SyntaxErrorException {
+        return ClosureInterpreter.normalize(current.slots()[slot].type());
+    }
+
+    private static int loadOp(Token.tokenType t) {
+        return switch (t) {
+            case INTEGERLIT -> Bytecode.ILOAD;
+            case REALLIT -> Bytecode.FLOAD;
+            case STRINGLIT -> Bytecode.SLOAD;
+            case CHARLIT -> Bytecode.CLOAD;
+            default -> Bytecode.BLOAD;
+        };
+    }
+
+    private static int storeOp(Token.tokenType t) {
+        return loadOp(t) + (Bytecode.ISTORE - Bytecode.ILOAD);
+    }
+
+    private static int boxOp(Token.tokenType t) {
+        return loadOp(t) + (Bytecode.IBOX - Bytecode.ILOAD);
+    }
+
+    /*
+    Code emission. Tracks how deep both stacks get so the VM can size
+    them once per call
+     */
+
+    private void emit(int op, int... operands) {
+        if (length + 1 + operands.length > code.length) {
+            int[] grown = new int[code.length * 2];
+            System.arraycopy(code, 0, grown, 0, length);
+            code = grown;
+        }
+        code[length++] = op;
+        for (int operand: operands) {
+            code[length++] = operand;
+        }
+        switch (op) {
+            case Bytecode.ICONST, Bytecode.FCONST, Bytecode.ILOAD, Bytecode.FLOAD, Bytecode.CLOAD, Bytecode.BLOAD, Bytecode.DUP -> depth++;
+            case Bytecode.SCONST, Bytecode.SLOAD, Bytecode.REF -> objects++;
+            case Bytecode.ISTORE, Bytecode.FSTORE, Bytecode.CSTORE, Bytecode.BSTORE, Bytecode.JUMPF, Bytecode.JUMPT, Bytecode.POP -> depth--;
+            case Bytecode.SSTORE, Bytecode.SCONCAT -> objects--;
+            case Bytecode.SEQ, Bytecode.SNE -> {
+                objects -= 2;
+                depth++;
+            }
+            case Bytecode.IBOX, Bytecode.FBOX, Bytecode.CBOX, Bytecode.BBOX -> {
+                depth--;
+                objects++;
+            }
+            case Bytecode.CALL -> objects -= operands[1];
+            default -> {
+                if (op >= Bytecode.IADD && op <= Bytecode.FMOD || op >= Bytecode.IEQ && op <= Bytecode.FGE) {
+                    depth--;
+                }
+            }
+        }
+        maxDepth = Math.max(maxDepth, depth);
+        maxObjects = Math.max(maxObjects, objects);
+    }
+
+    /*
+    Emits a jump with a placeholder target and returns where the target
+    goes
+     */
+    private int emitJump(int op) {
+        emit(op, -1);
+        return length - 1;
+    }
+
+    private void patch(int at) {
+        code[at] = length;
+    }
+
+    private int constant(Object value) {
+        int i = constants.indexOf(value);
+        if (i < 0) {
+            constants.add(value);
+            i = constants.size() - 1;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Stack machine that runs the Chunks made by the BytecodeCompiler. Locals
+stay in the same frame slots the other engines use, so var parameters
+share cells with the caller exactly like they do in the Interpreter.
+ */
+public class BytecodeVM implements ExecutionEngine {
+
+    HashMap<String, Chunk> chunks;
+    CallStack stack;
+
+    private int[] ints;
+    private Object[] objects;
+    private int sp;
+    private int osp;
+
+    public BytecodeVM(ProgramNode pn) throws SyntaxErrorException {
+        new Resolver().resolve(pn);
+        new TypeChecker().check(pn);
+        chunks = new BytecodeCompiler().compile(pn);
+        stack = new CallStack();
+        ints = new int[256];
+        objects = new Object[256];
+    }
+
+    public void run(String name, ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        Chunk c = chunks.get(name);
+        if (c == null) {
+            throw new RuntimeException("Function " + name + " is not defined.");
+        }
+        if (args.size() != c.fn.getParams().size()) {
+            throw new RuntimeException("Incorrect number of arguments for function " + name);
+        }
+        Frame frame = stack.push(c.fn);
+        try {
+            frame.bind(args);
+            sp = 0;
+            osp = 0;
+            execute(c, frame.slots);
+        } finally {
+            stack.pop();
+        }
+    }
+
+    /*
+    Listing of every compiled function
+     */
+    public String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        for (Chunk c: chunks.values()) {
+            sb.append(Disassembler.disassemble(c));
+        }
+        return sb.toString();
+    }
+
+    private void execute(Chunk c, InterpreterDataType[] slots) throws SyntaxErrorException {
+        if (sp + c.maxStack > ints.length) {
+            int[] grown = new int[Math.max(ints.length * 2, sp + c.maxStack)];
+            System.arraycopy(ints, 0, grown, 0, sp);
+            ints = grown;
+        }
+        if (osp + c.maxObjects > objects.length) {
+            Object[] grown = new Object[Math.max(objects.length * 2, osp + c.maxObjects)];
+            System.arraycopy(objects, 0, grown, 0, osp);
+            objects = grown;
+        }
+        int[] code = c.code;
+        Object[] k = c.constants;
+        int[] st = ints;
+        Object[] os = objects;
+        int sp = this.sp;
+        int osp = this.osp;
+        int pc = 0;
+
+        for (;;) {
+            switch (code[pc++]) {
+                case Bytecode.ICONST -> st[sp++] = code[pc++];
+                case Bytecode.FCONST -> st[sp++] = code[pc++];
+                case Bytecode.SCONST -> os[osp++] = k[code[pc++]];
+                case Bytecode.ILOAD -> st[sp++] = ((IntegerDataType) slots[code[pc++]]).getVal();
+                case Bytecode.FLOAD -> st[sp++] = Float.floatToRawIntBits(((RealDataType) slots[code[pc++]]).getVal());
+                case Bytecode.SLOAD -> os[osp++] = ((StringDataType) slots[code[pc++]]).getVal();
+                case Bytecode.CLOAD -> st[sp++] = ((CharacterDataType) slots[code[pc++]]).getVal();
+                case Bytecode.BLOAD -> st[sp++] = ((BoolDataType) slots[code[pc++]]).getVal() ? 1 : 0;
+                case Bytecode.ISTORE -> ((IntegerDataType) slots[code[pc++]]).setVal(st[--sp]);
+                case Bytecode.FSTORE -> ((RealDataType) slots[code[pc++]]).setVal(Float.intBitsToFloat(st[--sp]));
+                case Bytecode.SSTORE -> ((StringDataType) slots[code[pc++]]).setVal((String) os[--osp]);
+                case Bytecode.CSTORE -> ((CharacterDataType) slots[code[pc++]]).setVal((char) st[--sp]);
+                case Bytecode.BSTORE -> ((BoolDataType) slots[code[pc++]]).setVal(st[--sp] != 0);
+
+                case Bytecode.IADD -> { sp--; st[sp - 1] += st[sp]; }
+                case Bytecode.ISUB -> { sp--; st[sp - 1] -= st[sp]; }
+                case Bytecode.IMUL -> { sp--; st[sp - 1] *= st[sp]; }
+                case Bytecode.IDIV -> { sp--; st[sp - 1] /= st[sp]; }
+                case Bytecode.IMOD -> { sp--; st[sp - 1] %= st[sp]; }
+                case Bytecode.FADD -> { sp--; st[sp - 1] = fbits(f(st[sp - 1]) + f(st[sp])); }
+                case Bytecode.FSUB -> { sp--; st[sp - 1] = fbits(f(st[sp - 1]) - f(st[sp])); }
+                case Bytecode.FMUL -> { sp--; st[sp - 1] = fbits(f(st[sp - 1]) * f(st[sp])); }
+                case Bytecode.FDIV -> { sp--; st[sp - 1] = fbits(f(st[sp - 1]) / f(st[sp])); }
+                case Bytecode.FMOD -> { sp--; st[sp - 1] = fbits(f(st[sp - 1]) % f(st[sp])); }
+                case Bytecode.SCONCAT -> { osp--; os[osp - 1] = (String) os[osp - 1] + (String) os[osp]; }
+                case Bytecode.I2F -> st[sp - 1] = fbits(st[sp - 1]);
+
+                case Bytecode.IEQ -> { sp--; st[sp - 1] = st[sp - 1] == st[sp] ? 1 : 0; }
+                case Bytecode.INE -> { sp--; st[sp - 1] = st[sp - 1] != st[sp] ? 1 : 0; }
+                case Bytecode.ILT -> { sp--; st[sp - 1] = st[sp - 1] < st[sp] ? 1 : 0; }
+                case Bytecode.ILE -> { sp--; st[sp - 1] = st[sp - 1] <= st[sp] ? 1 : 0; }
+                case Bytecode.IGT -> { sp--; st[sp - 1] = st[sp - 1] > st[sp] ? 1 : 0; }
+                case Bytecode.IGE -> { sp--; st[sp - 1] = st[sp - 1] >= st[sp] ? 1 : 0; }
+                case Bytecode.FEQ -> { sp--; st[sp - 1] = f(st[sp - 1]) == f(st[sp]) ? 1 : 0; }
+                case Bytecode.FNE -> { sp--; st[sp - 1] = f(st[sp - 1]) != f(st[sp]) ? 1 : 0; }
+                case Bytecode.FLT -> { sp--; st[sp - 1] = f(st[sp - 1]) < f(st[sp]) ? 1 : 0; }
+                case Bytecode.FLE -> { sp--; st[sp - 1] = f(st[sp - 1]) <= f(st[sp]) ? 1 : 0; }
+                case Bytecode.FGT -> { sp--; st[sp - 1] = f(st[sp - 1]) > f(st[sp]) ? 1 : 0; }
+                case Bytecode.FGE -> { sp--; st[sp - 1] = f(st[sp - 1]) >= f(st[sp]) ? 1 : 0; }
+                case Bytecode.SEQ -> { osp -= 2; st[sp++] = os[osp].equals(os[osp + 1]) ? 1 : 0; }
+                case Bytecode.SNE -> { osp -= 2; st[sp++] = os[osp].equals(os[osp + 1]) ? 0 : 1; }
+
+                case Bytecode.JUMP -> pc = code[pc];
+                case Bytecode.JUMPF -> pc = st[--sp] == 0 ? code[pc] : pc + 1;
+                case Bytecode.JUMPT -> pc = st[--sp] != 0 ? code[pc] : pc + 1;
+
+                case Bytecode.IBOX -> os[osp++] = new IntegerDataType(st[--sp]);
+                case Bytecode.FBOX -> os[osp++] = new RealDataType(Float.intBitsToFloat(st[--sp]));
+                case Bytecode.SBOX -> os[osp - 1] = new StringDataType((String) os[osp - 1]);
+                case Bytecode.CBOX -> os[osp++] = new CharacterDataType((char) st[--sp]);
+                case Bytecode.BBOX -> os[osp++] = new BoolDataType(st[--sp] != 0);
+                case Bytecode.REF -> os[osp++] = slots[code[pc++]];
+                case Bytecode.CALL -> {
+                    int argc = code[pc + 1];
+                    osp -= argc;
+                    this.sp = sp;
+                    this.osp = osp;
+                    call((Chunk) k[code[pc]], argc);
+                    pc += 2;
+                    st = ints; // the callee may have grown the stacks
+                    os = objects;
+                }
+                case Bytecode.RETURN -> {
+                    return;
+                }
+
+                case Bytecode.FORTEST -> {
+                    if (st[sp - 1] > st[sp - 2]) {
+                        sp -= 2;
+                        pc = code[pc];
+                    } else {
+                        pc++;
+                    }
+                }
+                case Bytecode.DUP -> { st[sp] = st[sp - 1]; sp++; }
+                case Bytecode.INC -> st[sp - 1]++;
+                case Bytecode.POP -> sp--;
+                default -> throw new RuntimeException("Bad opcode " + code[pc - 1] + " in " + c.fn.getName());
+            }
+        }
+    }
+
+    /*
+    Runs callee with the argc cells that sit at the top of the object stack
+     */
+    private void call(Chunk callee, int argc) throws SyntaxErrorException {
+        Frame frame = stack.push(callee.fn);
+        try {
+            frame.bind(objects, osp, argc);
+            execute(callee, frame.slots);
+        } finally {
+            stack.pop();
+        }
+    }
+
+    private static float f(int bits) {
+        return Float.intBitsToFloat(bits);
+    }
+
+    private static int fbits(float f) {
+        return Float.floatToRawIntBits(f);
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Stack of activation frames for the Interpreter. Frames are pooled by
+depth, so a recursive call reuses the frame object (and its slot array
+and maps) that the previous call at the same depth left behind.
+ */
+public class CallStack {
+
+    private Frame[] frames;
+    private int depth;
+
+    public CallStack() {
+        frames = new Frame[16];
+        depth = 0;
+    }
+
+    public Frame push(FunctionNode fn) {
+        if (depth == frames.length) {
+            Frame[] grown = new Frame[frames.length * 2];
+            System.arraycopy(frames, 0, grown, 0, frames.length);
+            frames = grown;
+        }
+        Frame f = frames[depth];
+        if (f == null) {
+            f = new Frame();
+            frames[depth] = f;
+        }
+        depth++;
+        f.enter(fn);
+        return f;
+    }
+
+    public void pop() {
+        frames[--depth].exit();
+    }
+
+    /*
+    Returns the frame of the function currently running, or null when the
+    stack is empty
+     */
+    public Frame top() {
+        return depth == 0 ? null : frames[depth - 1];
+    }
+
+    public int depth() {
+        return depth;
+    }
+}
+
+class Frame {
+    FunctionNode fn;
+    FunctionNode lastFn;
+
+    // Slot mode
+    InterpreterDataType[] slots;
+    InterpreterDataType[] cells; // Cells owned by this frame for variables and constants
+
+    // Map mode
+    HashMap<String, InterpreterDataType> localVars;
+    HashMap<String, InterpreterDataType> constants;
+
+    public Frame() {
+        slots = new InterpreterDataType[0];
+        cells = new InterpreterDataType[0];
+        localVars = new HashMap<>();
+        constants = new HashMap<>();
+    }
+
+    /*
+    Makes the frame ready for fn, keeping the cells if the last function
+    to use this frame was the same one
+     */
+    void enter(FunctionNode fn) {
+        this.fn = fn;
+        int size = fn.frameSize();
+        if (slots.length < size) {
+            slots = new InterpreterDataType[size];
+        }
+        if (lastFn != fn) {
+            cells = new InterpreterDataType[size];
+            lastFn = fn;
+        }
+    }
+
+    /*
+    Binds the call's arguments to the param slots, resets variables to
+    their default value and constants to their value. The frame's own
+    cells are reused when it last ran the same function, so recursion
+    doesn't allocate new ones. Value params get a copy of their argument,
+    the function writes its params in place and the caller's variable
+    must stay as it is
+     */
+    void bind(ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        ArrayList<VariableNode> params = fn.getParams();
+        int nParams = args.size();
+        for (int i = 0; i < nParams; i++) {
+            slots[i] = params.get(i).isChangeable() ? args.get(i) : copy(args.get(i));
+        }
+        bindLocals(nParams);
+    }
+
+    /*
+    Same as bind, with the arguments taken from a slice of an operand stack.
+    Compiled calls box value arguments into new cells, so these are the
+    callee's own and aren't copied again
+     */
+    void bind(Object[] args, int start, int count) throws SyntaxErrorException {
+        for (int i = 0; i < count; i++) {
+            slots[i] = (InterpreterDataType) args[start + i];
+        }
+        bindLocals(count);
+    }
+
+    private void bindLocals(int nParams) throws SyntaxErrorException {
+        VariableNode[] decls = fn.slots();
+        for (int i = nParams; i < decls.length; i++) {
+            VariableNode v = decls[i];
+            if (!v.isChangeable()) {
+                cells[i] = literalValue(v.getVal());
+            } else if (cells[i] == null) {
+                cells[i] = defaultValue(v);
+            } else {
+                resetValue(cells[i]);
+            }
+            slots[i] = cells[i];
+        }
+    }
+
+    static InterpreterDataType defaultValue(VariableNode v) throws SyntaxErrorException {
+        return switch (v.type()) {
+            case INTEGERLIT -> new IntegerDataType(0);
+            case REALLIT -> new RealDataType(0);
+            case STRINGLIT -> new StringDataType("");
+            case CHARLIT -> new CharacterDataType(' ');
+            default -> new BoolDataType(true);
+        };
+    }
+
+    static InterpreterDataType literalValue(Node n) throws SyntaxErrorException {
+        if (n instanceof IntNode) {
+            return new IntegerDataType(((IntNode) n).getVal());
+        } else if (n instanceof RealNode) {
+            return new RealDataType(((RealNode) n).getVal());
+        } else if (n instanceof CharNode) {
+            return new CharacterDataType(((CharNode) n).getVal());
+        } else if (n instanceof StringNode) {
+            return new StringDataType(((StringNode) n).getVal());
+        } else if (n instanceof BooleanNode) {
+            return new BoolDataType(((BooleanNode) n).getVal());
+        }
+        throw new SyntaxErrorException("Invalid constant value: " + n);
+    }
+
+    static void resetValue(InterpreterDataType d) {
+        if (d instanceof IntegerDataType) {
+            ((IntegerDataType) d).setVal(0);
+        } else if (d instanceof RealDataType) {
+            ((RealDataType) d).setVal(0);
+        } else if (d instanceof StringDataType) {
+            ((StringDataType) d).setVal("");
+        } else if (d instanceof CharacterDataType) {
+            ((CharacterDataType) d).setVal(' ');
+        } else if (d instanceof BoolDataType) {
+            ((BoolDataType) d).setVal(true);
+        }
+    }
+
+    /*
+    Writes value into an existing cell of the same type. Returns false
+    when the types differ and the cell can't hold the value
+     */
+    static boolean setValue(InterpreterDataType cell, InterpreterDataType value) {
+        if (cell instanceof IntegerDataType && value instanceof IntegerDataType) {
+            ((IntegerDataType) cell).setVal(((IntegerDataType) value).getVal());
+        } else if (cell instanceof RealDataType && value instanceof RealDataType) {
+            ((RealDataType) cell).setVal(((RealDataType) value).getVal());
+        } else if (cell instanceof StringDataType && value instanceof StringDataType) {
+            ((StringDataType) cell).setVal(((StringDataType) value).getVal());
+        } else if (cell instanceof CharacterDataType && value instanceof CharacterDataType) {
+            ((CharacterDataType) cell).setVal(((CharacterDataType) value).getVal());
+        } else if (cell instanceof BoolDataType && value instanceof BoolDataType) {
+            ((BoolDataType) cell).setVal(((BoolDataType) value).getVal());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /*
+    New cell holding the same value, for arguments that are passed by value
+     */
+    static InterpreterDataType copy(InterpreterDataType d) {
+        if (d instanceof IntegerDataType) {
+            return new IntegerDataType(((IntegerDataType) d).getVal());
+        } else if (d instanceof RealDataType) {
+            return new RealDataType(((RealDataType) d).getVal());
+        } else if (d instanceof StringDataType) {
+            return new StringDataType(((StringDataType) d).getVal());
+        } else if (d instanceof CharacterDataType) {
+            return new CharacterDataType(((CharacterDataType) d).getVal());
+        } else if (d instanceof BoolDataType) {
+            return new BoolDataType(((BoolDataType) d).getVal());
+        }
+        return d;
+    }
+
+    /*
+    Drops references to the caller's arguments so pooled frames don't keep
+    them alive
+     */
+    void exit() {
+        int nParams = fn.getParams().size();
+        for (int i = 0; i < nParams && i < slots.length; i++) {
+            slots[i] = null;
+        }
+        fn = null;
+    }
+}
@@ -0,0 +1,365 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Just enough of a JVM class file writer for the JvmCompiler: a constant
+pool, static methods and their Code attributes. Classes are written as
+version 49 so the verifier doesn't ask for stack map frames.
+ */
+public class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final String name;
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final HashMap<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+    private final ArrayList<byte[]> methods = new ArrayList<>();
+
+    public ClassFile(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /*
+    Constant pool. Equal entries are only written once
+     */
+
+    int utf8(String s) {
+        return entry("Utf8:" + s, 1, out -> out.writeUTF(s));
+    }
+
+    int classRef(String internalName) {
+        int n = utf8(internalName);
+        return entry("Class:" + internalName, 7, out -> out.writeShort(n));
+    }
+
+    int string(String s) {
+        int n = utf8(s);
+        return entry("String:" + s, 8, out -> out.writeShort(n));
+    }
+
+    int integer(int i) {
+        return entry("Integer:" + i, 3, out -> out.writeInt(i));
+    }
+
+    int real(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        return entry("Float:" + bits, 4, out -> out.writeInt(bits));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int c = classRef(owner);
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        int nt = entry("NameAndType:" + name + ":" + descriptor, 12, out -> {
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+        return entry(tag + ":" + owner + "." + name + ":" + descriptor, tag, out -> {
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, int tag, EntryWriter w) {
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(tag);
+            w.write(pool);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        entries.put(key, poolCount);
+        return poolCount++;
+    }
+
+    /*
+    Methods
+     */
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        if (code.length() > 65535) {
+            throw new RuntimeException("Method " + name + " is too large for the JVM");
+        }
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(n);
+            out.writeShort(d);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + code.length());
+            out.writeShort(code.maxStack());
+            out.writeShort(code.maxLocals());
+            out.writeInt(code.length());
+            out.write(code.bytes(), 0, code.length());
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toBytes() {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (byte[] m: methods) {
+                out.write(m);
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
+
+/*
+Body of one method. Keeps track of the operand stack depth as
+instructions are added so max_stack can be filled in at the end
+ */
+class Code {
+
+    /*
+    Opcodes used by the JvmCompiler
+     */
+    static final int ICONST_0 = 0x03;
+    static final int FCONST_0 = 0x0b;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int FLOAD = 0x17;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int FSTORE = 0x38;
+    static final int ASTORE = 0x3a;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;   // ISUB, IMUL, IDIV and IREM follow 4 apart
+    static final int FADD = 0x62;   // as do FSUB, FMUL, FDIV and FREM
+    static final int IINC = 0x84;
+    static final int I2F = 0x86;
+    static final int FCMPL = 0x95;
+    static final int FCMPG = 0x96;
+    static final int IFEQ = 0x99;   // IFNE, IFLT, IFGE, IFGT, IFLE
+    static final int IF_ICMPEQ = 0x9f; // IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE
+    static final int GOTO = 0xa7;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+
+    private byte[] code = new byte[256];
+    private int length;
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+    private final ArrayList<Label> labels = new ArrayList<>();
+
+    int length() {
+        return length;
+    }
+
+    byte[] bytes() {
+        return code;
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    void locals(int count) {
+        maxLocals = Math.max(maxLocals, count);
+    }
+
+    /*
+    Stack depth the next instruction starts at. Only needs setting after
+    an unconditional jump, where it can't be worked out from what came before
+     */
+    void stack(int depth) {
+        stack = depth;
+    }
+
+    int stack() {
+        return stack;
+    }
+
+    void op(int opcode, int stackChange) {
+        u1(opcode);
+        adjust(stackChange);
+    }
+
+    void op1(int opcode, int operand, int stackChange) {
+        u1(opcode);
+        u1(operand);
+        adjust(stackChange);
+    }
+
+    void op2(int opcode, int operand, int stackChange) {
+        u1(opcode);
+        u2(operand);
+        adjust(stackChange);
+    }
+
+    /*
+    Loads and stores pick the short form where there is one
+     */
+    void local(int opcode, int index, int stackChange) {
+        locals(index + 1);
+        if (index <= 3) {
+            // xLOAD_0 is 0x1a + 4 * (type offset), likewise xSTORE_0 from 0x3b
+            int base = opcode < ISTORE ? 0x1a + (opcode - ILOAD) * 4 : 0x3b + (opcode - ISTORE) * 4;
+            op(base + index, stackChange);
+        } else if (index <= 255) {
+            op1(opcode, index, stackChange);
+        } else {
+            u1(0xc4); // wide
+            op2(opcode, index, stackChange);
+        }
+    }
+
+    void iinc(int index, int amount) {
+        locals(index + 1);
+        if (index <= 255 && amount >= Byte.MIN_VALUE && amount <= Byte.MAX_VALUE) {
+            u1(IINC);
+            u1(index);
+            u1(amount);
+        } else {
+            u1(0xc4); // wide
+            u1(IINC);
+            u2(index);
+            u2(amount);
+        }
+    }
+
+    void iconst(int value, ClassFile cf) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op1(BIPUSH, value & 0xff, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op2(SIPUSH, value & 0xffff, 1);
+        } else {
+            op2(LDC_W, cf.integer(value), 1);
+        }
+    }
+
+    void fconst(float value, ClassFile cf) {
+        if (Float.floatToRawIntBits(value) == 0 || value == 1 || value == 2) {
+            op(FCONST_0 + (int) value, 1);
+        } else {
+            op2(LDC_W, cf.real(value), 1);
+        }
+    }
+
+    Label label() {
+        Label l = new Label();
+        labels.add(l);
+        return l;
+    }
+
+    void branch(int opcode, Label target, int stackChange) {
+        target.uses.add(length);
+        op2(opcode, 0, stackChange);
+    }
+
+    void mark(Label l) {
+        l.position = length;
+    }
+
+    /*
+    Fills in the offsets of every jump once all labels are placed
+     */
+    void resolve() {
+        for (Label l: labels) {
+            for (int at: l.uses) {
+                int offset = l.position - at;
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new RuntimeException("Jump too far for the JVM");
+                }
+                code[at + 1] = (byte) (offset >> 8);
+                code[at + 2] = (byte) offset;
+            }
+        }
+    }
+
+    private void adjust(int stackChange) {
+        stack += stackChange;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void u1(int b) {
+        if (length == code.length) {
+            byte[] grown = new byte[code.length * 2];
+            System.arraycopy(code, 0, grown, 0, length);
+            code = grown;
+        }
+        code[length++] = (byte) b;
+    }
+
+    private void u2(int s) {
+        u1(s >> 8);
+        u1(s);
+    }
+}
+
+/*
+Jump target inside a Code. Jumps can be added before the label is placed
+ */
+class Label {
+    int position = -1;
+    ArrayList<Integer> uses = new ArrayList<>();
+}
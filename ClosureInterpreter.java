@@ -0,0 +1,528 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Alternative engine that compiles every FunctionNode once into a tree of
+pre-linked closures. The node kind and the static operand types are
+decided while compiling, so running a statement is a chain of direct
+calls with no instanceof dispatch. Integer and real expressions are
+computed on raw int/float values and only boxed when they are stored.
+ */
+public class ClosureInterpreter implements ExecutionEngine {
+
+    interface Stmt {
+        void exec(InterpreterDataType[] f) throws SyntaxErrorException;
+    }
+
+    interface IntExpr {
+        int eval(InterpreterDataType[] f);
+    }
+
+    interface RealExpr {
+        float eval(InterpreterDataType[] f);
+    }
+
+    interface StringExpr {
+        String eval(InterpreterDataType[] f);
+    }
+
+    interface CharExpr {
+        char eval(InterpreterDataType[] f);
+    }
+
+    interface BoolExpr {
+        boolean eval(InterpreterDataType[] f);
+    }
+
+    // Produces the value stored into a variable or passed to a call
+    interface ValueExpr {
+        InterpreterDataType eval(InterpreterDataType[] f);
+    }
+
+    static class CompiledFunction {
+        FunctionNode fn;
+        Stmt body;
+
+        CompiledFunction(FunctionNode fn) {
+            this.fn = fn;
+        }
+    }
+
+    ProgramNode pn;
+    HashMap<String, CompiledFunction> functions;
+    CallStack stack;
+    private FunctionNode current;
+
+    public ClosureInterpreter(ProgramNode pn) throws SyntaxErrorException {
+        this.pn = pn;
+        stack = new CallStack();
+        functions = new HashMap<>();
+        new Resolver().resolve(pn);
+        new TypeChecker().check(pn);
+
+        /*
+        Create every function first so calls can link to functions that
+        haven't been compiled yet, including themselves
+         */
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                functions.put(fn.getName(), new CompiledFunction(fn));
+            }
+        }
+        for (CompiledFunction cf: functions.values()) {
+            current = cf.fn;
+            cf.body = block(cf.fn.statements());
+        }
+    }
+
+    public void run(String name, ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        CompiledFunction cf = functions.get(name);
+        if (cf == null) {
+            throw new RuntimeException("Function " + name + " is not defined.");
+        }
+        if (args.size() != cf.fn.getParams().size()) {
+            throw new RuntimeException("Incorrect number of arguments for function " + name);
+        }
+        invoke(cf, args);
+    }
+
+    private void invoke(CompiledFunction cf, ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        Frame frame = stack.push(cf.fn);
+        try {
+            frame.bind(args);
+            cf.body.exec(frame.slots);
+        } finally {
+            stack.pop();
+        }
+    }
+
+    /*
+    Calls from compiled code, value arguments are new cells already
+     */
+    private void call(CompiledFunction cf, Object[] args) throws SyntaxErrorException {
+        Frame frame = stack.push(cf.fn);
+        try {
+            frame.bind(args, 0, args.length);
+            cf.body.exec(frame.slots);
+        } finally {
+            stack.pop();
+        }
+    }
+
+    /*
+    Statements
+     */
+
+    private Stmt block(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null || statements.isEmpty()) {
+            return f -> {};
+        }
+        if (statements.size() == 1) {
+            return statement(statements.get(0));
+        }
+        Stmt[] body = new Stmt[statements.size()];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = statement(statements.get(i));
+        }
+        return f -> {
+            for (Stmt s: body) {
+                s.exec(f);
+            }
+        };
+    }
+
+    private Stmt statement(StatementNode s) throws SyntaxErrorException {
+        if (s instanceof AssignmentNode) {
+            return assignment((AssignmentNode) s);
+        } else if (s instanceof IfNode) {
+            return ifChain((IfNode) s);
+        } else if (s instanceof ForNode) {
+            return forLoop((ForNode) s);
+        } else if (s instanceof WhileNode) {
+            BoolExpr condition = bool(((WhileNode) s).getCondition());
+            Stmt body = block(((WhileNode) s).statements());
+            return f -> {
+                while (condition.eval(f)) {
+                    body.exec(f);
+                }
+            };
+        } else if (s instanceof RepeatNode) {
+            BoolExpr condition = bool(((RepeatNode) s).getCondition());
+            Stmt body = block(((RepeatNode) s).statements());
+            return f -> {
+                do {
+                    body.exec(f);
+                } while (!condition.eval(f));
+            };
+        } else if (s instanceof FunctionCallNode) {
+            return call((FunctionCallNode) s);
+        } else if (s instanceof SiteNode) {
+            return f -> { }; // only counted when profiling
+        }
+        throw new SyntaxErrorException("Invalid statement.");
+    }
+
+    private Stmt assignment(AssignmentNode a) throws SyntaxErrorException {
+        int slot = a.getTarget().getSlot();
+        Token.tokenType targetType = slotType(slot);
+        Token.tokenType valType = typeOf(a.getVal());
+        if (targetType != valType) {
+            throw new SyntaxErrorException("Cannot assign " + valType + " to " + a.getTarget().getName() + " (" + targetType + ")");
+        }
+        Node val = a.getVal();
+        // Written into the variable's cell, so var parameters update the caller
+        switch (targetType) {
+            case INTEGERLIT -> {
+                IntExpr e = integer(val);
+                return f -> ((IntegerDataType) f[slot]).setVal(e.eval(f));
+            }
+            case REALLIT -> {
+                RealExpr e = real(val);
+                return f -> ((RealDataType) f[slot]).setVal(e.eval(f));
+            }
+            case STRINGLIT -> {
+                StringExpr e = string(val);
+                return f -> ((StringDataType) f[slot]).setVal(e.eval(f));
+            }
+            case CHARLIT -> {
+                CharExpr e = character(val);
+                return f -> ((CharacterDataType) f[slot]).setVal(e.eval(f));
+            }
+            default -> {
+                BoolExpr e = bool(val);
+                return f -> ((BoolDataType) f[slot]).setVal(e.eval(f));
+            }
+        }
+    }
+
+    private Stmt ifChain(IfNode i) throws SyntaxErrorException {
+        ArrayList<BoolExpr> conditions = new ArrayList<>();
+        ArrayList<Stmt> blocks = new ArrayList<>();
+        for (IfNode n = i; n != null; n = n.getElseBlock()) {
+            conditions.add(bool(n.getCondition()));
+            blocks.add(block(n.statements()));
+        }
+        BoolExpr[] c = conditions.toArray(new BoolExpr[0]);
+        Stmt[] b = blocks.toArray(new Stmt[0]);
+        if (c.length == 1) {
+            BoolExpr condition = c[0];
+            Stmt body = b[0];
+            return f -> {
+                if (condition.eval(f)) {
+                    body.exec(f);
+                }
+            };
+        }
+        return f -> {
+            for (int k = 0; k < c.length; k++) {
+                if (c[k].eval(f)) {
+                    b[k].exec(f);
+                    return;
+                }
+            }
+        };
+    }
+
+    private Stmt forLoop(ForNode fl) throws SyntaxErrorException {
+        if (!(fl.getExpr() instanceof VariableRefNode) || slotType(((VariableRefNode) fl.getExpr()).getSlot()) != Token.tokenType.INTEGERLIT) {
+            throw new SyntaxErrorException("For loop needs an integer control variable.");
+        }
+        int slot = ((VariableRefNode) fl.getExpr()).getSlot();
+        IntExpr from = integer(fl.getFrom());
+        IntExpr to = integer(fl.getTo());
+        Stmt body = block(fl.statements());
+        return f -> {
+            int end = to.eval(f);
+            IntegerDataType control = (IntegerDataType) f[slot];
+            for (int i = from.eval(f); i <= end; i++) {
+                control.setVal(i);
+                body.exec(f);
+            }
+        };
+    }
+
+    /*
+    Built-ins are not executed by the Interpreter either, their arguments
+    have no side effects so the call compiles to nothing
+     */
+    private Stmt call(FunctionCallNode fc) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(fc.getName());
+        if (fn == null) {
+            throw new SyntaxErrorException("Function " + fc.getName() + " is not defined.");
+        }
+        if (fn instanceof BuiltInFunction) {
+            return f -> {};
+        }
+        ArrayList<ParameterNode> fcParams = fc.getParams();
+        ArrayList<VariableNode> fnParams = fn.getParams();
+        if (fcParams.size() != fnParams.size()) {
+            throw new SyntaxErrorException("Incorrect number of parameters in " + fc.getName() + ".");
+        }
+        ValueExpr[] args = new ValueExpr[fcParams.size()];
+        for (int i = 0; i < args.length; i++) {
+            Node arg = fcParams.get(i).getVar();
+            Token.tokenType paramType = normalize(fnParams.get(i).type());
+            if (typeOf(arg) != paramType) {
+                throw new SyntaxErrorException("Argument " + (i + 1) + " of " + fc.getName() + " must be " + paramType);
+            }
+            if (fnParams.get(i).isChangeable() && arg instanceof VariableRefNode) {
+                int slot = ((VariableRefNode) arg).getSlot();
+                args[i] = f -> f[slot]; // var parameters share the caller's variable
+            } else {
+                args[i] = value(arg);
+            }
+        }
+        CompiledFunction callee = functions.get(fc.getName());
+        return f -> {
+            Object[] a = new Object[args.length];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = args[i].eval(f);
+            }
+            call(callee, a);
+        };
+    }
+
+    /*
+    Expressions
+     */
+
+    private ValueExpr value(Node n) throws SyntaxErrorException {
+        switch (typeOf(n)) {
+            case INTEGERLIT -> {
+                IntExpr e = integer(n);
+                return f -> new IntegerDataType(e.eval(f));
+            }
+            case REALLIT -> {
+                RealExpr e = real(n);
+                return f -> new RealDataType(e.eval(f));
+            }
+            case STRINGLIT -> {
+                StringExpr e = string(n);
+                return f -> new StringDataType(e.eval(f));
+            }
+            case CHARLIT -> {
+                CharExpr e = character(n);
+                return f -> new CharacterDataType(e.eval(f));
+            }
+            default -> {
+                BoolExpr e = bool(n);
+                return f -> new BoolDataType(e.eval(f));
+            }
+        }
+    }
+
+    private IntExpr integer(Node n) throws SyntaxErrorException {
+        if (n instanceof IntNode) {
+            int v = ((IntNode) n).getVal();
+            return f -> v;
+        } else if (n instanceof VariableRefNode) {
+            int slot = ((VariableRefNode) n).getSlot();
+            return f -> ((IntegerDataType) f[slot]).getVal();
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            IntExpr l = integer(m.left());
+            IntExpr r = integer(m.right());
+            return switch (m.op) {
+                case ADD -> f -> l.eval(f) + r.eval(f);
+                case SUB -> f -> l.eval(f) - r.eval(f);
+                case MUL -> f -> l.eval(f) * r.eval(f);
+                case DIV -> f -> l.eval(f) / r.eval(f);
+                case MOD -> f -> l.eval(f) % r.eval(f);
+            };
+        }
+        throw new SyntaxErrorException("Expected an integer expression: " + n);
+    }
+
+    private RealExpr real(Node n) throws SyntaxErrorException {
+        if (n instanceof RealNode) {
+            float v = ((RealNode) n).getVal();
+            return f -> v;
+        } else if (n instanceof VariableRefNode) {
+            int slot = ((VariableRefNode) n).getSlot();
+            return f -> ((RealDataType) f[slot]).getVal();
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            RealExpr l = real(m.left());
+            RealExpr r = real(m.right());
+            return switch (m.op) {
+                case ADD -> f -> l.eval(f) + r.eval(f);
+                case SUB -> f -> l.eval(f) - r.eval(f);
+                case MUL -> f -> l.eval(f) * r.eval(f);
+                case DIV -> f -> l.eval(f) / r.eval(f);
+                case MOD -> f -> l.eval(f) % r.eval(f);
+            };
+        }
+        throw new SyntaxErrorException("Expected a real expression: " + n);
+    }
+
+    /*
+    Integer operands of a comparison against a real are widened
+     */
+    private RealExpr numeric(Node n) throws SyntaxErrorException {
+        if (typeOf(n) == Token.tokenType.INTEGERLIT) {
+            IntExpr e = integer(n);
+            return f -> e.eval(f);
+        }
+        return real(n);
+    }
+
+    private StringExpr string(Node n) throws SyntaxErrorException {
+        if (n instanceof StringNode) {
+            String v = ((StringNode) n).getVal();
+            return f -> v;
+        } else if (n instanceof VariableRefNode) {
+            int slot = ((VariableRefNode) n).getSlot();
+            return f -> ((StringDataType) f[slot]).getVal();
+        } else if (n instanceof MathOpNode && ((MathOpNode) n).op == MathOpNode.MathOp.ADD) {
+            StringExpr l = string(((MathOpNode) n).left());
+            StringExpr r = string(((MathOpNode) n).right());
+            return f -> l.eval(f) + r.eval(f);
+        }
+        throw new SyntaxErrorException("Expected a string expression: " + n);
+    }
+
+    private CharExpr character(Node n) throws SyntaxErrorException {
+        if (n instanceof CharNode) {
+            char v = ((CharNode) n).getVal();
+            return f -> v;
+        } else if (n instanceof VariableRefNode) {
+            int slot = ((VariableRefNode) n).getSlot();
+            return f -> ((CharacterDataType) f[slot]).getVal();
+        }
+        throw new SyntaxErrorException("Expected a character expression: " + n);
+    }
+
+    private BoolExpr bool(Node n) throws SyntaxErrorException {
+        if (n instanceof BooleanNode) {
+            boolean v = ((BooleanNode) n).getVal();
+            return f -> v;
+        } else if (n instanceof VariableRefNode) {
+            int slot = ((VariableRefNode) n).getSlot();
+            return f -> ((BoolDataType) f[slot]).getVal();
+        } else if (n instanceof BoolCompNode) {
+            return comparison((BoolCompNode) n);
+        }
+        throw new SyntaxErrorException("Expected a boolean expression: " + n);
+    }
+
+    /*
+    Comparisons only take place between the same data types, except that
+    integers and reals can be compared with each other
+     */
+    private BoolExpr comparison(BoolCompNode b) throws SyntaxErrorException {
+        Token.tokenType lt = typeOf(b.left());
+        Token.tokenType rt = typeOf(b.right());
+        Token.tokenType op = b.condition();
+        if (lt == Token.tokenType.INTEGERLIT && rt == Token.tokenType.INTEGERLIT) {
+            IntExpr l = integer(b.left());
+            IntExpr r = integer(b.right());
+            return switch (op) {
+                case GREATERTHAN -> f -> l.eval(f) > r.eval(f);
+                case LESSTHAN -> f -> l.eval(f) < r.eval(f);
+                case GREATEREQ -> f -> l.eval(f) >= r.eval(f);
+                case LESSEQ -> f -> l.eval(f) <= r.eval(f);
+                case EQUALS -> f -> l.eval(f) == r.eval(f);
+                case NOTEQ -> f -> l.eval(f) != r.eval(f);
+                default -> throw new SyntaxErrorException("Unexpected boolean comparison operation type");
+            };
+        } else if (isNumeric(lt) && isNumeric(rt)) {
+            RealExpr l = numeric(b.left());
+            RealExpr r = numeric(b.right());
+            return switch (op) {
+                case GREATERTHAN -> f -> l.eval(f) > r.eval(f);
+                case LESSTHAN -> f -> l.eval(f) < r.eval(f);
+                case GREATEREQ -> f -> l.eval(f) >= r.eval(f);
+                case LESSEQ -> f -> l.eval(f) <= r.eval(f);
+                case EQUALS -> f -> l.eval(f) == r.eval(f);
+                case NOTEQ -> f -> l.eval(f) != r.eval(f);
+                default -> throw new SyntaxErrorException("Unexpected boolean comparison operation type");
+            };
+        } else if (lt == Token.tokenType.CHARLIT && rt == Token.tokenType.CHARLIT) {
+            CharExpr l = character(b.left());
+            CharExpr r = character(b.right());
+            return switch (op) {
+                case GREATERTHAN -> f -> l.eval(f) > r.eval(f);
+                case LESSTHAN -> f -> l.eval(f) < r.eval(f);
+                case GREATEREQ -> f -> l.eval(f) >= r.eval(f);
+                case LESSEQ -> f -> l.eval(f) <= r.eval(f);
+                case EQUALS -> f -> l.eval(f) == r.eval(f);
+                case NOTEQ -> f -> l.eval(f) != r.eval(f);
+                default -> throw new SyntaxErrorException("Unexpected boolean comparison operation type");
+            };
+        } else if (lt == Token.tokenType.STRINGLIT && rt == Token.tokenType.STRINGLIT) {
+            StringExpr l = string(b.left());
+            StringExpr r = string(b.right());
+            return switch (op) {
+                case EQUALS -> f -> l.eval(f).equals(r.eval(f));
+                case NOTEQ -> f -> !l.eval(f).equals(r.eval(f));
+                default -> throw new SyntaxErrorException("Incompatible operands for " + op);
+            };
+        } else if (lt == Token.tokenType.BOOLEAN && rt == Token.tokenType.BOOLEAN) {
+            BoolExpr l = bool(b.left());
+            BoolExpr r = bool(b.right());
+            return switch (op) {
+                case EQUALS -> f -> l.eval(f) == r.eval(f);
+                case NOTEQ -> f -> l.eval(f) != r.eval(f);
+                default -> throw new SyntaxErrorException("Incompatible operands for " + op);
+            };
+        }
+        throw new SyntaxErrorException("Incompatible operands for " + op + ": " + b);
+    }
+
+    /*
+    Static types
+     */
+
+    private Token.tokenType typeOf(Node n) throws SyntaxErrorException {
+        return typeOf(n, current);
+    }
+
+    /*
+    Static type of an expression inside fn, shared with the bytecode
+    compiler. Checked programs already carry it on the node
+     */
+    static Token.tokenType typeOf(Node n, FunctionNode fn) throws SyntaxErrorException {
+        if (n.staticType() != null) {
+            return n.staticType();
+        }
+        if (n instanceof IntNode) {
+            return Token.tokenType.INTEGERLIT;
+        } else if (n instanceof RealNode) {
+            return Token.tokenType.REALLIT;
+        } else if (n instanceof StringNode) {
+            return Token.tokenType.STRINGLIT;
+        } else if (n instanceof CharNode) {
+            return Token.tokenType.CHARLIT;
+        } else if (n instanceof BooleanNode || n instanceof BoolCompNode) {
+            return Token.tokenType.BOOLEAN;
+        } else if (n instanceof VariableRefNode) {
+            return normalize(fn.slots()[((VariableRefNode) n).getSlot()].type());
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            Token.tokenType l = typeOf(m.left(), fn);
+            Token.tokenType r = typeOf(m.right(), fn);
+            if (l == r && isNumeric(l)) {
+                return l;
+            } else if (l == Token.tokenType.STRINGLIT && r == Token.tokenType.STRINGLIT && m.op == MathOpNode.MathOp.ADD) {
+                return l;
+            }
+            throw new SyntaxErrorException("Invalid types for operands of MathOpNode: " + m);
+        }
+        throw new SyntaxErrorException("Illegal Node type in expression: " + n);
+    }
+
+    private Token.tokenType slotType(int slot) throws SyntaxErrorException {
+        return normalize(current.slots()[slot].type());
+    }
+
+    /*
+    Boolean constants report TRUE/FALSE as their type
+     */
+    static Token.tokenType normalize(Token.tokenType t) {
+        return (t == Token.tokenType.TRUE || t == Token.tokenType.FALSE) ? Token.tokenType.BOOLEAN : t;
+    }
+
+    static boolean isNumeric(Token.tokenType t) {
+        return t == Token.tokenType.INTEGERLIT || t == Token.tokenType.REALLIT;
+    }
+}
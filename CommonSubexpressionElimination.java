@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Common subexpression elimination inside a block. When a math operation
+comes up again in a later statement of the same block, and none of its
+variables has been written in between, the first occurrence is worked
+out into a new variable and every occurrence reads that variable. When
+the first occurrence is the whole value of an assignment, the later
+ones read the assigned variable instead.
+
+Operations that read an array element are left alone.
+
+Writes are the assignment targets, every variable passed to a call and
+everything a nested if or loop might write. As in
+LoopInvariantCodeMotion, writing a var parameter counts as writing all
+of them. Nested blocks are handled on their own.
+
+Needs a well-typed program, the new variables get the static type of
+the expression they hold.
+
+Pays off on engines that evaluate an operation node by node: the
+Interpreter, quickened or not, and the BytecodeVM. The
+ClosureInterpreter gets slower, a repeated operation costs it less than
+the extra assignment does, so programs for it shouldn't go through this
+pass. Benchmark cse measures each engine.
+ */
+public class CommonSubexpressionElimination {
+
+    /*
+    First occurrence of an expression in the block so far
+     */
+    private static class Available {
+        final MathOpNode node;
+        final Consumer<Node> replace;
+        final HashSet<String> reads;
+        String temp;
+
+        Available(MathOpNode node, Consumer<Node> replace) {
+            this.node = node;
+            this.replace = replace;
+            reads = new HashSet<>();
+            reads(node, reads);
+        }
+    }
+
+    private FunctionNode current;
+    private int removed;
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        new TypeChecker().check(pn);
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                current = fn;
+                optimizeBlock(fn.statements());
+            }
+        }
+    }
+
+    /*
+    Number of evaluations replaced by a read of an earlier result
+     */
+    public int removed() {
+        return removed;
+    }
+
+    private void optimizeBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        HashMap<String, Available> available = new HashMap<>();
+        ArrayList<StatementNode> result = new ArrayList<>(statements.size());
+        for (StatementNode s: statements) {
+            HashSet<String> written = new HashSet<>();
+            if (s instanceof AssignmentNode) {
+                AssignmentNode a = (AssignmentNode) s;
+                visit(a.getVal(), a::setVal, available, result);
+                written.add(a.getTarget().getName());
+            } else if (s instanceof FunctionCallNode) {
+                for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                    if (p.getVar() instanceof VariableRefNode) {
+                        written.add(((VariableRefNode) p.getVar()).getName());
+                    } else {
+                        visit(p.getVar(), p::setVar, available, result);
+                    }
+                }
+            } else {
+                if (s instanceof IfNode) {
+                    for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                        optimizeBlock(i.statements());
+                    }
+                } else if (s instanceof ForNode) {
+                    optimizeBlock(((ForNode) s).statements());
+                } else if (s instanceof WhileNode) {
+                    optimizeBlock(((WhileNode) s).statements());
+                } else if (s instanceof RepeatNode) {
+                    optimizeBlock(((RepeatNode) s).statements());
+                }
+                LoopInvariantCodeMotion.writes(new ArrayList<>(List.of(s)), written);
+            }
+            result.add(s);
+            kill(available, written);
+            if (s instanceof AssignmentNode) {
+                reuseTarget((AssignmentNode) s, available);
+            }
+        }
+        statements.clear();
+        statements.addAll(result);
+    }
+
+    /*
+    Looks for math operations in n, largest first. A repeated one is
+    replaced by a read of the variable holding its first result
+     */
+    private void visit(Node n, Consumer<Node> replace, HashMap<String, Available> available, ArrayList<StatementNode> result) throws SyntaxErrorException {
+        if (n instanceof MathOpNode && indexed(n)) {
+            visit(((MathOpNode) n).left(), ((MathOpNode) n)::setLeft, available, result);
+            visit(((MathOpNode) n).right(), ((MathOpNode) n)::setRight, available, result);
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            String key = key(m);
+            Available first = available.get(key);
+            if (first != null) {
+                if (first.temp == null) {
+                    first.temp = Inliner.temp(current, "cse", "", LoopInvariantCodeMotion.declaredType(m.staticType()));
+                    result.add(evaluatedAt(first.node, result), new AssignmentNode(first.temp, first.node));
+                    first.replace.accept(ref(first.temp, m.staticType()));
+                }
+                replace.accept(ref(first.temp, m.staticType()));
+                removed++;
+                return;
+            }
+            available.put(key, new Available(m, replace));
+            visit(m.left(), m::setLeft, available, result);
+            visit(m.right(), m::setRight, available, result);
+        } else if (n instanceof BoolCompNode) {
+            BoolCompNode b = (BoolCompNode) n;
+            visit(b.left(), b::setLeft, available, result);
+            visit(b.right(), b::setRight, available, result);
+        }
+    }
+
+    /*
+    After x := e the value of e is already in x, later occurrences can
+    read x for as long as neither x nor the variables of e are written
+     */
+    private static void reuseTarget(AssignmentNode a, HashMap<String, Available> available) {
+        if (!(a.getVal() instanceof MathOpNode) || a.getTarget().getArrIndexExpr() != null) {
+            return;
+        }
+        Available first = available.get(key(a.getVal()));
+        if (first != null && first.node == a.getVal() && first.temp == null) {
+            first.temp = a.getTarget().getName();
+            first.reads.add(first.temp);
+        }
+    }
+
+    /*
+    Index of the statement in result that evaluates n, which may be a new
+    variable's assignment by now. result.size() when it is the statement
+    being looked at
+     */
+    private static int evaluatedAt(Node n, ArrayList<StatementNode> result) {
+        for (int i = 0; i < result.size(); i++) {
+            StatementNode s = result.get(i);
+            if (s instanceof AssignmentNode && contains(((AssignmentNode) s).getVal(), n)) {
+                return i;
+            } else if (s instanceof FunctionCallNode) {
+                for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                    if (contains(p.getVar(), n)) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return result.size();
+    }
+
+    private static boolean contains(Node tree, Node n) {
+        if (tree == n) {
+            return true;
+        } else if (tree instanceof MathOpNode) {
+            return contains(((MathOpNode) tree).left(), n) || contains(((MathOpNode) tree).right(), n);
+        } else if (tree instanceof BoolCompNode) {
+            return contains(((BoolCompNode) tree).left(), n) || contains(((BoolCompNode) tree).right(), n);
+        }
+        return false;
+    }
+
+    /*
+    Forgets the expressions that read a variable that was just written
+     */
+    private void kill(HashMap<String, Available> available, HashSet<String> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        for (VariableNode p: current.getParams()) {
+            if (p.isChangeable() && written.contains(p.name())) {
+                for (VariableNode q: current.getParams()) {
+                    if (q.isChangeable()) {
+                        written.add(q.name());
+                    }
+                }
+                break;
+            }
+        }
+        for (Iterator<Available> it = available.values().iterator(); it.hasNext(); ) {
+            for (String name: it.next().reads) {
+                if (written.contains(name)) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /*
+    True when n reads an array element. Those operations are left alone,
+    the key only has the array's name
+     */
+    private static boolean indexed(Node n) {
+        if (n instanceof VariableRefNode) {
+            return ((VariableRefNode) n).getArrIndexExpr() != null;
+        } else if (n instanceof MathOpNode) {
+            return indexed(((MathOpNode) n).left()) || indexed(((MathOpNode) n).right());
+        }
+        return false;
+    }
+
+    private static VariableRefNode ref(String name, Token.tokenType type) {
+        VariableRefNode v = new VariableRefNode(name);
+        v.setStaticType(type);
+        return v;
+    }
+
+    private static void reads(Node n, HashSet<String> names) {
+        if (n instanceof VariableRefNode) {
+            names.add(((VariableRefNode) n).getName());
+        } else if (n instanceof MathOpNode) {
+            reads(((MathOpNode) n).left(), names);
+            reads(((MathOpNode) n).right(), names);
+        }
+    }
+
+    /*
+    Two expressions with the same key compute the same value from the
+    same variables
+     */
+    private static String key(Node n) {
+        if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            return "(" + m.op + " " + key(m.left()) + " " + key(m.right()) + ")";
+        } else if (n instanceof VariableRefNode) {
+            return "v:" + ((VariableRefNode) n).getName();
+        } else if (n instanceof IntNode) {
+            return "i:" + ((IntNode) n).getVal();
+        } else if (n instanceof RealNode) {
+            return "r:" + Float.floatToRawIntBits(((RealNode) n).getVal());
+        } else if (n instanceof StringNode) {
+            return "s:" + ((StringNode) n).getVal().length() + ":" + ((StringNode) n).getVal();
+        } else if (n instanceof CharNode) {
+            return "c:" + ((CharNode) n).getVal();
+        } else if (n instanceof BooleanNode) {
+            return "b:" + ((BooleanNode) n).getVal();
+        }
+        return "?" + System.identityHashCode(n);
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/*
+Tree-shaking pass that runs after the Optimizer. Starting at the entry
+function it removes statements that can never run, then follows the
+calls that are left to find every function the program can reach, and
+drops the rest from the ProgramNode. Built-ins are always kept.
+
+Statements are dead when their condition is made of literals, which is
+what the Optimizer leaves behind for conditions on constants:
+- if/elsif branches whose condition is false, and every branch after
+  one whose condition is true. A true first branch replaces the if
+- while loops whose condition is false
+- for loops whose literal bounds are empty
+- a repeat loop whose condition is true runs its body once and is
+  replaced by it
+ */
+public class DeadCodeEliminator {
+
+    private final String entry;
+    private int functionsRemoved;
+    private int statementsRemoved;
+
+    public DeadCodeEliminator(String entry) {
+        this.entry = entry;
+    }
+
+    public void eliminate(ProgramNode pn) throws SyntaxErrorException {
+        if (!pn.getFunctions().containsKey(entry)) {
+            throw new SyntaxErrorException("Entry function " + entry + " is not defined.");
+        }
+        HashSet<String> reachable = new HashSet<>();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        reachable.add(entry);
+        work.add(entry);
+        while (!work.isEmpty()) {
+            FunctionNode fn = pn.getFunctions().get(work.poll());
+            if (fn == null || fn instanceof BuiltInFunction) {
+                continue;
+            }
+            pruneBlock(fn.statements());
+            ArrayList<String> callees = new ArrayList<>();
+            Inliner.calls(fn.statements(), callees);
+            for (String callee: callees) {
+                if (reachable.add(callee)) {
+                    work.add(callee);
+                }
+            }
+        }
+        int before = pn.getFunctions().size();
+        pn.getFunctions().values().removeIf(fn -> !(fn instanceof BuiltInFunction) && !reachable.contains(fn.getName()));
+        functionsRemoved += before - pn.getFunctions().size();
+    }
+
+    public int functionsRemoved() {
+        return functionsRemoved;
+    }
+
+    public int statementsRemoved() {
+        return statementsRemoved;
+    }
+
+    /*
+    Rewrites the list in place, the nodes keep pointing at it
+     */
+    private void pruneBlock(ArrayList<StatementNode> statements) {
+        if (statements == null) {
+            return;
+        }
+        ArrayList<StatementNode> live = new ArrayList<>(statements.size());
+        for (StatementNode s: statements) {
+            if (s instanceof IfNode) {
+                pruneIf((IfNode) s, live);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                if (constant(w.getCondition()) == Boolean.FALSE) {
+                    statementsRemoved++;
+                } else {
+                    pruneBlock(w.statements());
+                    live.add(w);
+                }
+            } else if (s instanceof RepeatNode) {
+                RepeatNode r = (RepeatNode) s;
+                pruneBlock(r.statements());
+                if (constant(r.getCondition()) == Boolean.TRUE) {
+                    statementsRemoved++;
+                    live.addAll(r.statements());
+                } else {
+                    live.add(r);
+                }
+            } else if (s instanceof ForNode) {
+                ForNode f = (ForNode) s;
+                if (f.getFrom() instanceof IntNode && f.getTo() instanceof IntNode
+                        && ((IntNode) f.getFrom()).getVal() > ((IntNode) f.getTo()).getVal()) {
+                    statementsRemoved++;
+                } else {
+                    pruneBlock(f.statements());
+                    live.add(f);
+                }
+            } else {
+                live.add(s);
+            }
+        }
+        statements.clear();
+        statements.addAll(live);
+    }
+
+    /*
+    Keeps the branches of an if chain that can still be taken. The
+    statements of a first branch that is always taken go straight into
+    the enclosing block
+     */
+    private void pruneIf(IfNode i, ArrayList<StatementNode> live) {
+        ArrayList<IfNode> branches = new ArrayList<>();
+        for (IfNode b = i; b != null; b = b.getElseBlock()) {
+            Boolean taken = constant(b.getCondition());
+            if (taken == Boolean.FALSE) {
+                statementsRemoved++;
+                continue;
+            }
+            pruneBlock(b.statements());
+            branches.add(b);
+            if (taken == Boolean.TRUE) {
+                for (IfNode rest = b.getElseBlock(); rest != null; rest = rest.getElseBlock()) {
+                    statementsRemoved++;
+                }
+                break;
+            }
+        }
+        if (branches.isEmpty()) {
+            return;
+        }
+        for (int k = 0; k < branches.size(); k++) {
+            branches.get(k).addElseBlock(k + 1 < branches.size() ? branches.get(k + 1) : null);
+        }
+        IfNode first = branches.get(0);
+        if (constant(first.getCondition()) == Boolean.TRUE) {
+            statementsRemoved++;
+            live.addAll(first.statements());
+        } else {
+            live.add(first);
+        }
+    }
+
+    /*
+    Value of a condition on literals, null when it depends on variables
+     */
+    private static Boolean constant(BoolCompNode b) {
+        return Optimizer.compare(b.condition(), b.left(), b.right());
+    }
+}
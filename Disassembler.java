@@ -0,0 +1,45 @@
+/*
+Prints Chunks in a readable form, one instruction per line with its
+offset, operands and what the operands refer to
+ */
+public class Disassembler {
+
+    public static String disassemble(Chunk c) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("define ").append(c.fn.getName())
+                .append("  (slots ").append(c.fn.frameSize())
+                .append(", stack ").append(c.maxStack)
+                .append(", objects ").append(c.maxObjects).append(")\n");
+        int pc = 0;
+        while (pc < c.code.length) {
+            pc = instruction(c, pc, sb);
+        }
+        return sb.toString();
+    }
+
+    /*
+    Appends the instruction at pc and returns the offset of the next one
+     */
+    static int instruction(Chunk c, int pc, StringBuilder sb) {
+        int op = c.code[pc];
+        int n = Bytecode.operands(op);
+        sb.append(String.format(n > 0 ? "%04d  %-8s" : "%04d  %s", pc, Bytecode.NAMES[op]));
+        for (int i = 1; i <= n; i++) {
+            sb.append(' ').append(c.code[pc + i]);
+        }
+        String note = switch (op) {
+            case Bytecode.ILOAD, Bytecode.FLOAD, Bytecode.SLOAD, Bytecode.CLOAD, Bytecode.BLOAD,
+                 Bytecode.ISTORE, Bytecode.FSTORE, Bytecode.SSTORE, Bytecode.CSTORE, Bytecode.BSTORE,
+                 Bytecode.REF -> c.fn.slots()[c.code[pc + 1]].name();
+            case Bytecode.FCONST -> String.valueOf(Float.intBitsToFloat(c.code[pc + 1]));
+            case Bytecode.SCONST -> "\"" + c.constants[c.code[pc + 1]] + "\"";
+            case Bytecode.CALL -> ((Chunk) c.constants[c.code[pc + 1]]).fn.getName();
+            default -> null;
+        };
+        if (note != null) {
+            sb.append("\t; ").append(note);
+        }
+        sb.append('\n');
+        return pc + 1 + n;
+    }
+}
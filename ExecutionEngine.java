@@ -0,0 +1,12 @@
+import java.util.ArrayList;
+
+/*
+Common entry point for the engines that can run a parsed program
+ */
+public interface ExecutionEngine {
+
+    /*
+    Runs the named function with the given arguments
+     */
+    void run(String name, ArrayList<InterpreterDataType> args) throws SyntaxErrorException;
+}
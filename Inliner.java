@@ -0,0 +1,467 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+Inlines calls to small functions. A call statement is replaced by a copy
+of the callee's statements, so no arguments are built and no frame is
+set up for it. Only functions that can't reach themselves through calls
+are inlined, and only when their body has no more nodes than the budget.
+Functions are done callees first, so the size of a callee already counts
+what was inlined into it and a copy never has to be expanded again.
+
+In the copy:
+- a var parameter whose argument is a variable becomes that variable,
+  so writes go straight to the caller like they do through the alias
+- a parameter the callee never writes becomes its argument when that is
+  a literal or a variable no var parameter of the same call can change.
+  The caller's own var parameters may all be the same variable, so when
+  one of them is passed to a var parameter, none of them is used this way
+- any other parameter gets a new variable, assigned the argument first
+- locals get a new variable, reset to the value a new frame starts with
+- constants become their value
+Calls to built-ins and to functions that aren't inlined stay calls.
+ */
+public class Inliner {
+
+    static final int DEFAULT_BUDGET = 24;
+
+    private final int budget;
+    private final Profile profile;
+    private ProgramNode pn;
+    private HashSet<String> recursive;
+    private FunctionNode current;
+    private int inlined;
+
+    public Inliner() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /*
+    budget is the largest callee inlined, in statements plus expression
+    nodes
+     */
+    public Inliner(int budget) {
+        this(budget, null);
+    }
+
+    /*
+    With a profile, call sites used at least Profile.HOT times get four
+    times the budget, and sites that never ran in a function that did
+    are only inlined when the callee has no statements. A SiteNode put
+    before the inlined statements is counted as the call site, so a site
+    that was inlined in the profiled run doesn't look unused
+     */
+    public Inliner(int budget, Profile profile) {
+        this.budget = budget;
+        this.profile = profile;
+    }
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        this.pn = pn;
+        recursive = new HashSet<>();
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction) && reaches(fn.getName(), fn.getName())) {
+                recursive.add(fn.getName());
+            }
+        }
+        HashSet<String> done = new HashSet<>();
+        for (String name: new ArrayList<>(pn.getFunctions().keySet())) {
+            calleesFirst(name, done);
+        }
+    }
+
+    /*
+    Number of calls replaced by the callee's statements
+     */
+    public int inlined() {
+        return inlined;
+    }
+
+    private void calleesFirst(String name, HashSet<String> done) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(name);
+        if (fn == null || fn instanceof BuiltInFunction || !done.add(name)) {
+            return;
+        }
+        ArrayList<String> callees = new ArrayList<>();
+        calls(fn.statements(), callees);
+        for (String callee: callees) {
+            calleesFirst(callee, done);
+        }
+        current = fn;
+        inlineBlock(fn.statements());
+    }
+
+    private boolean reaches(String from, String to) {
+        HashSet<String> seen = new HashSet<>();
+        ArrayList<String> work = new ArrayList<>();
+        work.add(from);
+        while (!work.isEmpty()) {
+            FunctionNode fn = pn.getFunctions().get(work.remove(work.size() - 1));
+            if (fn == null || fn instanceof BuiltInFunction) {
+                continue;
+            }
+            ArrayList<String> callees = new ArrayList<>();
+            calls(fn.statements(), callees);
+            for (String callee: callees) {
+                if (callee.equals(to)) {
+                    return true;
+                }
+                if (seen.add(callee)) {
+                    work.add(callee);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void inlineBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        ArrayList<StatementNode> result = new ArrayList<>(statements.size());
+        for (StatementNode s: statements) {
+            if (s instanceof FunctionCallNode) {
+                ArrayList<StatementNode> body = inline((FunctionCallNode) s);
+                if (body != null) {
+                    result.addAll(body);
+                    inlined++;
+                    continue;
+                }
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    inlineBlock(i.statements());
+                }
+            } else if (s instanceof ForNode) {
+                inlineBlock(((ForNode) s).statements());
+            } else if (s instanceof WhileNode) {
+                inlineBlock(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                inlineBlock(((RepeatNode) s).statements());
+            }
+            result.add(s);
+        }
+        statements.clear();
+        statements.addAll(result);
+    }
+
+    /*
+    The statements to put in place of the call, null when it stays a call
+     */
+    private ArrayList<StatementNode> inline(FunctionCallNode fc) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(fc.getName());
+        if (fn == null || fn instanceof BuiltInFunction || recursive.contains(fn.getName())
+                || fc.getParams().size() != fn.getParams().size()) {
+            return null;
+        }
+        int size = size(fn.statements(), null);
+        if (size < 0 || size > budget(fc)) {
+            return null;
+        }
+        HashSet<String> aliased = new HashSet<>();
+        for (int i = 0; i < fn.getParams().size(); i++) {
+            Node arg = fc.getParams().get(i).getVar();
+            if (fn.getParams().get(i).isChangeable() && arg instanceof VariableRefNode) {
+                VariableRefNode v = (VariableRefNode) arg;
+                VariableNode declaration = declaration(current, v.getName());
+                if (v.getArrIndexExpr() != null || declaration == null || !declaration.isChangeable()) {
+                    return null;
+                }
+                aliased.add(v.getName());
+            }
+        }
+        aliases(aliased);
+        HashSet<String> written = new HashSet<>();
+        LoopInvariantCodeMotion.writes(fn.statements(), written);
+        HashMap<String, Node> names = new HashMap<>();
+        ArrayList<StatementNode> body = new ArrayList<>();
+        SiteNode site = profile == null ? null : profile.site(fc);
+        if (site != null) {
+            body.add(site);
+        }
+        for (int i = 0; i < fn.getParams().size(); i++) {
+            VariableNode p = fn.getParams().get(i);
+            Node arg = fc.getParams().get(i).getVar();
+            if (names.containsKey(p.name())) {
+                continue;
+            }
+            if (p.isChangeable() && arg instanceof VariableRefNode) {
+                names.put(p.name(), arg);
+            } else if (!written.contains(p.name()) && (literal(arg)
+                    || arg instanceof VariableRefNode && ((VariableRefNode) arg).getArrIndexExpr() == null && !aliased.contains(((VariableRefNode) arg).getName()))) {
+                names.put(p.name(), arg);
+            } else {
+                String temp = temp(p);
+                body.add(new AssignmentNode(temp, arg));
+                names.put(p.name(), new VariableRefNode(temp));
+            }
+        }
+        for (VariableNode v: fn.vars()) {
+            if (names.containsKey(v.name())) {
+                continue;
+            }
+            if (!v.isChangeable() && v.getVal() != null) {
+                names.put(v.name(), v.getVal());
+            } else {
+                String temp = temp(v);
+                body.add(new AssignmentNode(temp, initial(ClosureInterpreter.normalize(v.type()))));
+                names.put(v.name(), new VariableRefNode(temp));
+            }
+        }
+        for (String name: written) {
+            if (names.containsKey(name) && !(names.get(name) instanceof VariableRefNode)) {
+                return null; // a constant that gets written, left for the engines to report
+            }
+        }
+        for (StatementNode s: fn.statements()) {
+            body.add(copy(s, names));
+        }
+        return body;
+    }
+
+    /*
+    Two var parameters of the caller can be the same variable, passing one
+    of them to be changed might change all the others
+     */
+    private void aliases(HashSet<String> aliased) {
+        boolean any = false;
+        for (VariableNode p: current.getParams()) {
+            any |= p.isChangeable() && aliased.contains(p.name());
+        }
+        if (any) {
+            for (VariableNode p: current.getParams()) {
+                if (p.isChangeable()) {
+                    aliased.add(p.name());
+                }
+            }
+        }
+    }
+
+    private int budget(FunctionCallNode fc) {
+        if (profile == null || !profile.knows(fc)) {
+            return budget;
+        }
+        long calls = profile.executed(fc);
+        if (calls == 0 && profile.executed(current) > 0) {
+            return 0;
+        }
+        return calls >= Profile.HOT ? 4 * budget : budget;
+    }
+
+    /*
+    New variable of the caller for a parameter or local of the callee
+     */
+    private String temp(VariableNode v) throws SyntaxErrorException {
+        return temp(current, "inl", "_" + v.name(), LoopInvariantCodeMotion.declaredType(ClosureInterpreter.normalize(v.type())));
+    }
+
+    /*
+    Value a variable has when its frame is set up
+     */
+    static Node initial(Token.tokenType type) {
+        return switch (type) {
+            case INTEGERLIT -> new IntNode(0);
+            case REALLIT -> new RealNode(0);
+            case STRINGLIT -> new StringNode("");
+            case CHARLIT -> new CharNode(' ');
+            default -> new BooleanNode(true);
+        };
+    }
+
+    private static boolean literal(Node n) {
+        return n instanceof IntNode || n instanceof RealNode || n instanceof StringNode || n instanceof CharNode || n instanceof BooleanNode;
+    }
+
+    /*
+    Size of code a pass copies: statements plus expression nodes, -1 when an array element is used,
+    code that does isn't copied. SiteNodes are only there when profiling
+    and aren't counted, so profiling doesn't change what fits. The names
+    of the variables used go into used unless it is null
+     */
+    static int size(ArrayList<StatementNode> statements, HashSet<String> used) {
+        boolean[] indexed = new boolean[1];
+        int size = size(statements, used, indexed);
+        return indexed[0] ? -1 : size;
+    }
+
+    private static int size(ArrayList<StatementNode> statements, HashSet<String> used, boolean[] indexed) {
+        int size = 0;
+        if (statements == null) {
+            return size;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof SiteNode) {
+                continue;
+            }
+            size++;
+            if (s instanceof AssignmentNode) {
+                size += size(((AssignmentNode) s).getTarget(), used, indexed) + size(((AssignmentNode) s).getVal(), used, indexed);
+            } else if (s instanceof FunctionCallNode) {
+                for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                    size += size(p.getVar(), used, indexed);
+                }
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    size += size(i.getCondition(), used, indexed) + size(i.statements(), used, indexed);
+                }
+            } else if (s instanceof ForNode) {
+                ForNode f = (ForNode) s;
+                size += size(f.getExpr(), used, indexed) + size(f.getFrom(), used, indexed) + size(f.getTo(), used, indexed)
+                        + size(f.statements(), used, indexed);
+            } else if (s instanceof WhileNode) {
+                size += size(((WhileNode) s).getCondition(), used, indexed) + size(((WhileNode) s).statements(), used, indexed);
+            } else if (s instanceof RepeatNode) {
+                size += size(((RepeatNode) s).getCondition(), used, indexed) + size(((RepeatNode) s).statements(), used, indexed);
+            }
+        }
+        return size;
+    }
+
+    private static int size(Node n, HashSet<String> used, boolean[] indexed) {
+        if (n instanceof MathOpNode) {
+            return 1 + size(((MathOpNode) n).left(), used, indexed) + size(((MathOpNode) n).right(), used, indexed);
+        } else if (n instanceof BoolCompNode) {
+            return 1 + size(((BoolCompNode) n).left(), used, indexed) + size(((BoolCompNode) n).right(), used, indexed);
+        } else if (n instanceof VariableRefNode) {
+            if (used != null) {
+                used.add(((VariableRefNode) n).getName());
+            }
+            if (((VariableRefNode) n).getArrIndexExpr() != null) {
+                indexed[0] = true;
+            }
+        }
+        return 1;
+    }
+
+    /*
+    The param or variable of fn called name, null when there is none
+     */
+    static VariableNode declaration(FunctionNode fn, String name) {
+        for (VariableNode v: fn.getParams()) {
+            if (v.name().equals(name)) {
+                return v;
+            }
+        }
+        for (VariableNode v: fn.vars()) {
+            if (v.name().equals(name)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /*
+    Name of a variable or function a pass adds. Names in the source can't
+    contain a $, so it never clashes with one
+     */
+    static String hidden(String prefix, int n, String suffix) {
+        return "$" + prefix + n + suffix;
+    }
+
+    /*
+    Adds a variable of a declared type to fn and returns its name
+     */
+    static String temp(FunctionNode fn, String prefix, String suffix, Token.tokenType type) throws SyntaxErrorException {
+        String name = hidden(prefix, fn.vars().size(), suffix);
+        fn.vars().add(new VariableNode(name, type, true));
+        return name;
+    }
+
+    static StatementNode copy(StatementNode s, HashMap<String, Node> names) throws SyntaxErrorException {
+        if (s instanceof AssignmentNode) {
+            AssignmentNode a = (AssignmentNode) s;
+            return new AssignmentNode(((VariableRefNode) names.get(a.getTarget().getName())).getName(), copy(a.getVal(), names));
+        } else if (s instanceof FunctionCallNode) {
+            ArrayList<ParameterNode> params = new ArrayList<>();
+            for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                params.add(new ParameterNode(copy(p.getVar(), names)));
+            }
+            return new FunctionCallNode(((FunctionCallNode) s).getName(), params);
+        } else if (s instanceof IfNode) {
+            return copyIf((IfNode) s, names);
+        } else if (s instanceof ForNode) {
+            ForNode f = (ForNode) s;
+            return new ForNode(copy(f.getExpr(), names), copy(f.getFrom(), names), copy(f.getTo(), names), copy(f.statements(), names));
+        } else if (s instanceof WhileNode) {
+            WhileNode w = (WhileNode) s;
+            return new WhileNode((BoolCompNode) copy(w.getCondition(), names), copy(w.statements(), names));
+        } else if (s instanceof RepeatNode) {
+            RepeatNode r = (RepeatNode) s;
+            return new RepeatNode((BoolCompNode) copy(r.getCondition(), names), copy(r.statements(), names));
+        } else if (s instanceof SiteNode) {
+            return new SiteNode(((SiteNode) s).getSite()); // every copy counts for the same call site
+        }
+        throw new SyntaxErrorException("Can't inline statement " + s);
+    }
+
+    private static IfNode copyIf(IfNode i, HashMap<String, Node> names) throws SyntaxErrorException {
+        return new IfNode((BoolCompNode) copy(i.getCondition(), names), copy(i.statements(), names),
+                i.getElseBlock() == null ? null : copyIf(i.getElseBlock(), names));
+    }
+
+    private static ArrayList<StatementNode> copy(ArrayList<StatementNode> statements, HashMap<String, Node> names) throws SyntaxErrorException {
+        if (statements == null) {
+            return null;
+        }
+        ArrayList<StatementNode> l = new ArrayList<>(statements.size());
+        for (StatementNode s: statements) {
+            l.add(copy(s, names));
+        }
+        return l;
+    }
+
+    /*
+    Every node gets its own copy, the engines store their per-node state
+    on it
+     */
+    static Node copy(Node n, HashMap<String, Node> names) throws SyntaxErrorException {
+        if (n instanceof VariableRefNode) {
+            Node to = names.get(((VariableRefNode) n).getName());
+            if (to == null) {
+                throw new SyntaxErrorException("Variable " + ((VariableRefNode) n).getName() + " is not defined.");
+            }
+            return to instanceof VariableRefNode ? new VariableRefNode(((VariableRefNode) to).getName()) : copy(to, names);
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            return new MathOpNode(m.getOp(), copy(m.left(), names), copy(m.right(), names));
+        } else if (n instanceof BoolCompNode) {
+            BoolCompNode b = (BoolCompNode) n;
+            return new BoolCompNode(b.condition(), copy(b.left(), names), copy(b.right(), names));
+        } else if (n instanceof IntNode) {
+            return new IntNode(((IntNode) n).getVal());
+        } else if (n instanceof RealNode) {
+            return new RealNode(((RealNode) n).getVal());
+        } else if (n instanceof StringNode) {
+            return new StringNode(((StringNode) n).getVal());
+        } else if (n instanceof CharNode) {
+            return new CharNode(((CharNode) n).getVal());
+        } else if (n instanceof BooleanNode) {
+            return new BooleanNode(((BooleanNode) n).getVal());
+        }
+        throw new SyntaxErrorException("Can't inline expression " + n);
+    }
+
+    /*
+    Names of the functions called in statements, nested blocks included
+     */
+    static void calls(ArrayList<StatementNode> statements, ArrayList<String> callees) {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof FunctionCallNode) {
+                callees.add(((FunctionCallNode) s).getName());
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    calls(i.statements(), callees);
+                }
+            } else if (s instanceof ForNode) {
+                calls(((ForNode) s).statements(), callees);
+            } else if (s instanceof WhileNode) {
+                calls(((WhileNode) s).statements(), callees);
+            } else if (s instanceof RepeatNode) {
+                calls(((RepeatNode) s).statements(), callees);
+            }
+        }
+    }
+}
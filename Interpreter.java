@@ -2,71 +2,247 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-public class Interpreter {
+public class Interpreter implements ExecutionEngine {
 
     HashMap<String, InterpreterDataType> localVars;
     HashMap<String, InterpreterDataType> constants;
 
+    // Slot mode: locals live in an array indexed by VariableRefNode.getSlot()
+    boolean slotFrames;
+    InterpreterDataType[] frame;
+    boolean verbose;
+
+    // Quickening mode: expressions run through self-specializing QuickNodes, needs slot frames
+    boolean quicken;
+
+    // Typed mode: the TypeChecker has stored the static type of every expression
+    boolean typed;
+
+    // Set when this is the first tier of a TieredEngine, gets told about calls and loop iterations
+    TieredEngine tiers;
+
+    // Set when profiling, counts statements, branches, conditions and calls
+    Profile profile;
+
+    // One frame per active call, localVars/constants/frame point at the top one
+    CallStack stack = new CallStack();
+
+    // Function start() runs when the program was shaken from an entry, null runs them all
+    String entry;
+
     //ArrayList<InterpreterDataType> params;
     ProgramNode pn;
     Parser p;
     public Interpreter(String input) throws SyntaxErrorException{
-        p = new Parser(input);
+        this(input, false);
+    }
+
+    public Interpreter(String input, boolean slotFrames) throws SyntaxErrorException{
+        this(input, slotFrames, false);
+    }
+
+    public Interpreter(String input, boolean slotFrames, boolean dumpOptimized) throws SyntaxErrorException{
+        this(input, slotFrames, dumpOptimized, null);
+    }
+
+    /*
+    dumpOptimized prints the tree again after the Optimizer has run. With
+    an entry function, calls passing literals get specialized copies of
+    their function, code it can't reach is removed and only the entry
+    function is started
+     */
+    public Interpreter(String input, boolean slotFrames, boolean dumpOptimized, String entry) throws SyntaxErrorException{
+        this(input, slotFrames, dumpOptimized, entry, null);
+    }
+
+    /*
+    With a profile, the counts of earlier runs in it decide the order of
+    if chains and what gets inlined, and this run is recorded into it
+     */
+    public Interpreter(String input, boolean slotFrames, boolean dumpOptimized, String entry, Profile profile) throws SyntaxErrorException{
+        this(new Parser(input), slotFrames, dumpOptimized, entry, profile);
+    }
+
+    /*
+    The source is lexed from the file's bytes mapped into memory
+     */
+    public Interpreter(java.nio.file.Path file, boolean slotFrames, boolean dumpOptimized, String entry, Profile profile) throws SyntaxErrorException, java.io.IOException{
+        this(new Parser(file), slotFrames, dumpOptimized, entry, profile);
+    }
+
+    private Interpreter(Parser parser, boolean slotFrames, boolean dumpOptimized, String entry, Profile profile) throws SyntaxErrorException{
+        p = parser;
         pn = p.parse();
         System.out.println(pn);
+        TypeChecker checker = new TypeChecker();
+        checker.check(pn); // the program as written, before any pass rewrites or removes parts of it
+        if(profile != null) {
+            profile.number(pn);
+        }
+        Optimizer optimizer = new Optimizer();
+        optimizer.optimize(pn);
+        BranchReorderer reorderer = new BranchReorderer(profile);
+        if(profile != null) {
+            reorderer.optimize(pn);
+        }
+        Specializer specializer = new Specializer(Specializer.DEFAULT_GROWTH, profile);
+        if(entry != null) {
+            specializer.optimize(pn);
+        }
+        TailCallEliminator tails = new TailCallEliminator();
+        tails.optimize(pn);
+        Inliner inliner = new Inliner(Inliner.DEFAULT_BUDGET, profile);
+        inliner.optimize(pn);
+        LoopUnroller unroller = new LoopUnroller();
+        unroller.optimize(pn);
+        optimizer.optimize(pn); // literal arguments and loop counters can fold into the copied statements
+        this.entry = entry;
+        DeadCodeEliminator eliminator = new DeadCodeEliminator(entry);
+        if(entry != null) {
+            eliminator.eliminate(pn);
+        }
+        LoopInvariantCodeMotion licm = new LoopInvariantCodeMotion();
+        licm.optimize(pn);
+        // This tree is only run by the Interpreter, which walks every operation, so reusing results pays off in both frame modes
+        CommonSubexpressionElimination cse = new CommonSubexpressionElimination();
+        cse.optimize(pn);
+        if(dumpOptimized) {
+            System.out.println(optimizer.dump());
+            System.out.println("~~~~~REORDERED: " + reorderer.reordered() + " if chains~~~~~");
+            System.out.println("~~~~~SPECIALIZED: " + specializer.specialized() + " copies for " + specializer.calls() + " calls, " + specializer.pruned() + " branches removed~~~~~");
+            System.out.println("~~~~~TAIL CALLS: " + tails.eliminated() + " turned into jumps~~~~~");
+            System.out.println("~~~~~INLINED: " + inliner.inlined() + " calls~~~~~");
+            System.out.println("~~~~~UNROLLED: " + unroller.unrolled() + " loops fully, " + unroller.partial() + " partly~~~~~");
+            System.out.println("~~~~~REMOVED: " + eliminator.functionsRemoved() + " functions, " + eliminator.statementsRemoved() + " statements~~~~~");
+            System.out.println("~~~~~HOISTED: " + licm.hoisted() + " loop-invariant expressions~~~~~");
+            System.out.println("~~~~~REUSED: " + cse.removed() + " common subexpressions~~~~~");
+        }
+        checker.check(pn); // stores the types of the nodes the passes made
+        typed = true;
+        this.slotFrames = slotFrames;
+        if(slotFrames) {
+            new Resolver().resolve(pn);
+        }
+        verbose = true;
         localVars = new HashMap<>();
         constants = new HashMap<>();
+        this.profile = profile;
         start();
     }
 
+    /*
+    Prepares an already parsed program without running it
+     */
+    public Interpreter(ProgramNode pn, boolean slotFrames) throws SyntaxErrorException {
+        this(pn, slotFrames, false);
+    }
+
+    public Interpreter(ProgramNode pn, boolean slotFrames, boolean quicken) throws SyntaxErrorException {
+        this(pn, slotFrames, quicken, false);
+    }
+
+    public Interpreter(ProgramNode pn, boolean slotFrames, boolean quicken, boolean typed) throws SyntaxErrorException {
+        this.pn = pn;
+        this.slotFrames = slotFrames || quicken;
+        this.quicken = quicken;
+        this.typed = typed;
+        if(this.slotFrames) {
+            new Resolver().resolve(pn);
+        }
+        if(typed) {
+            new TypeChecker().check(pn);
+        }
+        if(quicken) {
+            QuickNode.install(pn);
+        }
+        localVars = new HashMap<>();
+        constants = new HashMap<>();
+    }
+
     public void start() throws SyntaxErrorException{
+        if(entry != null) {
+            run(entry, new ArrayList<>());
+            return;
+        }
         for (FunctionNode fn: pn.getFunctions().values()) {
             ArrayList<InterpreterDataType> args = new ArrayList<>();
             interpretFunction(fn, args);
         }
     }
 
+    /*
+    Runs a single function with the given arguments
+     */
+    public void run(String name, ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(name);
+        if (fn == null) {
+            throw new RuntimeException("Function " + name + " is not defined.");
+        }
+        interpretFunction(fn, args);
+    }
+
     //Interprets a function in the program
     private void interpretFunction(FunctionNode fn, ArrayList<InterpreterDataType>args) throws SyntaxErrorException {
-        localVars = new HashMap<>();
-        constants = new HashMap<>();
-        constantNodes(fn);
-
         ArrayList<VariableNode> fParams = fn.getParams();
 
         if (args.size() != fParams.size()) {
             throw new RuntimeException("Incorrect number of arguments for function " + fn.getName());
         }
-
-        for (int i = 0; i < fParams.size(); i++) {
-            VariableNode fParam = fParams.get(i);
-            localVars.put(fParam.name(), args.get(i)); // Map arguments to parameters
+        if(tiers != null && !(fn instanceof BuiltInFunction) && tiers.enter(fn, args)) {
+            return; // Ran compiled
         }
+        if(profile != null) {
+            profile.record(fn);
+        }
+
+        Frame f = stack.push(fn);
+        try {
+            if(slotFrames && !(fn instanceof BuiltInFunction)) {
+                f.bind(args);
+                frame = f.slots;
+            } else {
+                localVars = f.localVars;
+                constants = f.constants;
+                localVars.clear();
+                constants.clear();
+                constantNodes(fn);
+
+                for (int i = 0; i < fParams.size(); i++) {
+                    VariableNode fParam = fParams.get(i);
+                    localVars.put(fParam.name(), fParam.isChangeable() ? args.get(i) : Frame.copy(args.get(i))); // Map arguments to parameters
+                }
 
-        for(VariableNode fParam: fParams) {
-            switch (fParam.type()) {
-                case INTEGERLIT -> localVars.put(fParam.name(), new IntegerDataType(0));
-                case REALLIT -> localVars.put(fParam.name(), new RealDataType(0));
-                case STRINGLIT -> localVars.put(fParam.name(), new StringDataType(""));
-                case CHARLIT -> localVars.put(fParam.name(), new CharacterDataType(' '));
-                case BOOLEAN -> localVars.put(fParam.name(), new BoolDataType(true));
-                default -> throw new SyntaxErrorException("Invalid Parameter Type.");
+                //Initialize variables and constants
+                for (VariableNode v: fn.vars()) {
+                    if(constants.containsKey(v.name())) {
+                        localVars.put(v.name(), constants.get(v.name()));
+                        continue;
+                    }
+                    switch(v.type()) {
+                        case INTEGERLIT -> localVars.put(v.name(), new IntegerDataType(0));
+                        case REALLIT -> localVars.put(v.name(), new RealDataType(0));
+                        case STRINGLIT -> localVars.put(v.name(), new StringDataType(""));
+                        case CHARLIT -> localVars.put(v.name(), new CharacterDataType(' '));
+                        case TRUE, FALSE, BOOLEAN -> localVars.put(v.name(), new BoolDataType(true));
+                    }
+                }
             }
-        }
-        //Initialize variables and constants
-        for (VariableNode v: fn.vars()) {
-            switch(v.type()) {
-                case INTEGERLIT -> localVars.put(v.name(), new IntegerDataType(0));
-                case REALLIT -> localVars.put(v.name(), new RealDataType(0));
-                case STRINGLIT -> localVars.put(v.name(), new StringDataType(""));
-                case CHARLIT -> localVars.put(v.name(), new CharacterDataType(' '));
-                case TRUE, FALSE -> localVars.put(v.name(), new BoolDataType(true));
+            interpretBlock(fn.statements());
+        } finally {
+            stack.pop();
+            /*
+            Give the caller its variables back
+             */
+            Frame caller = stack.top();
+            if(caller != null) {
+                frame = caller.slots;
+                localVars = caller.localVars;
+                constants = caller.constants;
             }
         }
-        interpretBlock(fn.statements());
         if(fn instanceof BuiltInFunction) {
 
-        } else {
+        } else if(verbose) {
             System.out.println("Interpreted function " + fn.getName());
         }
     }
@@ -76,6 +252,9 @@ public class Interpreter {
      */
     private void interpretBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
         for (StatementNode s: statements) {
+            if(profile != null) {
+                profile.record(s);
+            }
             if(s instanceof AssignmentNode) {
                 assignmentNode((AssignmentNode) s);
             } else if (s instanceof IfNode) {
@@ -89,6 +268,8 @@ public class Interpreter {
             } else if (s instanceof FunctionCallNode) {
                 functionCallNode((FunctionCallNode) s);
 
+            } else if (s instanceof SiteNode) {
+                // Only there to be recorded
             } else {
                 throw new SyntaxErrorException("Invalid statement.");
             }
@@ -108,6 +289,8 @@ public class Interpreter {
             return new BoolDataType(((BooleanNode) eval).getVal());
         } else if (eval instanceof MathOpNode) {
             return mathOpNode((MathOpNode) eval);
+        } else if (eval instanceof BoolCompNode) {
+            return new BoolDataType(booleanCompare((BoolCompNode) eval));
         } else if (eval instanceof VariableRefNode){
             return variableRefNode((VariableRefNode) eval);
         }else {
@@ -130,9 +313,15 @@ public class Interpreter {
             throw new RuntimeException("Incorrect number of parameters in " + fc.getName() + ".");
         }
 
-        for (ParameterNode pn : fcParams) {
-            Node eval = expression(pn.getVar());
-            args.add(resolveArgument(eval)); // Using refactored helper
+        for (int i = 0; i < fcParams.size(); i++) {
+            Node arg = fcParams.get(i).getVar();
+            if (arg instanceof VariableRefNode) {
+                InterpreterDataType cell = variableRefNode((VariableRefNode) arg);
+                args.add(cell); // Pass the variable itself, value params are copied when they are bound
+            } else {
+                Node eval = expression(arg);
+                args.add(resolveArgument(eval)); // Using refactored helper
+            }
         }
 
         if (fn instanceof BuiltInFunction) {
@@ -150,50 +339,131 @@ public class Interpreter {
     Interpret assignment statements
      */
     private void assignmentNode(AssignmentNode a) throws SyntaxErrorException {
-        Node val = expression(a.getVal());
         VariableRefNode target = a.getTarget();
 
+        /*
+        Numbers and comparisons are computed as raw values and written
+        straight into the target's cell
+         */
+        InterpreterDataType cell = target(target);
+        if(typed) {
+            typedAssign(cell, a.getVal());
+            return;
+        }
+        if(quicken && quickAssign(cell, a.getVal().getQuick())) {
+            return;
+        }
+        Token.tokenType type = valueType(a.getVal());
+        if(cell instanceof IntegerDataType && type == Token.tokenType.INTEGERLIT) {
+            ((IntegerDataType) cell).setVal(intValue(a.getVal()));
+            return;
+        } else if (cell instanceof RealDataType && type == Token.tokenType.REALLIT) {
+            ((RealDataType) cell).setVal(realValue(a.getVal()));
+            return;
+        } else if (cell instanceof BoolDataType && a.getVal() instanceof BoolCompNode) {
+            ((BoolDataType) cell).setVal(booleanCompare((BoolCompNode) a.getVal()));
+            return;
+        }
+
+        Node val = expression(a.getVal());
+
         /*
         Check the type of value to be assigned to the target
         If the target is a constant, throws an exception
          */
+        InterpreterDataType result;
         if(val instanceof MathOpNode) {
-            if(constants.containsKey(target.getName()))
-                throw new RuntimeException("Cannot reassign constant");
-            localVars.replace(target.getName(), mathOpNode((MathOpNode) val));
+            result = mathOpNode((MathOpNode) val);
         } else if (val instanceof BoolCompNode) {
-            if(constants.containsKey(target.getName()))
-                throw new RuntimeException("Cannot reassign constant");
-            localVars.replace(target.getName(), booleanCompare((BoolCompNode) val));
+            result = new BoolDataType(booleanCompare((BoolCompNode) val));
         } else if (val instanceof IntNode) {
-            if(constants.containsKey(target.getName()))
-                throw new RuntimeException("Cannot reassign constant");
-            localVars.replace(target.getName(), new IntegerDataType(((IntNode) val).getVal()));
+            result = new IntegerDataType(((IntNode) val).getVal());
         } else if (val instanceof RealNode) {
-            if(constants.containsKey(target.getName()))
-                throw new RuntimeException("Cannot reassign constant");
-            localVars.replace(target.getName(), new RealDataType(((RealNode) val).getVal()));
+            result = new RealDataType(((RealNode) val).getVal());
         } else if (val instanceof StringNode) {
-            if(constants.containsKey(target.getName()))
-                throw new RuntimeException("Cannot reassign constant");
-            localVars.replace(target.getName(), new StringDataType(((StringNode) val).getVal()));
+            result = new StringDataType(((StringNode) val).getVal());
         } else if (val instanceof CharNode) {
-            if(constants.containsKey(target.getName()))
-                throw new RuntimeException("Cannot reassign constant");
-            localVars.replace(target.getName(), new CharacterDataType(((CharNode) val).getVal()));
+            result = new CharacterDataType(((CharNode) val).getVal());
         } else if (val instanceof BooleanNode) {
-            if(constants.containsKey(target.getName()))
-                throw new RuntimeException("Cannot reassign constant");
-            localVars.replace(target.getName(), new BoolDataType(((BooleanNode) val).getVal()));
+            result = new BoolDataType(((BooleanNode) val).getVal());
         } else throw new RuntimeException("Invalid assignment");
+
+        store(target, result);
+    }
+
+    /*
+    Typed mode: the checker made sure the value has the type of the
+    variable, so it goes into the cell without any checks
+     */
+    private void typedAssign(InterpreterDataType cell, Node val) throws SyntaxErrorException {
+        switch (val.staticType()) {
+            case INTEGERLIT -> ((IntegerDataType) cell).setVal(intValue(val));
+            case REALLIT -> ((RealDataType) cell).setVal(realValue(val));
+            case STRINGLIT -> ((StringDataType) cell).setVal(stringValue(val));
+            case CHARLIT -> ((CharacterDataType) cell).setVal(charValue(val));
+            default -> ((BoolDataType) cell).setVal(boolValue(val));
+        }
+    }
+
+    /*
+    Quickening mode: runs the value's QuickNode for the type of the target
+    cell without looking at the value's type first. Returns false when
+    the value has another type, the generic path then deals with it
+     */
+    private boolean quickAssign(InterpreterDataType cell, QuickNode q) {
+        try {
+            if(cell instanceof IntegerDataType) {
+                ((IntegerDataType) cell).setVal(q.executeInt(frame));
+                return true;
+            } else if (cell instanceof RealDataType) {
+                ((RealDataType) cell).setVal(q.executeReal(frame));
+                return true;
+            } else if (cell instanceof BoolDataType) {
+                ((BoolDataType) cell).setVal(q.executeBool(frame));
+                return true;
+            } else if (cell instanceof StringDataType) {
+                ((StringDataType) cell).setVal(q.executeString(frame));
+                return true;
+            }
+        } catch (UnexpectedType e) {
+            // falls through to the generic path
+        }
+        return false;
+    }
+
+    /*
+    Writes a new value into a variable. The value is copied into the
+    variable's cell, so a var parameter updates the caller's variable.
+    Only a value of another type replaces the cell
+     */
+    private void store(VariableRefNode target, InterpreterDataType result) {
+        if(Frame.setValue(target(target), result)) {
+            return;
+        }
+        if(slotFrames) {
+            frame[target.getSlot()] = result;
+        } else {
+            localVars.replace(target.getName(), result);
+        }
+    }
+
+    /*
+    Cell of a variable that is about to be assigned
+     */
+    private InterpreterDataType target(VariableRefNode target) {
+        if(!slotFrames && constants.containsKey(target.getName()))
+            throw new RuntimeException("Cannot reassign constant"); // In slot mode the Resolver rejects these
+        return variableRefNode(target);
     }
 
     /*
     Interprets if statements
      */
     private void ifNode(IfNode i) throws SyntaxErrorException{
-        BoolDataType b = booleanCompare(i.getCondition());
-        if(b.getVal() == true) {
+        if(condition(i.getCondition())) {
+            if(profile != null) {
+                profile.recordTaken(i);
+            }
             interpretBlock(i.statements());
         }
         /*
@@ -208,41 +478,65 @@ public class Interpreter {
     }
 
     /*
-    Interprets the for loop until from reaches to
+    Interprets the for loop, counting the control variable from the lower
+    bound up to and including the upper bound. A lower bound above the
+    upper bound runs no passes
      */
     private void forNode(ForNode f) throws SyntaxErrorException {
-        int intFrom = ((IntNode) f.getFrom()).getVal();
-        int intTo = ((IntNode) f.getTo()).getVal();
-        if(intFrom >= intTo) {
-            throw new RuntimeException("Lower bound greater than upper bound in for statement.");
+        InterpreterDataType from = resolveArgument(expression(f.getFrom()));
+        InterpreterDataType to = resolveArgument(expression(f.getTo()));
+        if(!(from instanceof IntegerDataType && to instanceof IntegerDataType)) {
+            throw new RuntimeException("For loop bounds must be integers.");
+        }
+        if(!(f.getExpr() instanceof VariableRefNode)) {
+            throw new RuntimeException("For loop needs a control variable.");
+        }
+        VariableRefNode counter = (VariableRefNode) f.getExpr();
+        InterpreterDataType control = target(counter);
+        if(!(control instanceof IntegerDataType)) {
+            throw new RuntimeException("For loop control variable must be an integer.");
         }
-        while (intFrom < intTo) {
+        IntegerDataType cell = (IntegerDataType) control;
+        int intTo = ((IntegerDataType) to).getVal();
+        int backEdges = 0;
+        for (int i = ((IntegerDataType) from).getVal(); i <= intTo; i++) {
+            cell.setVal(i);
             interpretBlock(f.statements());
-            intFrom++;
+            if(tiers != null && tiers.backEdge(stack.top().fn, f, ++backEdges, frame, i + 1, intTo)) {
+                return; // The rest of the loop ran compiled
+            }
         }
     }
 
     /*
     Interprets statements in the repeat loop until the condition
-    is met
+    is met. The condition is checked after each pass
      */
     private void repeatNode(RepeatNode r) throws SyntaxErrorException{
-        BoolDataType b = booleanCompare(r.getCondition());
-        while(b.getVal() == false) {
-            b = booleanCompare(r.getCondition());
+        int backEdges = 0;
+        while (true) {
             interpretBlock(r.statements());
+            if(condition(r.getCondition())) {
+                return;
+            }
+            // Checked once the next pass is certain, so a compiled repeat can start over
+            if(tiers != null && tiers.backEdge(stack.top().fn, r, ++backEdges, frame, 0, 0)) {
+                return;
+            }
         }
     }
 
     /*
     Interprets statements in the while loop while the condition
-    is true
+    is true. The condition is checked before each pass
      */
     private void whileNode(WhileNode w) throws SyntaxErrorException{
-        BoolDataType b = booleanCompare(w.getCondition());
-        while (b.getVal() == true) {
-            b = booleanCompare(w.getCondition());
+        int backEdges = 0;
+        while (condition(w.getCondition())) {
             interpretBlock(w.statements());
+            if(tiers != null && tiers.backEdge(stack.top().fn, w, ++backEdges, frame, 0, 0)) {
+                return; // The rest of the loop ran compiled
+            }
         }
     }
 
@@ -250,6 +544,9 @@ public class Interpreter {
     Returns IDT referred to by a variable reference
      */
     private InterpreterDataType variableRefNode(VariableRefNode v) {
+        if(slotFrames) {
+            return frame[v.getSlot()];
+        }
         if(!localVars.containsKey(v.getName())) {
             throw new RuntimeException("Variable " + v.getName() + " does not exist.");
         }
@@ -274,448 +571,286 @@ public class Interpreter {
     }
 
     /*
-    Evaluates a boolean compare node
+    Condition of an if or a loop, counted when profiling
      */
-    private BoolDataType booleanCompare(BoolCompNode b) throws SyntaxErrorException {
-        Token.tokenType condition = b.condition();
-        Node lexpr = expression(b.left());
-        Node rexpr = expression(b.right());
+    private boolean condition(BoolCompNode b) throws SyntaxErrorException {
+        boolean result = booleanCompare(b);
+        if(profile != null) {
+            profile.recordOutcome(b, result);
+        }
+        return result;
+    }
 
-        return boolCompareHelper(lexpr, rexpr, condition);
+        /*
+    Evaluates a boolean compare node
+     */
+    private boolean booleanCompare(BoolCompNode b) throws SyntaxErrorException {
+        if(quicken) {
+            try {
+                return b.getQuick().executeBool(frame);
+            } catch (UnexpectedType e) {
+                throw new RuntimeException("Incompatible operands for " + b.condition());
+            }
+        }
+        return boolCompareHelper(b.left(), b.right(), b.condition());
     }
 
     /*
     Evaluates a boolean compare node depending on the comparison.
-    Strings can only be compared with Strings. char and boolean cannot
-    be compared
+    Integers and reals can be compared with each other, Strings can only
+    be compared with Strings for equality. char and boolean cannot be
+    compared. Numbers are compared as raw int/float values
      */
-    private BoolDataType boolCompareHelper(Node lexpr, Node rexpr, Token.tokenType condition) throws SyntaxErrorException{
-        switch (condition) {
-            case GREATERTHAN -> {
-                if(lexpr instanceof IntNode && rexpr instanceof IntNode)
-                    return new BoolDataType(((IntNode) lexpr).getVal() > ((IntNode) rexpr).getVal());
-                else if (lexpr instanceof IntNode && rexpr instanceof  RealNode) {
-                    return new BoolDataType(((IntNode) lexpr).getVal() > ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof IntNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() > ((IntNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof RealNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() > ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof MathOpNode) {
-                    InterpreterDataType lVal = mathOpNode((MathOpNode) lexpr);
-                    if(lVal instanceof IntegerDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) > ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) > ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof IntegerDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) > ((RealNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) > ((RealNode) rexpr).getVal());
-                    }
-                } else if (rexpr instanceof MathOpNode) {
-                    InterpreterDataType rVal = mathOpNode((MathOpNode) rexpr);
-                    if(rVal instanceof IntegerDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) < ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) < ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof IntegerDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) < ((RealNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) < ((RealNode) lexpr).getVal());
-                    }
-                } else {
-                    throw new RuntimeException("Incompatible operands for >");
-                }
+    private boolean boolCompareHelper(Node lexpr, Node rexpr, Token.tokenType condition) throws SyntaxErrorException{
+        Token.tokenType lType = valueType(lexpr);
+        Token.tokenType rType = valueType(rexpr);
+        if(lType == Token.tokenType.INTEGERLIT && rType == Token.tokenType.INTEGERLIT) {
+            int l = intValue(lexpr);
+            int r = intValue(rexpr);
+            return switch (condition) {
+                case GREATERTHAN -> l > r;
+                case LESSTHAN -> l < r;
+                case GREATEREQ -> l >= r;
+                case LESSEQ -> l <= r;
+                case NOTEQ -> l != r;
+                case EQUALS -> l == r;
+                default -> throw new RuntimeException("Unexpected boolean comparison operation type");
+            };
+        } else if (isNumber(lType) && isNumber(rType)) {
+            float l = realValue(lexpr);
+            float r = realValue(rexpr);
+            return switch (condition) {
+                case GREATERTHAN -> l > r;
+                case LESSTHAN -> l < r;
+                case GREATEREQ -> l >= r;
+                case LESSEQ -> l <= r;
+                case NOTEQ -> l != r;
+                case EQUALS -> l == r;
+                default -> throw new RuntimeException("Unexpected boolean comparison operation type");
+            };
+        } else if (lType == Token.tokenType.STRINGLIT && rType == Token.tokenType.STRINGLIT) {
+            if(condition == Token.tokenType.EQUALS) {
+                return stringValue(lexpr).equals(stringValue(rexpr));
+            } else if (condition == Token.tokenType.NOTEQ) {
+                return !stringValue(lexpr).equals(stringValue(rexpr));
             }
-            case LESSTHAN -> {
-                if(lexpr instanceof IntNode && rexpr instanceof IntNode)
-                    return new BoolDataType(((IntNode) lexpr).getVal() < ((IntNode) rexpr).getVal());
-                else if (lexpr instanceof IntNode && rexpr instanceof  RealNode) {
-                    return new BoolDataType(((IntNode) lexpr).getVal() < ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof IntNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() < ((IntNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof RealNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() < ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof MathOpNode) {
-                    InterpreterDataType lVal = mathOpNode((MathOpNode) lexpr);
-                    if(lVal instanceof IntegerDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) < ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) < ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof IntegerDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) < ((RealNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) < ((RealNode) rexpr).getVal());
-                    }
-                } else if (rexpr instanceof MathOpNode) {
-                    InterpreterDataType rVal = mathOpNode((MathOpNode) rexpr);
-                    if(rVal instanceof IntegerDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) > ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) > ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof IntegerDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) > ((RealNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) > ((RealNode) lexpr).getVal());
-                    }
-                } else {
-                    throw new RuntimeException("Incompatible operands for <");
-                }
-            }
-            case GREATEREQ -> {
-                if(lexpr instanceof IntNode && rexpr instanceof IntNode)
-                    return new BoolDataType(((IntNode) lexpr).getVal() >= ((IntNode) rexpr).getVal());
-                else if (lexpr instanceof IntNode && rexpr instanceof  RealNode) {
-                    return new BoolDataType(((IntNode) lexpr).getVal() >= ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof IntNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() >= ((IntNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof RealNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() >= ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof MathOpNode) {
-                    InterpreterDataType lVal = mathOpNode((MathOpNode) lexpr);
-                    if(lVal instanceof IntegerDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) >= ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) >= ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof IntegerDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) >= ((RealNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) >= ((RealNode) rexpr).getVal());
-                    }
-                } else if (rexpr instanceof MathOpNode) {
-                    InterpreterDataType rVal = mathOpNode((MathOpNode) rexpr);
-                    if(rVal instanceof IntegerDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) <= ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) <= ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof IntegerDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) <= ((RealNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) <= ((RealNode) lexpr).getVal());
-                    }
-                } else {
-                    throw new RuntimeException("Incompatible operands for >=");
-                }
-            }
-            case LESSEQ -> {
-                if(lexpr instanceof IntNode && rexpr instanceof IntNode)
-                    return new BoolDataType(((IntNode) lexpr).getVal() <= ((IntNode) rexpr).getVal());
-                else if (lexpr instanceof IntNode && rexpr instanceof  RealNode) {
-                    return new BoolDataType(((IntNode) lexpr).getVal() <= ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof IntNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() <= ((IntNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof RealNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() <= ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof MathOpNode) {
-                    InterpreterDataType lVal = mathOpNode((MathOpNode) lexpr);
-                    if(lVal instanceof IntegerDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) <= ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) <= ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof IntegerDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) <= ((RealNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) <= ((RealNode) rexpr).getVal());
-                    }
-                } else if (rexpr instanceof MathOpNode) {
-                    InterpreterDataType rVal = mathOpNode((MathOpNode) rexpr);
-                    if(rVal instanceof IntegerDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) >= ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) >= ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof IntegerDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) >= ((RealNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) >= ((RealNode) lexpr).getVal());
-                    }
-                } else {
-                    throw new RuntimeException("Incompatible operands for <=");
-                }
-            }
-            case NOTEQ -> {
-                if(lexpr instanceof IntNode && rexpr instanceof IntNode)
-                    return new BoolDataType(((IntNode) lexpr).getVal() != ((IntNode) rexpr).getVal());
-                else if (lexpr instanceof IntNode && rexpr instanceof  RealNode) {
-                    return new BoolDataType(((IntNode) lexpr).getVal() != ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof IntNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() != ((IntNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof RealNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() != ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof StringNode && rexpr instanceof StringNode) {
-                    return new BoolDataType(!((StringNode) lexpr).getVal().equals(((StringNode) rexpr).getVal()));
-                } else if (lexpr instanceof MathOpNode) {
-                    InterpreterDataType lVal = mathOpNode((MathOpNode) lexpr);
-                    if(lVal instanceof IntegerDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) != ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) != ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof IntegerDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) != ((RealNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) != ((RealNode) rexpr).getVal());
-                    }
-                    else if (lVal instanceof StringDataType && rexpr instanceof StringNode) {
-                        return new BoolDataType(!(lVal.ToString().equals(((StringNode) rexpr).getVal())));
-                    }
-                } else if (rexpr instanceof MathOpNode) {
-                    InterpreterDataType rVal = mathOpNode((MathOpNode) rexpr);
-                    if(rVal instanceof IntegerDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) != ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) != ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof IntegerDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) != ((RealNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) != ((RealNode) lexpr).getVal());
-                    }
-                    else if (rVal instanceof StringDataType && lexpr instanceof StringNode) {
-                        return new BoolDataType(!(rVal.ToString().equals(((StringNode) lexpr).getVal())));
-                    }
-                } else {
-                    throw new RuntimeException("Incompatible operands for !=");
-                }
-            }
-            case EQUALS -> {
-                if(lexpr instanceof IntNode && rexpr instanceof IntNode)
-                    return new BoolDataType(((IntNode) lexpr).getVal() == ((IntNode) rexpr).getVal());
-                else if (lexpr instanceof IntNode && rexpr instanceof  RealNode) {
-                    return new BoolDataType(((IntNode) lexpr).getVal() == ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof IntNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() == ((IntNode) rexpr).getVal());
-                } else if (lexpr instanceof RealNode && rexpr instanceof RealNode) {
-                    return new BoolDataType(((RealNode) lexpr).getVal() == ((RealNode) rexpr).getVal());
-                } else if (lexpr instanceof StringNode && rexpr instanceof StringNode) {
-                    return new BoolDataType(((StringNode) lexpr).getVal().equals(((StringNode) rexpr).getVal()));
-                } else if (lexpr instanceof MathOpNode) {
-                    InterpreterDataType lVal = mathOpNode((MathOpNode) lexpr);
-                    if(lVal instanceof IntegerDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) == ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) == ((IntNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof IntegerDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(lVal.ToString()) == ((RealNode) rexpr).getVal());
-                    }
-                    else if(lVal instanceof RealDataType && rexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(lVal.ToString()) == ((RealNode) rexpr).getVal());
-                    }
-                    else if (lVal instanceof StringDataType && rexpr instanceof StringNode) {
-                        return new BoolDataType(lVal.ToString().equals(((StringNode) rexpr).getVal()));
-                    }
-                } else if (rexpr instanceof MathOpNode) {
-                    InterpreterDataType rVal = mathOpNode((MathOpNode) rexpr);
-                    if(rVal instanceof IntegerDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) == ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof IntNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) == ((IntNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof IntegerDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Integer.parseInt(rVal.ToString()) == ((RealNode) lexpr).getVal());
-                    }
-                    else if(rVal instanceof RealDataType && lexpr instanceof RealNode) {
-                        return new BoolDataType(Float.parseFloat(rVal.ToString()) == ((RealNode) lexpr).getVal());
-                    }
-                    else if (rVal instanceof StringDataType && lexpr instanceof StringNode) {
-                        return new BoolDataType(rVal.ToString().equals(((StringNode) lexpr).getVal()));
-                    }
-                } else {
-                    throw new RuntimeException("Incompatible operands for =");
-                }
-            }
-            default -> throw new RuntimeException("Unexpected boolean comparison operation type");
         }
-        throw new SyntaxErrorException("Bad boolcompare");
+        throw new RuntimeException("Incompatible operands for " + condition);
     }
 
     /*
     Evaluates a math operation. Supports 5 operations: addition,
     subtraction, multiplication, division, and remainder. Can only do
-    math operations on two operands of the same type
+    math operations on two operands of the same type. The whole
+    expression is computed on raw values and wrapped once at the end
      */
     private InterpreterDataType mathOpNode(MathOpNode m) throws SyntaxErrorException{
-        Node l = expression(m.left());
-        Node r = expression(m.right());
-        Token.tokenType operation = m.getOp();
-        if(l instanceof StringNode && r instanceof StringNode) {
-            if(operation != Token.tokenType.PLUS) {
-                throw new SyntaxErrorException("Invalid operation on String type: " + operation.toString());
+        return switch (valueType(m)) {
+            case INTEGERLIT -> new IntegerDataType(intValue(m));
+            case REALLIT -> new RealDataType(realValue(m));
+            case STRINGLIT -> new StringDataType(stringValue(m));
+            default -> throw new RuntimeException("Invalid types for operands of MathOpNode");
+        };
+    }
+
+    /*
+    Type of the value an expression produces. Both operands of a math
+    operation have the same type, so following the left operands down to
+    a leaf is enough
+     */
+    private Token.tokenType valueType(Node n) {
+        if(typed) {
+            return n.staticType();
+        }
+        if(quicken) {
+            return n.getQuick().type(frame);
+        }
+        while (n instanceof MathOpNode) {
+            n = ((MathOpNode) n).left();
+        }
+        if(n instanceof VariableRefNode) {
+            InterpreterDataType d = variableRefNode((VariableRefNode) n);
+            if(d instanceof IntegerDataType) {
+                return Token.tokenType.INTEGERLIT;
+            } else if (d instanceof RealDataType) {
+                return Token.tokenType.REALLIT;
+            } else if (d instanceof StringDataType) {
+                return Token.tokenType.STRINGLIT;
+            } else if (d instanceof CharacterDataType) {
+                return Token.tokenType.CHARLIT;
+            }
+            return Token.tokenType.BOOLEAN;
+        } else if (n instanceof IntNode) {
+            return Token.tokenType.INTEGERLIT;
+        } else if (n instanceof RealNode) {
+            return Token.tokenType.REALLIT;
+        } else if (n instanceof StringNode) {
+            return Token.tokenType.STRINGLIT;
+        } else if (n instanceof CharNode) {
+            return Token.tokenType.CHARLIT;
+        }
+        return Token.tokenType.BOOLEAN;
+    }
+
+    private static boolean isNumber(Token.tokenType t) {
+        return t == Token.tokenType.INTEGERLIT || t == Token.tokenType.REALLIT;
+    }
+
+    /*
+    Value of an integer expression
+     */
+    private int intValue(Node n) throws SyntaxErrorException {
+        if(quicken) {
+            try {
+                return n.getQuick().executeInt(frame);
+            } catch (UnexpectedType e) {
+                throw new RuntimeException("Invalid types for operands of MathOpNode");
+            }
+        }
+        if(n instanceof IntNode) {
+            return ((IntNode) n).getVal();
+        } else if (n instanceof VariableRefNode) {
+            InterpreterDataType d = variableRefNode((VariableRefNode) n);
+            if(d instanceof IntegerDataType) {
+                return ((IntegerDataType) d).getVal();
             }
-            return new StringDataType((((StringNode) l).getVal()) + ((StringNode) r).getVal());
-        } else if (l instanceof IntNode && r instanceof IntNode) {
-            switch (operation) {
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            int l = intValue(m.left());
+            int r = intValue(m.right());
+            switch (m.getOp()) {
                 case PLUS -> {
-                    return new IntegerDataType(((IntNode) l).getVal() + ((IntNode)r).getVal());
+                    return l + r;
                 }
                 case MINUS -> {
-                    return new IntegerDataType(((IntNode) l).getVal() - ((IntNode) r).getVal());
+                    return l - r;
                 }
-                case MUL ->  {
-                    return new IntegerDataType(((IntNode) l).getVal() * ((IntNode) r).getVal());
+                case MUL -> {
+                    return l * r;
                 }
                 case DIV -> {
-                    return new IntegerDataType(((IntNode) l).getVal() / ((IntNode) r).getVal());
+                    return l / r;
                 }
                 case MODULO -> {
-                    return new IntegerDataType(((IntNode) l).getVal() % ((IntNode) r).getVal());
+                    return l % r;
                 }
             }
-        } else if (l instanceof RealNode && r instanceof RealNode) {
-            switch (operation) {
+        }
+        throw new RuntimeException("Invalid types for operands of MathOpNode");
+    }
+
+    /*
+    Value of a real expression. Integer operands are widened so the
+    comparisons can use it for mixed numbers too
+     */
+    private float realValue(Node n) throws SyntaxErrorException {
+        if(quicken) {
+            try {
+                return n.getQuick().executeNumber(frame);
+            } catch (UnexpectedType e) {
+                throw new RuntimeException("Invalid types for operands of MathOpNode");
+            }
+        }
+        if(n instanceof RealNode) {
+            return ((RealNode) n).getVal();
+        } else if (n instanceof VariableRefNode) {
+            InterpreterDataType d = variableRefNode((VariableRefNode) n);
+            if(d instanceof RealDataType) {
+                return ((RealDataType) d).getVal();
+            } else if (d instanceof IntegerDataType) {
+                return ((IntegerDataType) d).getVal();
+            }
+        } else if (n instanceof IntNode) {
+            return ((IntNode) n).getVal();
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            if(valueType(m) == Token.tokenType.INTEGERLIT) {
+                return intValue(m);
+            }
+            float l = realValue(m.left());
+            float r = realValue(m.right());
+            switch (m.getOp()) {
                 case PLUS -> {
-                    return new RealDataType(((RealNode) l).getVal() + ((RealNode)r).getVal());
+                    return l + r;
                 }
                 case MINUS -> {
-                    return new RealDataType(((RealNode) l).getVal() - ((RealNode)r).getVal());
+                    return l - r;
                 }
-                case MUL ->  {
-                    return new RealDataType(((RealNode) l).getVal() * ((RealNode)r).getVal());
+                case MUL -> {
+                    return l * r;
                 }
                 case DIV -> {
-                    return new RealDataType(((RealNode) l).getVal() / ((RealNode)r).getVal());
+                    return l / r;
                 }
                 case MODULO -> {
-                    return new RealDataType(((RealNode) l).getVal() % ((RealNode)r).getVal());
+                    return l % r;
                 }
             }
-        } else if (l instanceof MathOpNode) {
-            InterpreterDataType lVal = mathOpNode((MathOpNode) l);
-            if(lVal instanceof IntegerDataType && r instanceof IntNode) {
-                switch (operation) {
-                    case PLUS -> {
-                        return new IntegerDataType(Integer.parseInt(lVal.ToString()) + ((IntNode) r).getVal());
-                    }
-                    case MINUS -> {
-                        return new IntegerDataType(Integer.parseInt(lVal.ToString()) - ((IntNode) r).getVal());
-                    }
-                    case MUL -> {
-                        return new IntegerDataType(Integer.parseInt(lVal.ToString()) * ((IntNode) r).getVal());
-                    }
-                    case DIV -> {
-                        return new IntegerDataType(Integer.parseInt(lVal.ToString()) / ((IntNode) r).getVal());
-                    }
-                    case MODULO -> {
-                        return new IntegerDataType(Integer.parseInt(lVal.ToString()) % ((IntNode) r).getVal());
-                    }
-                }
-            } else if (lVal instanceof RealDataType && r instanceof RealNode) {
-                switch (operation) {
-                    case PLUS -> {
-                        return new RealDataType(Float.parseFloat(lVal.ToString()) + ((RealNode)r).getVal());
-                    }
-                    case MINUS -> {
-                        return new RealDataType(Float.parseFloat(lVal.ToString()) - ((RealNode)r).getVal());
-                    }
-                    case MUL ->  {
-                        return new RealDataType(Float.parseFloat(lVal.ToString()) * ((RealNode)r).getVal());
-                    }
-                    case DIV -> {
-                        return new RealDataType(Float.parseFloat(lVal.ToString()) / ((RealNode)r).getVal());
-                    }
-                    case MODULO -> {
-                        return new RealDataType(Float.parseFloat(lVal.ToString()) % ((RealNode)r).getVal());
-                    }
-                }
+        }
+        throw new RuntimeException("Invalid types for operands of MathOpNode");
+    }
+
+    /*
+    Value of a string expression, only + is allowed on Strings
+     */
+    private String stringValue(Node n) throws SyntaxErrorException {
+        if(quicken) {
+            try {
+                return n.getQuick().executeString(frame);
+            } catch (UnexpectedType e) {
+                throw new RuntimeException("Invalid types for operands of MathOpNode");
             }
-        } else if (r instanceof MathOpNode) {
-            InterpreterDataType rVal = mathOpNode((MathOpNode) r);
-            if(rVal instanceof IntegerDataType && l instanceof IntNode) {
-                switch (operation) {
-                    case PLUS -> {
-                        return new IntegerDataType(Integer.parseInt(rVal.ToString()) + ((IntNode) l).getVal());
-                    }
-                    case MINUS -> {
-                        return new IntegerDataType(Integer.parseInt(rVal.ToString()) - ((IntNode) l).getVal());
-                    }
-                    case MUL -> {
-                        return new IntegerDataType(Integer.parseInt(rVal.ToString()) * ((IntNode) l).getVal());
-                    }
-                    case DIV -> {
-                        return new IntegerDataType(Integer.parseInt(rVal.ToString()) / ((IntNode) l).getVal());
-                    }
-                    case MODULO -> {
-                        return new IntegerDataType(Integer.parseInt(rVal.ToString()) % ((IntNode) l).getVal());
-                    }
-                }
-            } else if (rVal instanceof RealDataType && l instanceof RealNode) {
-                switch (operation) {
-                    case PLUS -> {
-                        return new RealDataType(Float.parseFloat(rVal.ToString()) + ((RealNode)l).getVal());
-                    }
-                    case MINUS -> {
-                        return new RealDataType(Float.parseFloat(rVal.ToString()) - ((RealNode)l).getVal());
-                    }
-                    case MUL ->  {
-                        return new RealDataType(Float.parseFloat(rVal.ToString()) * ((RealNode)l).getVal());
-                    }
-                    case DIV -> {
-                        return new RealDataType(Float.parseFloat(rVal.ToString()) / ((RealNode)l).getVal());
-                    }
-                    case MODULO -> {
-                        return new RealDataType(Float.parseFloat(rVal.ToString()) % ((RealNode)l).getVal());
-                    }
-                }
+        }
+        if(n instanceof StringNode) {
+            return ((StringNode) n).getVal();
+        } else if (n instanceof VariableRefNode) {
+            InterpreterDataType d = variableRefNode((VariableRefNode) n);
+            if(d instanceof StringDataType) {
+                return ((StringDataType) d).getVal();
             }
-        } else {
-            throw new RuntimeException("Invalid types for operands of MathOpNode");
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            if(m.getOp() != Token.tokenType.PLUS) {
+                throw new SyntaxErrorException("Invalid operation on String type: " + m.getOp().toString());
+            }
+            return stringValue(m.left()) + stringValue(m.right());
+        }
+        throw new RuntimeException("Invalid types for operands of MathOpNode");
+    }
+
+    /*
+    Value of a character expression, a literal or a variable
+     */
+    private char charValue(Node n) {
+        if(n instanceof CharNode) {
+            return ((CharNode) n).getVal();
         }
-        return null;
+        return ((CharacterDataType) variableRefNode((VariableRefNode) n)).getVal();
     }
 
     /*
-    Returns an expression
+    Value of a boolean expression
+     */
+    private boolean boolValue(Node n) throws SyntaxErrorException {
+        if(n instanceof BoolCompNode) {
+            return booleanCompare((BoolCompNode) n);
+        } else if (n instanceof BooleanNode) {
+            return ((BooleanNode) n).getVal();
+        }
+        return ((BoolDataType) variableRefNode((VariableRefNode) n)).getVal();
+    }
+
+    /*
+    Returns an expression. Variables are replaced by their value, math
+    and boolean operations are left for the caller to evaluate
      */
     private Node expression(Node n) throws SyntaxErrorException{
-        if(n instanceof MathOpNode) {
-            mathOpNode((MathOpNode) n);
-        } else if (n instanceof BoolCompNode) {
-            booleanCompare((BoolCompNode) n);
+        if(n instanceof MathOpNode || n instanceof BoolCompNode) {
+            return n;
         } else if(n instanceof VariableNode) {
-            InterpreterDataType varRef = localVars.get(((VariableNode) n).name());
-            if(varRef instanceof IntegerDataType) {
-                return new IntNode(((IntegerDataType) varRef).getVal());
-            } else if (varRef instanceof RealDataType) {
-                return new RealNode(((RealDataType) varRef).getVal());
-            } else if (varRef instanceof StringDataType) {
-                return new StringNode(((StringDataType) varRef).getVal());
-            } else if (varRef instanceof CharacterDataType) {
-                return new CharNode(((CharacterDataType) varRef).getVal());
-            }
-            else {
-                throw new RuntimeException("Illegal variable reference type in math operation");
-            }
+            return valueNode(localVars.get(((VariableNode) n).name()));
         } else if (n instanceof VariableRefNode) {
-            return n;
+            return valueNode(variableRefNode((VariableRefNode) n));
         }else if (n instanceof IntNode) {
             return n;
         } else if (n instanceof RealNode) {
@@ -729,6 +864,25 @@ public class Interpreter {
         } else {
             throw new RuntimeException("Illegal Node type in expression()");
         }
-        return n;
     }
-}
\ No newline at end of file
+
+    /*
+    Turns the value held by a variable back into a literal node
+     */
+    private Node valueNode(InterpreterDataType varRef) {
+        if(varRef instanceof IntegerDataType) {
+            return new IntNode(((IntegerDataType) varRef).getVal());
+        } else if (varRef instanceof RealDataType) {
+            return new RealNode(((RealDataType) varRef).getVal());
+        } else if (varRef instanceof StringDataType) {
+            return new StringNode(((StringDataType) varRef).getVal());
+        } else if (varRef instanceof CharacterDataType) {
+            return new CharNode(((CharacterDataType) varRef).getVal());
+        } else if (varRef instanceof BoolDataType) {
+            return new BooleanNode(((BoolDataType) varRef).getVal());
+        }
+        else {
+            throw new RuntimeException("Illegal variable reference type in math operation");
+        }
+    }
+}
@@ -0,0 +1,464 @@
+import java.util.ArrayList;
+
+/*
+Compiles the functions of a resolved ProgramNode into one JVM class with
+a static method per function, so HotSpot can JIT Shank code like any
+other Java method. Integer, real, character and boolean variables become
+JVM int/float locals in the same order as their frame slots, and
+MathOpNode/BoolCompNode turn into the matching int and float
+instructions.
+
+Var parameters are passed as the caller's cell (an IntegerDataType and
+so on) and read and written through its val field, everything else is
+passed by value.
+ */
+public class JvmCompiler {
+
+    static final String CLASS_NAME = "ShankCode";
+
+    private ProgramNode pn;
+    private FunctionNode current;
+    private ClassFile cf;
+    private Code code;
+    private int nextLocal;
+
+    /*
+    Returns the bytes of the class. The program must have been run through
+    the Resolver first
+     */
+    public byte[] compile(ProgramNode pn) throws SyntaxErrorException {
+        this.pn = pn;
+        cf = new ClassFile(CLASS_NAME);
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                compileFunction(fn);
+            }
+        }
+        return cf.toBytes();
+    }
+
+    /*
+    JVM descriptor of fn's method: cells for var parameters, plain values
+    for the rest
+     */
+    static String descriptor(FunctionNode fn) throws SyntaxErrorException {
+        StringBuilder sb = new StringBuilder("(");
+        for (VariableNode p: fn.getParams()) {
+            Token.tokenType t = ClosureInterpreter.normalize(p.type());
+            sb.append(p.isChangeable() ? "L" + cellClass(t) + ";" : valueDescriptor(t));
+        }
+        return sb.append(")V").toString();
+    }
+
+    private void compileFunction(FunctionNode fn) throws SyntaxErrorException {
+        current = fn;
+        code = new Code();
+        VariableNode[] slots = fn.slots();
+        nextLocal = slots.length;
+        code.locals(nextLocal);
+
+        int nParams = fn.getParams().size();
+        for (int i = nParams; i < slots.length; i++) {
+            VariableNode v = slots[i];
+            if (v.isChangeable()) {
+                defaultValue(slotType(i));
+            } else {
+                expression(v.getVal());
+            }
+            code.local(storeOp(slotType(i)), i, -1);
+        }
+
+        block(fn.statements());
+        code.op(Code.RETURN, 0);
+        code.resolve();
+        cf.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, fn.getName(), descriptor(fn), code);
+    }
+
+    /*
+    Statements
+     */
+
+    private void block(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            statement(s);
+        }
+    }
+
+    private void statement(StatementNode s) throws SyntaxErrorException {
+        if (s instanceof AssignmentNode) {
+            AssignmentNode a = (AssignmentNode) s;
+            int slot = a.getTarget().getSlot();
+            Token.tokenType targetType = slotType(slot);
+            Token.tokenType valType = typeOf(a.getVal());
+            if (targetType != valType) {
+                throw new SyntaxErrorException("Cannot assign " + valType + " to " + a.getTarget().getName() + " (" + targetType + ")");
+            }
+            beginStore(slot);
+            expression(a.getVal());
+            endStore(slot);
+        } else if (s instanceof IfNode) {
+            Label end = code.label();
+            for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                Label next = code.label();
+                jumpIfFalse(i.getCondition(), next);
+                block(i.statements());
+                if (i.getElseBlock() != null) {
+                    code.branch(Code.GOTO, end, 0);
+                }
+                code.mark(next);
+            }
+            code.mark(end);
+        } else if (s instanceof WhileNode) {
+            Label top = code.label();
+            Label exit = code.label();
+            code.mark(top);
+            jumpIfFalse(((WhileNode) s).getCondition(), exit);
+            block(((WhileNode) s).statements());
+            code.branch(Code.GOTO, top, 0);
+            code.mark(exit);
+        } else if (s instanceof RepeatNode) {
+            Label top = code.label();
+            code.mark(top);
+            block(((RepeatNode) s).statements());
+            jumpIfFalse(((RepeatNode) s).getCondition(), top);
+        } else if (s instanceof ForNode) {
+            forLoop((ForNode) s);
+        } else if (s instanceof FunctionCallNode) {
+            call((FunctionCallNode) s);
+        } else if (s instanceof SiteNode) {
+            // Only counted when profiling
+        } else {
+            throw new SyntaxErrorException("Invalid statement.");
+        }
+    }
+
+    /*
+    The counter and the end value live in hidden locals, the control
+    variable gets a copy of the counter at the start of every pass
+     */
+    private void forLoop(ForNode f) throws SyntaxErrorException {
+        if (!(f.getExpr() instanceof VariableRefNode) || slotType(((VariableRefNode) f.getExpr()).getSlot()) != Token.tokenType.INTEGERLIT) {
+            throw new SyntaxErrorException("For loop needs an integer control variable.");
+        }
+        int slot = ((VariableRefNode) f.getExpr()).getSlot();
+        int counter = newLocal();
+        int end = newLocal();
+        integer(f.getTo());
+        code.local(Code.ISTORE, end, -1);
+        integer(f.getFrom());
+        code.local(Code.ISTORE, counter, -1);
+
+        Label top = code.label();
+        Label exit = code.label();
+        code.mark(top);
+        code.local(Code.ILOAD, counter, 1);
+        code.local(Code.ILOAD, end, 1);
+        code.branch(Code.IF_ICMPEQ + 4, exit, -2); // IF_ICMPGT
+        beginStore(slot);
+        code.local(Code.ILOAD, counter, 1);
+        endStore(slot);
+        block(f.statements());
+        code.iinc(counter, 1);
+        code.branch(Code.GOTO, top, 0);
+        code.mark(exit);
+    }
+
+    /*
+    Built-ins are not executed by the Interpreter either, so calls to them
+    compile to nothing
+     */
+    private void call(FunctionCallNode fc) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(fc.getName());
+        if (fn == null) {
+            throw new SyntaxErrorException("Function " + fc.getName() + " is not defined.");
+        }
+        if (fn instanceof BuiltInFunction) {
+            return;
+        }
+        ArrayList<ParameterNode> fcParams = fc.getParams();
+        ArrayList<VariableNode> fnParams = fn.getParams();
+        if (fcParams.size() != fnParams.size()) {
+            throw new SyntaxErrorException("Incorrect number of parameters in " + fc.getName() + ".");
+        }
+
+        // Caller locals passed to var parameters get a temporary cell that is read back after the call
+        ArrayList<int[]> writeBack = new ArrayList<>();
+        int depth = code.stack();
+        for (int i = 0; i < fcParams.size(); i++) {
+            Node arg = fcParams.get(i).getVar();
+            Token.tokenType paramType = ClosureInterpreter.normalize(fnParams.get(i).type());
+            if (typeOf(arg) != paramType) {
+                throw new SyntaxErrorException("Argument " + (i + 1) + " of " + fc.getName() + " must be " + paramType);
+            }
+            if (!fnParams.get(i).isChangeable()) {
+                expression(arg);
+            } else if (arg instanceof VariableRefNode && isCell(((VariableRefNode) arg).getSlot())) {
+                code.local(Code.ALOAD, ((VariableRefNode) arg).getSlot(), 1);
+            } else if (arg instanceof VariableRefNode && shared(writeBack, ((VariableRefNode) arg).getSlot()) >= 0) {
+                code.local(Code.ALOAD, shared(writeBack, ((VariableRefNode) arg).getSlot()), 1); // Same variable twice, same cell
+            } else {
+                box(paramType, arg);
+                if (arg instanceof VariableRefNode) {
+                    int temp = newLocal();
+                    code.op(Code.DUP, 1);
+                    code.local(Code.ASTORE, temp, -1);
+                    writeBack.add(new int[] {((VariableRefNode) arg).getSlot(), temp});
+                }
+            }
+        }
+        code.op2(Code.INVOKESTATIC, cf.methodRef(CLASS_NAME, fn.getName(), descriptor(fn)), 0);
+        code.stack(depth);
+
+        for (int[] w: writeBack) {
+            Token.tokenType t = slotType(w[0]);
+            code.local(Code.ALOAD, w[1], 1);
+            cellValue(t);
+            code.local(storeOp(t), w[0], -1);
+        }
+    }
+
+    /*
+    Temporary cell already made for a caller local in this call, -1 if none
+     */
+    private static int shared(ArrayList<int[]> writeBack, int slot) {
+        for (int[] w: writeBack) {
+            if (w[0] == slot) {
+                return w[1];
+            }
+        }
+        return -1;
+    }
+
+    /*
+    Expressions
+     */
+
+    private void expression(Node n) throws SyntaxErrorException {
+        Token.tokenType type = typeOf(n);
+        if (n instanceof IntNode) {
+            code.iconst(((IntNode) n).getVal(), cf);
+        } else if (n instanceof RealNode) {
+            code.fconst(((RealNode) n).getVal(), cf);
+        } else if (n instanceof StringNode) {
+            code.op2(Code.LDC_W, cf.string(((StringNode) n).getVal()), 1);
+        } else if (n instanceof CharNode) {
+            code.iconst(((CharNode) n).getVal(), cf);
+        } else if (n instanceof BooleanNode) {
+            code.iconst(((BooleanNode) n).getVal() ? 1 : 0, cf);
+        } else if (n instanceof VariableRefNode) {
+            load(((VariableRefNode) n).getSlot());
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            expression(m.left());
+            expression(m.right());
+            if (type == Token.tokenType.STRINGLIT) {
+                code.op2(Code.INVOKEVIRTUAL, cf.methodRef("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;"), -1);
+            } else {
+                int base = type == Token.tokenType.INTEGERLIT ? Code.IADD : Code.FADD;
+                code.op(base + 4 * m.op.ordinal(), -1); // ADD, SUB, MUL, DIV, MOD are 4 opcodes apart
+            }
+        } else if (n instanceof BoolCompNode) {
+            Label isFalse = code.label();
+            Label end = code.label();
+            jumpIfFalse(n, isFalse);
+            code.iconst(1, cf);
+            code.branch(Code.GOTO, end, 0);
+            code.mark(isFalse);
+            code.stack(code.stack() - 1);
+            code.iconst(0, cf);
+            code.mark(end);
+        } else {
+            throw new SyntaxErrorException("Illegal Node type in expression: " + n);
+        }
+    }
+
+    private void integer(Node n) throws SyntaxErrorException {
+        if (typeOf(n) != Token.tokenType.INTEGERLIT) {
+            throw new SyntaxErrorException("Expected an integer expression: " + n);
+        }
+        expression(n);
+    }
+
+    /*
+    Jumps to target when a boolean expression is false. Comparisons are
+    fused with the jump instead of producing a 0 or 1 first
+     */
+    private void jumpIfFalse(Node n, Label target) throws SyntaxErrorException {
+        if (!(n instanceof BoolCompNode)) {
+            if (typeOf(n) != Token.tokenType.BOOLEAN) {
+                throw new SyntaxErrorException("Expected a boolean expression: " + n);
+            }
+            expression(n);
+            code.branch(Code.IFEQ, target, -1);
+            return;
+        }
+        BoolCompNode b = (BoolCompNode) n;
+        Token.tokenType lt = typeOf(b.left());
+        Token.tokenType rt = typeOf(b.right());
+        // Offset of the inverted test from IFEQ/IF_ICMPEQ, which go EQ, NE, LT, GE, GT, LE
+        int inverted = switch (b.condition()) {
+            case EQUALS -> 1;
+            case NOTEQ -> 0;
+            case LESSTHAN -> 3;
+            case LESSEQ -> 4;
+            case GREATERTHAN -> 5;
+            case GREATEREQ -> 2;
+            default -> throw new SyntaxErrorException("Unexpected boolean comparison operation type");
+        };
+        boolean ordered = b.condition() != Token.tokenType.EQUALS && b.condition() != Token.tokenType.NOTEQ;
+        if (lt == rt && (lt == Token.tokenType.INTEGERLIT || lt == Token.tokenType.CHARLIT
+                || (lt == Token.tokenType.BOOLEAN && !ordered))) {
+            expression(b.left());
+            expression(b.right());
+            code.branch(Code.IF_ICMPEQ + inverted, target, -2);
+        } else if (ClosureInterpreter.isNumeric(lt) && ClosureInterpreter.isNumeric(rt)) {
+            expression(b.left());
+            if (lt == Token.tokenType.INTEGERLIT) {
+                code.op(Code.I2F, 0);
+            }
+            expression(b.right());
+            if (rt == Token.tokenType.INTEGERLIT) {
+                code.op(Code.I2F, 0);
+            }
+            // Pick the variant that makes a NaN operand fail the test
+            boolean less = b.condition() == Token.tokenType.LESSTHAN || b.condition() == Token.tokenType.LESSEQ;
+            code.op(less ? Code.FCMPG : Code.FCMPL, -1);
+            code.branch(Code.IFEQ + inverted, target, -1);
+        } else if (lt == Token.tokenType.STRINGLIT && rt == Token.tokenType.STRINGLIT && !ordered) {
+            expression(b.left());
+            expression(b.right());
+            code.op2(Code.INVOKEVIRTUAL, cf.methodRef("java/lang/String", "equals", "(Ljava/lang/Object;)Z"), -1);
+            code.branch(Code.IFEQ + (b.condition() == Token.tokenType.EQUALS ? 0 : 1), target, -1);
+        } else {
+            throw new SyntaxErrorException("Incompatible operands for " + b.condition() + ": " + b);
+        }
+    }
+
+    /*
+    Variables
+     */
+
+    // Var parameters hold the caller's cell instead of a value
+    private boolean isCell(int slot) {
+        return slot < current.getParams().size() && current.slots()[slot].isChangeable();
+    }
+
+    private void load(int slot) throws SyntaxErrorException {
+        Token.tokenType t = slotType(slot);
+        if (isCell(slot)) {
+            code.local(Code.ALOAD, slot, 1);
+            cellValue(t);
+        } else {
+            code.local(loadOp(t), slot, 1);
+        }
+    }
+
+    /*
+    A store is split in two so the value can be computed in between; a
+    cell has to be on the stack below its new value
+     */
+    private void beginStore(int slot) {
+        if (isCell(slot)) {
+            code.local(Code.ALOAD, slot, 1);
+        }
+    }
+
+    private void endStore(int slot) throws SyntaxErrorException {
+        Token.tokenType t = slotType(slot);
+        if (!isCell(slot)) {
+            code.local(storeOp(t), slot, -1);
+        } else if (t == Token.tokenType.STRINGLIT) {
+            code.op2(Code.INVOKEVIRTUAL, cf.methodRef(cellClass(t), "setVal", "(Ljava/lang/String;)V"), -2);
+        } else {
+            code.op2(Code.PUTFIELD, cf.fieldRef(cellClass(t), "val", fieldDescriptor(t)), -2);
+        }
+    }
+
+    private void cellValue(Token.tokenType t) throws SyntaxErrorException {
+        if (t == Token.tokenType.STRINGLIT) {
+            code.op2(Code.INVOKEVIRTUAL, cf.methodRef(cellClass(t), "getVal", "()Ljava/lang/String;"), 0);
+        } else {
+            code.op2(Code.GETFIELD, cf.fieldRef(cellClass(t), "val", fieldDescriptor(t)), 0);
+        }
+    }
+
+    /*
+    Leaves a new cell holding the value of n on the stack
+     */
+    private void box(Token.tokenType t, Node n) throws SyntaxErrorException {
+        String cell = cellClass(t);
+        code.op2(Code.NEW, cf.classRef(cell), 1);
+        code.op(Code.DUP, 1);
+        expression(n);
+        code.op2(Code.INVOKESPECIAL, cf.methodRef(cell, "<init>", "(" + fieldDescriptor(t) + ")V"), -2);
+    }
+
+    private void defaultValue(Token.tokenType t) throws SyntaxErrorException {
+        switch (t) {
+            case INTEGERLIT -> code.iconst(0, cf);
+            case REALLIT -> code.fconst(0, cf);
+            case STRINGLIT -> code.op2(Code.LDC_W, cf.string(""), 1);
+            case CHARLIT -> code.iconst(' ', cf);
+            default -> code.iconst(1, cf);
+        }
+    }
+
+    private int newLocal() {
+        code.locals(nextLocal + 1);
+        return nextLocal++;
+    }
+
+    private Token.tokenType typeOf(Node n) throws SyntaxErrorException {
+        return ClosureInterpreter.typeOf(n, current);
+    }
+
+    private Token.tokenType slotType(int slot) throws SyntaxErrorException {
+        return ClosureInterpreter.normalize(current.slots()[slot].type());
+    }
+
+    private static int loadOp(Token.tokenType t) {
+        return switch (t) {
+            case REALLIT -> Code.FLOAD;
+            case STRINGLIT -> Code.ALOAD;
+            default -> Code.ILOAD;
+        };
+    }
+
+    private static int storeOp(Token.tokenType t) {
+        return loadOp(t) + (Code.ISTORE - Code.ILOAD);
+    }
+
+    static String cellClass(Token.tokenType t) throws SyntaxErrorException {
+        return switch (t) {
+            case INTEGERLIT -> "IntegerDataType";
+            case REALLIT -> "RealDataType";
+            case STRINGLIT -> "StringDataType";
+            case CHARLIT -> "CharacterDataType";
+            case BOOLEAN -> "BoolDataType";
+            default -> throw new SyntaxErrorException("No JVM type for " + t);
+        };
+    }
+
+    /*
+    Characters and booleans are plain ints on the JVM stack and in
+    method descriptors, but keep their own type in the cell field
+     */
+    private static String valueDescriptor(Token.tokenType t) {
+        return switch (t) {
+            case REALLIT -> "F";
+            case STRINGLIT -> "Ljava/lang/String;";
+            default -> "I";
+        };
+    }
+
+    private static String fieldDescriptor(Token.tokenType t) {
+        return switch (t) {
+            case CHARLIT -> "C";
+            case BOOLEAN -> "Z";
+            default -> valueDescriptor(t);
+        };
+    }
+}
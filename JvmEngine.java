@@ -0,0 +1,85 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Engine that runs the class made by the JvmCompiler. The class is
+defined as a hidden class next to this one, so it can reach the
+package-private cell fields, and is unloaded together with the engine.
+ */
+public class JvmEngine implements ExecutionEngine {
+
+    private final ProgramNode pn;
+    private final HashMap<String, MethodHandle> functions;
+
+    public JvmEngine(ProgramNode pn) throws SyntaxErrorException {
+        this(pn, false);
+    }
+
+    /*
+    prepared skips the Resolver and TypeChecker, for a tree they already
+    ran on that another engine may be reading at the same time
+     */
+    JvmEngine(ProgramNode pn, boolean prepared) throws SyntaxErrorException {
+        this.pn = pn;
+        if (!prepared) {
+            new Resolver().resolve(pn);
+            new TypeChecker().check(pn);
+        }
+        byte[] bytes = new JvmCompiler().compile(pn);
+        functions = new HashMap<>();
+        try {
+            MethodHandles.Lookup code = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            for (FunctionNode fn: pn.getFunctions().values()) {
+                if (!(fn instanceof BuiltInFunction)) {
+                    MethodType type = MethodType.fromMethodDescriptorString(JvmCompiler.descriptor(fn), JvmEngine.class.getClassLoader());
+                    functions.put(fn.getName(), code.findStatic(code.lookupClass(), fn.getName(), type));
+                }
+            }
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void run(String name, ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        MethodHandle mh = functions.get(name);
+        if (mh == null) {
+            throw new RuntimeException("Function " + name + " is not defined.");
+        }
+        ArrayList<VariableNode> params = pn.getFunctions().get(name).getParams();
+        if (args.size() != params.size()) {
+            throw new RuntimeException("Incorrect number of arguments for function " + name);
+        }
+        Object[] values = new Object[args.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = params.get(i).isChangeable() ? args.get(i) : value(args.get(i));
+        }
+        try {
+            mh.invokeWithArguments(values);
+        } catch (RuntimeException | Error | SyntaxErrorException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /*
+    Plain value of a cell, as the compiled methods take it
+     */
+    private static Object value(InterpreterDataType d) {
+        if (d instanceof IntegerDataType) {
+            return ((IntegerDataType) d).getVal();
+        } else if (d instanceof RealDataType) {
+            return ((RealDataType) d).getVal();
+        } else if (d instanceof StringDataType) {
+            return ((StringDataType) d).getVal();
+        } else if (d instanceof CharacterDataType) {
+            return (int) ((CharacterDataType) d).getVal();
+        } else if (d instanceof BoolDataType) {
+            return ((BoolDataType) d).getVal() ? 1 : 0;
+        }
+        throw new RuntimeException("Cannot pass " + d + " to a compiled function");
+    }
+}
@@ -1,4 +1,7 @@
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -10,6 +13,7 @@ public class Lexer {
 	 */
 	
 	private ArrayList<Token> tokens;
+	private TokenBuffer buffer;
 	private HashMap<String, Token.tokenType> keywords;
 	private HashMap<String, Token.tokenType> specialChars;
 	private Token currentToken;
@@ -46,6 +50,48 @@ public class Lexer {
 		lex(content);
 	}
 	
+	/*
+	 * With tables set, the tokens are made by a TableLexer instead, which
+	 * gives the same tokens without building a String for every character,
+	 * and they are kept packed in a TokenBuffer
+	 */
+	
+	public Lexer(String content, boolean tables) {
+		currentToken = new Token("", Token.tokenType.NONE, 1);
+		keywords = new HashMap<>();
+		specialChars = new HashMap<>();
+		fillHashMap();
+		line = 1;
+		startOfLine = true;
+		prevIndentLevel = 0;
+		if(tables) {
+			buffer = new TableLexer(content).buffer();
+		}
+		else {
+			tokens = new ArrayList<Token>();
+			lex(content);
+		}
+	}
+	
+	/*
+	 * Maps the file into memory and makes its tokens with a TableLexer
+	 * straight from the UTF-8 bytes, so the file is never decoded into a
+	 * String as a whole, only the values of the tokens are
+	 */
+	
+	public Lexer(Path file) throws IOException {
+		currentToken = new Token("", Token.tokenType.NONE, 1);
+		keywords = new HashMap<>();
+		specialChars = new HashMap<>();
+		fillHashMap();
+		line = 1;
+		startOfLine = true;
+		prevIndentLevel = 0;
+		try (FileChannel channel = FileChannel.open(file)) {
+			buffer = TableLexer.lex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
 	/*
 	 * Sets the current State to a token with the specified params
 	 */
@@ -763,16 +809,16 @@ public class Lexer {
 	public void printTokens() {
 		boolean startOfLine = true;
 		int i = 0;
-		for(i = 0; i < tokens.size(); i++) {
+		for(i = 0; i < count(); i++) {
+			Token t = token(i);
 			if(startOfLine)
 				System.out.print("[");
-			if(tokens.get(i).getTokenType() == Token.tokenType.ENDOFLINE) {
+			if(t.getTokenType() == Token.tokenType.ENDOFLINE) {
 				startOfLine = true;
-				System.out.println(tokens.get(i) + "] Line: " + tokens.get(i).getLine() + "\n");
+				System.out.println(t + "] Line: " + t.getLine() + "\n");
 			}
 			else {
 				startOfLine = false;
-				Token t = tokens.get(i);
 				if(isKeyword(t)) {
 					System.out.print(t.getTokenType() + ", ");
 				}
@@ -780,12 +826,12 @@ public class Lexer {
 					System.out.print(t.getTokenType() + ", ");
 				}
 				else {
-					System.out.print(tokens.get(i) + ", ");
+					System.out.print(t + ", ");
 				}
 			}
 		}
-		if(tokens.get(--i).getTokenType() != Token.tokenType.ENDOFLINE) {
-			System.out.println("] Line: " + tokens.get(i).getLine());
+		if(token(--i).getTokenType() != Token.tokenType.ENDOFLINE) {
+			System.out.println("] Line: " + token(i).getLine());
 		}
 	}
 
@@ -794,6 +840,28 @@ public class Lexer {
 	}
 
 	public ArrayList<Token> tokens() {
+		if(tokens == null) {
+			tokens = buffer.tokens();
+		}
 		return this.tokens;
 	}
+
+	/*
+	 * The tokens packed, as the Parser reads them
+	 */
+
+	public TokenBuffer buffer() {
+		if(buffer == null) {
+			buffer = TokenBuffer.of(tokens);
+		}
+		return buffer;
+	}
+
+	private int count() {
+		return tokens != null ? tokens.size() : buffer.size();
+	}
+
+	private Token token(int i) {
+		return tokens != null ? tokens.get(i) : buffer.token(i);
+	}
 }
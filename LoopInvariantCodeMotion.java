@@ -0,0 +1,234 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/*
+Loop-invariant code motion. Math operations inside a while, repeat or
+for loop whose variables are never written by the loop are worked out
+once before it, into a new variable the loop then reads.
+
+What a loop writes is found statically: the targets of its assignments,
+the control variables of its for loops and every variable passed to a
+call, since the callee might take it as a var parameter. Writing a var
+parameter counts as writing all of them. Loops are handled from the
+inside out, so an expression can move out of several loops in steps.
+Integer division and remainder by anything but a non-zero literal are
+not moved, as they could fail before a loop that never runs.
+
+Needs a well-typed program, the new variables get the static type of
+the expression they hold.
+ */
+public class LoopInvariantCodeMotion {
+
+    private FunctionNode current;
+    private int hoisted;
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        new TypeChecker().check(pn);
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                current = fn;
+                optimizeBlock(fn.statements());
+            }
+        }
+    }
+
+    /*
+    Number of expressions moved out of a loop
+     */
+    public int hoisted() {
+        return hoisted;
+    }
+
+    private void optimizeBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        ArrayList<StatementNode> result = new ArrayList<>(statements.size());
+        for (StatementNode s: statements) {
+            if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    optimizeBlock(i.statements());
+                }
+            } else if (s instanceof ForNode) {
+                optimizeBlock(((ForNode) s).statements());
+                result.addAll(hoist(s, null, ((ForNode) s).statements()));
+            } else if (s instanceof WhileNode) {
+                optimizeBlock(((WhileNode) s).statements());
+                result.addAll(hoist(s, ((WhileNode) s).getCondition(), ((WhileNode) s).statements()));
+            } else if (s instanceof RepeatNode) {
+                optimizeBlock(((RepeatNode) s).statements());
+                result.addAll(hoist(s, ((RepeatNode) s).getCondition(), ((RepeatNode) s).statements()));
+            }
+            result.add(s);
+        }
+        statements.clear();
+        statements.addAll(result);
+    }
+
+    /*
+    Replaces the invariant expressions of one loop by new variables and
+    returns the assignments that have to go in front of it
+     */
+    private ArrayList<StatementNode> hoist(StatementNode loop, BoolCompNode condition, ArrayList<StatementNode> body) throws SyntaxErrorException {
+        HashSet<String> written = new HashSet<>();
+        if (loop instanceof ForNode && ((ForNode) loop).getExpr() instanceof VariableRefNode) {
+            written.add(((VariableRefNode) ((ForNode) loop).getExpr()).getName());
+        }
+        writes(body, written);
+        aliases(written);
+        ArrayList<StatementNode> before = new ArrayList<>();
+        if (condition != null) {
+            condition.setLeft(replace(condition.left(), written, before));
+            condition.setRight(replace(condition.right(), written, before));
+        }
+        hoistBlock(body, written, before);
+        return before;
+    }
+
+    private void hoistBlock(ArrayList<StatementNode> statements, HashSet<String> written, ArrayList<StatementNode> before) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof AssignmentNode) {
+                AssignmentNode a = (AssignmentNode) s;
+                a.setVal(replace(a.getVal(), written, before));
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    i.getCondition().setLeft(replace(i.getCondition().left(), written, before));
+                    i.getCondition().setRight(replace(i.getCondition().right(), written, before));
+                    hoistBlock(i.statements(), written, before);
+                }
+            } else if (s instanceof ForNode) {
+                ForNode f = (ForNode) s;
+                f.setFrom(replace(f.getFrom(), written, before));
+                f.setTo(replace(f.getTo(), written, before));
+                hoistBlock(f.statements(), written, before);
+            } else if (s instanceof WhileNode) {
+                BoolCompNode c = ((WhileNode) s).getCondition();
+                c.setLeft(replace(c.left(), written, before));
+                c.setRight(replace(c.right(), written, before));
+                hoistBlock(((WhileNode) s).statements(), written, before);
+            } else if (s instanceof RepeatNode) {
+                BoolCompNode c = ((RepeatNode) s).getCondition();
+                c.setLeft(replace(c.left(), written, before));
+                c.setRight(replace(c.right(), written, before));
+                hoistBlock(((RepeatNode) s).statements(), written, before);
+            } else if (s instanceof FunctionCallNode) {
+                for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                    if (!(p.getVar() instanceof VariableRefNode)) {
+                        p.setVar(replace(p.getVar(), written, before));
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+    Returns the node to use in place of n: a new variable when n is an
+    invariant math operation, otherwise n with its invariant parts replaced
+     */
+    private Node replace(Node n, HashSet<String> written, ArrayList<StatementNode> before) throws SyntaxErrorException {
+        if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            if (invariant(m, written)) {
+                String name = Inliner.temp(current, "licm", "", declaredType(m.staticType()));
+                before.add(new AssignmentNode(name, m));
+                hoisted++;
+                VariableRefNode ref = new VariableRefNode(name);
+                ref.setStaticType(m.staticType());
+                return ref;
+            }
+            m.setLeft(replace(m.left(), written, before));
+            m.setRight(replace(m.right(), written, before));
+        } else if (n instanceof BoolCompNode) {
+            BoolCompNode b = (BoolCompNode) n;
+            b.setLeft(replace(b.left(), written, before));
+            b.setRight(replace(b.right(), written, before));
+        }
+        return n;
+    }
+
+    /*
+    True when the expression only reads variables the loop doesn't write
+    and can't fail
+     */
+    private static boolean invariant(Node n, HashSet<String> written) {
+        if (n instanceof VariableRefNode) {
+            VariableRefNode v = (VariableRefNode) n;
+            return v.getArrIndexExpr() == null && !written.contains(v.getName());
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            if ((m.op == MathOpNode.MathOp.DIV || m.op == MathOpNode.MathOp.MOD) && m.staticType() == Token.tokenType.INTEGERLIT
+                    && !(m.right() instanceof IntNode && ((IntNode) m.right()).getVal() != 0)) {
+                return false;
+            }
+            return invariant(m.left(), written) && invariant(m.right(), written);
+        }
+        return n instanceof IntNode || n instanceof RealNode || n instanceof StringNode || n instanceof CharNode || n instanceof BooleanNode;
+    }
+
+    /*
+    Two var parameters can be the same variable of the caller, writing one
+    of them might change all the others
+     */
+    private void aliases(HashSet<String> written) {
+        boolean any = false;
+        for (VariableNode p: current.getParams()) {
+            any |= p.isChangeable() && written.contains(p.name());
+        }
+        if (any) {
+            for (VariableNode p: current.getParams()) {
+                if (p.isChangeable()) {
+                    written.add(p.name());
+                }
+            }
+        }
+    }
+
+    /*
+    Variables a block might write
+     */
+    static void writes(ArrayList<StatementNode> statements, HashSet<String> written) {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof AssignmentNode) {
+                written.add(((AssignmentNode) s).getTarget().getName());
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    writes(i.statements(), written);
+                }
+            } else if (s instanceof ForNode) {
+                if (((ForNode) s).getExpr() instanceof VariableRefNode) {
+                    written.add(((VariableRefNode) ((ForNode) s).getExpr()).getName());
+                }
+                writes(((ForNode) s).statements(), written);
+            } else if (s instanceof WhileNode) {
+                writes(((WhileNode) s).statements(), written);
+            } else if (s instanceof RepeatNode) {
+                writes(((RepeatNode) s).statements(), written);
+            } else if (s instanceof FunctionCallNode) {
+                for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                    if (p.getVar() instanceof VariableRefNode) {
+                        written.add(((VariableRefNode) p.getVar()).getName());
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+    Type to declare a variable with, for the static type of a value
+     */
+    static Token.tokenType declaredType(Token.tokenType t) {
+        return switch (t) {
+            case INTEGERLIT -> Token.tokenType.INTEGER;
+            case REALLIT -> Token.tokenType.REAL;
+            case STRINGLIT -> Token.tokenType.STRING;
+            case CHARLIT -> Token.tokenType.CHAR;
+            default -> Token.tokenType.BOOLEAN;
+        };
+    }
+}
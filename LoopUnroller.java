@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+Unrolls for loops whose bounds are integer literals, so the engines go
+round the loop fewer times or not at all. A loop whose body copied once
+per iteration fits in the budget is replaced by the copies. When the
+body doesn't write the control variable, each copy reads the literal
+value instead, and the variable gets its last value after them.
+Otherwise each copy is preceded by the assignment the loop would make.
+
+A longer loop whose body doesn't use the control variable goes round
+for a new counter instead, with factor copies of the body per iteration
+and the iterations left over after it:
+    for $unroll from 1 to trips / factor
+        body
+        ...
+    body ...
+    i := to
+A body that reads the control variable would need an i := i + 1 before
+every copy, which costs the tree-walking engines more than the loop's
+own step, so those loops are left as they are.
+
+Sizes are statements plus expression nodes. Loops are handled from the
+inside out, loops using array elements are left alone.
+ */
+public class LoopUnroller {
+
+    static final int DEFAULT_BUDGET = 64;
+    static final int DEFAULT_FACTOR = 4;
+
+    private final int budget;
+    private final int factor;
+    private FunctionNode current;
+    private HashMap<String, Node> names;
+    private int unrolled;
+    private int partial;
+
+    public LoopUnroller() {
+        this(DEFAULT_BUDGET, DEFAULT_FACTOR);
+    }
+
+    /*
+    budget is the largest size a loop may have once unrolled, factor the
+    number of body copies per iteration of a partly unrolled one, 1 to
+    only unroll loops fully
+     */
+    public LoopUnroller(int budget, int factor) {
+        this.budget = budget;
+        this.factor = factor;
+    }
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                current = fn;
+                names = new HashMap<>();
+                for (VariableNode v: fn.getParams()) {
+                    names.put(v.name(), new VariableRefNode(v.name()));
+                }
+                for (VariableNode v: fn.vars()) {
+                    names.put(v.name(), new VariableRefNode(v.name()));
+                }
+                optimizeBlock(fn.statements());
+            }
+        }
+    }
+
+    /*
+    Number of loops replaced by their copies, and number unrolled by the
+    factor
+     */
+    public int unrolled() {
+        return unrolled;
+    }
+
+    public int partial() {
+        return partial;
+    }
+
+    private void optimizeBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        ArrayList<StatementNode> result = new ArrayList<>(statements.size());
+        for (StatementNode s: statements) {
+            if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    optimizeBlock(i.statements());
+                }
+            } else if (s instanceof ForNode) {
+                optimizeBlock(((ForNode) s).statements());
+                ArrayList<StatementNode> replacement = unroll((ForNode) s);
+                if (replacement != null) {
+                    result.addAll(replacement);
+                    continue;
+                }
+            } else if (s instanceof WhileNode) {
+                optimizeBlock(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                optimizeBlock(((RepeatNode) s).statements());
+            }
+            result.add(s);
+        }
+        statements.clear();
+        statements.addAll(result);
+    }
+
+    /*
+    The statements to put in place of the loop, null when it stays
+     */
+    private ArrayList<StatementNode> unroll(ForNode f) throws SyntaxErrorException {
+        if (!(f.getFrom() instanceof IntNode && f.getTo() instanceof IntNode && f.getExpr() instanceof VariableRefNode)) {
+            return null;
+        }
+        VariableRefNode counter = (VariableRefNode) f.getExpr();
+        VariableNode declaration = Inliner.declaration(current, counter.getName());
+        if (counter.getArrIndexExpr() != null || declaration == null || !declaration.isChangeable()) {
+            return null;
+        }
+        String i = counter.getName();
+        int from = ((IntNode) f.getFrom()).getVal();
+        int to = ((IntNode) f.getTo()).getVal();
+        long trips = Math.max(0, (long) to - from + 1);
+        HashSet<String> used = new HashSet<>();
+        int size = Inliner.size(f.statements(), used);
+        if (size < 0 || !names.keySet().containsAll(used)) {
+            return null;
+        }
+        HashSet<String> written = new HashSet<>();
+        LoopInvariantCodeMotion.writes(f.statements(), written);
+        boolean writes = written.contains(i);
+        ArrayList<StatementNode> result = new ArrayList<>();
+        if (trips * (size + (writes ? 1 : 0)) <= budget) {
+            for (int k = from; k <= to && k >= from; k++) {
+                if (writes) {
+                    result.add(new AssignmentNode(i, new IntNode(k)));
+                    copy(f.statements(), names, result);
+                } else {
+                    HashMap<String, Node> value = new HashMap<>(names);
+                    value.put(i, new IntNode(k));
+                    copy(f.statements(), value, result);
+                }
+            }
+            if (!writes && trips > 0) {
+                result.add(new AssignmentNode(i, new IntNode(to)));
+            }
+            unrolled++;
+            return result;
+        }
+        if (factor < 2 || used.contains(i) || trips < 2L * factor || factor * size > budget) {
+            return null;
+        }
+        String loop = Inliner.temp(current, "unroll", "", Token.tokenType.INTEGER);
+        names.put(loop, new VariableRefNode(loop));
+        ArrayList<StatementNode> body = new ArrayList<>();
+        for (int k = 0; k < factor; k++) {
+            copy(f.statements(), names, body);
+        }
+        result.add(new ForNode(new VariableRefNode(loop), new IntNode(1), new IntNode((int) (trips / factor)), body));
+        for (long k = 0; k < trips % factor; k++) {
+            copy(f.statements(), names, result);
+        }
+        result.add(new AssignmentNode(i, new IntNode(to)));
+        partial++;
+        return result;
+    }
+
+    private static void copy(ArrayList<StatementNode> statements, HashMap<String, Node> names, ArrayList<StatementNode> into) throws SyntaxErrorException {
+        for (StatementNode s: statements) {
+            into.add(Inliner.copy(s, names));
+        }
+    }
+}
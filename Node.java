@@ -2,6 +2,34 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 public abstract class Node {
+	/*
+	Specialized version of this node used by the quickening mode of the
+	Interpreter. It replaces itself here when the types it sees change
+	 */
+	private QuickNode quick;
+
+	public QuickNode getQuick() {
+		return quick;
+	}
+
+	public void setQuick(QuickNode quick) {
+		this.quick = quick;
+	}
+
+	/*
+	Static type of an expression, stored by the TypeChecker. null until
+	the program has been checked
+	 */
+	private Token.tokenType staticType;
+
+	public Token.tokenType staticType() {
+		return staticType;
+	}
+
+	public void setStaticType(Token.tokenType staticType) {
+		this.staticType = staticType;
+	}
+
 	public abstract String toString();
 }
 
@@ -60,6 +88,7 @@ class FunctionNode extends Node {
 	private ArrayList<VariableNode> vars;
 	private ArrayList<Node> expressions;
 	private ArrayList<StatementNode> statements;
+	private VariableNode[] slots; // Declaration for every frame slot, set by the Resolver
 
 	protected boolean isVariadic() {return false;}
 
@@ -98,6 +127,18 @@ class FunctionNode extends Node {
 		return statements;
 	}
 
+	public VariableNode[] slots() {
+		return slots;
+	}
+
+	public void setSlots(VariableNode[] slots) {
+		this.slots = slots;
+	}
+
+	public int frameSize() {
+		return slots == null ? 0 : slots.length;
+	}
+
 	@Override
 	public String toString() {
 		// TODO Auto-generated method stub
@@ -154,6 +195,10 @@ class AssignmentNode extends StatementNode {
 		return val;
 	}
 
+	public void setVal(Node val) {
+		this.val = val;
+	}
+
 	public VariableRefNode getTarget() {
 		return target;
 	}
@@ -289,20 +334,34 @@ class ForNode extends StatementNode {
 		statements = s;
 	}
 
+	public Node getExpr() {
+		return expr;
+	}
 	public Node getFrom() {
 		return from;
 	}
 	public Node getTo() {
 		return to;
 	}
+	public void setFrom(Node from) {
+		this.from = from;
+	}
+	public void setTo(Node to) {
+		this.to = to;
+	}
 	public ArrayList<StatementNode> statements() {
 		return statements;
 	}
 
 	@Override
 	public String toString() {
-		// TODO Auto-generated method stub
-		return null;
+		String s = "\t:FOR " + expr + " FROM " + from + " TO " + to;
+		for (StatementNode sn: statements) {
+			s += "\n\t\t";
+			s += sn.toString();
+		}
+		s += "\n";
+		return s;
 	}
 }
 
@@ -327,6 +386,26 @@ class RepeatNode extends StatementNode {
 	}
 }
 
+/*
+ * Put by the Inliner and the Specializer where they replaced a call site,
+ * when profiling. Does nothing when run, the Profile counts it as a use
+ * of that call site
+ */
+class SiteNode extends StatementNode {
+
+	private String site;
+
+	public SiteNode(String site) {
+		this.site = site;
+	}
+	public String getSite() {
+		return site;
+	}
+	public String toString() {
+		return "SITE " + site;
+	}
+}
+
 class BoolCompNode extends Node {
 	private Node lexpr;
 	private Token.tokenType comparison;
@@ -350,6 +429,12 @@ class BoolCompNode extends Node {
 	public Node right() {
 		return rexpr;
 	}
+	public void setLeft(Node l) {
+		lexpr = l;
+	}
+	public void setRight(Node r) {
+		rexpr = r;
+	}
 
 	@Override
 	public String toString() {
@@ -531,6 +616,12 @@ class MathOpNode extends Node {
 	public Node right() {
 		return r;
 	}
+	public void setLeft(Node l) {
+		this.l = l;
+	}
+	public void setRight(Node r) {
+		this.r = r;
+	}
 
 	@Override
 	public String toString() {
@@ -708,7 +799,7 @@ class VariableNode extends Node {
 			case INT -> Token.tokenType.INTEGERLIT;
 			case CHAR -> Token.tokenType.CHARLIT;
 			case STRING -> Token.tokenType.STRINGLIT;
-			case BOOLEAN -> ((BooleanNode) val).type();
+			case BOOLEAN -> val == null ? Token.tokenType.BOOLEAN : ((BooleanNode) val).type();
 		};
 		return t;
 	}
@@ -760,6 +851,10 @@ class ParameterNode {
 		return v;
 	}
 
+	public void setVar(Node v) {
+		this.v = v;
+	}
+
 	@Override
 	public String toString() {
 		// TODO Auto-generated method stub
@@ -771,6 +866,7 @@ class VariableRefNode extends Node {
 	private String name;
 	private Node arrIndexExpr; // Expression for array index.
 	private boolean changeable;
+	private int slot = -1; // Frame slot, -1 until resolved.
 
 	// Constructor for plain variable reference.
 	public VariableRefNode(String name) {
@@ -805,6 +901,14 @@ class VariableRefNode extends Node {
 		return changeable;
 	}
 
+	public int getSlot() {
+		return slot;
+	}
+
+	public void setSlot(int slot) {
+		this.slot = slot;
+	}
+
 	@Override
 	public String toString() {
 		if (arrIndexExpr == null) {
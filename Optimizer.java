@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+AST optimization pass that runs after Parser.parse(). References to
+names from the constants section are replaced by the constant's value,
+and math operations and comparisons whose operands are all literals are
+folded into a single literal, so none of them are worked out again on
+every execution. Operations that would fail at runtime, like a division
+by zero or operands of different types, are left alone so the engines
+still report them.
+ */
+public class Optimizer {
+
+    private ProgramNode pn;
+    private HashMap<String, Node> constants;
+    private int propagated;
+    private int folded;
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        this.pn = pn;
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                optimizeFunction(fn);
+            }
+        }
+    }
+
+    /*
+    A function added to pn by a later pass
+     */
+    public void optimizeFunction(ProgramNode pn, FunctionNode fn) throws SyntaxErrorException {
+        this.pn = pn;
+        optimizeFunction(fn);
+    }
+
+    /*
+    A param with the same name as a constant hides it, as it does in the
+    Resolver
+     */
+    public void optimizeFunction(FunctionNode fn) throws SyntaxErrorException {
+        HashMap<String, VariableNode> declarations = new HashMap<>();
+        for (VariableNode v: fn.getParams()) {
+            declarations.putIfAbsent(v.name(), v);
+        }
+        for (VariableNode v: fn.vars()) {
+            declarations.putIfAbsent(v.name(), v);
+        }
+        constants = new HashMap<>();
+        for (VariableNode v: declarations.values()) {
+            if (!v.isChangeable() && v.getVal() != null) {
+                constants.put(v.name(), v.getVal());
+            }
+        }
+        optimizeBlock(fn.statements());
+    }
+
+    /*
+    Number of constant references replaced and operations folded so far
+     */
+    public int propagated() {
+        return propagated;
+    }
+
+    public int folded() {
+        return folded;
+    }
+
+    /*
+    The tree after optimizing, for the -dump-optimized flag
+     */
+    public String dump() {
+        return "~~~~~OPTIMIZED: " + propagated + " constants propagated, " + folded + " operations folded~~~~~\n" + pn;
+    }
+
+    private void optimizeBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof AssignmentNode) {
+                AssignmentNode a = (AssignmentNode) s;
+                a.setVal(fold(a.getVal()));
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    foldOperands(i.getCondition());
+                    optimizeBlock(i.statements());
+                }
+            } else if (s instanceof ForNode) {
+                ForNode f = (ForNode) s;
+                f.setFrom(fold(f.getFrom()));
+                f.setTo(fold(f.getTo()));
+                optimizeBlock(f.statements());
+            } else if (s instanceof WhileNode) {
+                foldOperands(((WhileNode) s).getCondition());
+                optimizeBlock(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                foldOperands(((RepeatNode) s).getCondition());
+                optimizeBlock(((RepeatNode) s).statements());
+            } else if (s instanceof FunctionCallNode) {
+                optimizeCall((FunctionCallNode) s);
+            }
+        }
+    }
+
+    /*
+    An argument for a var parameter has to stay a variable, the callee
+    writes to it
+     */
+    private void optimizeCall(FunctionCallNode fc) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(fc.getName());
+        ArrayList<ParameterNode> args = fc.getParams();
+        for (int i = 0; i < args.size(); i++) {
+            ParameterNode p = args.get(i);
+            boolean var = fn != null && !(fn instanceof BuiltInFunction) && i < fn.getParams().size() && fn.getParams().get(i).isChangeable();
+            if (!(var && p.getVar() instanceof VariableRefNode)) {
+                p.setVar(fold(p.getVar()));
+            }
+        }
+    }
+
+    /*
+    Conditions have to stay comparisons, only their operands are folded
+     */
+    private void foldOperands(BoolCompNode b) throws SyntaxErrorException {
+        b.setLeft(fold(b.left()));
+        b.setRight(fold(b.right()));
+    }
+
+    /*
+    Returns the node to use in place of n
+     */
+    private Node fold(Node n) throws SyntaxErrorException {
+        if (n instanceof VariableRefNode) {
+            VariableRefNode v = (VariableRefNode) n;
+            Node value = v.getArrIndexExpr() == null ? constants.get(v.getName()) : null;
+            if (value != null) {
+                propagated++;
+                return copy(value);
+            }
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            m.setLeft(fold(m.left()));
+            m.setRight(fold(m.right()));
+            Node result = math(m.op, m.left(), m.right());
+            if (result != null) {
+                folded++;
+                return result;
+            }
+        } else if (n instanceof BoolCompNode) {
+            BoolCompNode b = (BoolCompNode) n;
+            foldOperands(b);
+            Boolean result = compare(b.condition(), b.left(), b.right());
+            if (result != null) {
+                folded++;
+                return new BooleanNode(result);
+            }
+        }
+        return n;
+    }
+
+    /*
+    Value of a math operation on two literals, null if it can't be worked
+    out here
+     */
+    private static Node math(MathOpNode.MathOp op, Node l, Node r) {
+        if (l instanceof IntNode && r instanceof IntNode) {
+            int a = ((IntNode) l).getVal();
+            int b = ((IntNode) r).getVal();
+            if (b == 0 && (op == MathOpNode.MathOp.DIV || op == MathOpNode.MathOp.MOD)) {
+                return null;
+            }
+            return new IntNode(switch (op) {
+                case ADD -> a + b;
+                case SUB -> a - b;
+                case MUL -> a * b;
+                case DIV -> a / b;
+                case MOD -> a % b;
+            });
+        } else if (l instanceof RealNode && r instanceof RealNode) {
+            float a = ((RealNode) l).getVal();
+            float b = ((RealNode) r).getVal();
+            return new RealNode(switch (op) {
+                case ADD -> a + b;
+                case SUB -> a - b;
+                case MUL -> a * b;
+                case DIV -> a / b;
+                case MOD -> a % b;
+            });
+        } else if (l instanceof StringNode && r instanceof StringNode && op == MathOpNode.MathOp.ADD) {
+            return new StringNode(((StringNode) l).getVal() + ((StringNode) r).getVal());
+        }
+        return null;
+    }
+
+    /*
+    Result of a comparison of two literals, with the rules of
+    Interpreter.boolCompareHelper. null if it can't be worked out here
+     */
+    static Boolean compare(Token.tokenType condition, Node l, Node r) {
+        if (l instanceof IntNode && r instanceof IntNode) {
+            int a = ((IntNode) l).getVal();
+            int b = ((IntNode) r).getVal();
+            return switch (condition) {
+                case GREATERTHAN -> a > b;
+                case LESSTHAN -> a < b;
+                case GREATEREQ -> a >= b;
+                case LESSEQ -> a <= b;
+                case NOTEQ -> a != b;
+                case EQUALS -> a == b;
+                default -> null;
+            };
+        } else if (isNumber(l) && isNumber(r)) {
+            float a = number(l);
+            float b = number(r);
+            return switch (condition) {
+                case GREATERTHAN -> a > b;
+                case LESSTHAN -> a < b;
+                case GREATEREQ -> a >= b;
+                case LESSEQ -> a <= b;
+                case NOTEQ -> a != b;
+                case EQUALS -> a == b;
+                default -> null;
+            };
+        } else if (l instanceof StringNode && r instanceof StringNode) {
+            boolean equal = ((StringNode) l).getVal().equals(((StringNode) r).getVal());
+            return switch (condition) {
+                case EQUALS -> equal;
+                case NOTEQ -> !equal;
+                default -> null;
+            };
+        }
+        return null;
+    }
+
+    private static boolean isNumber(Node n) {
+        return n instanceof IntNode || n instanceof RealNode;
+    }
+
+    private static float number(Node n) {
+        return n instanceof IntNode ? ((IntNode) n).getVal() : ((RealNode) n).getVal();
+    }
+
+    /*
+    Every use of a constant gets its own literal node, the engines store
+    their per-node state on it
+     */
+    private static Node copy(Node value) {
+        if (value instanceof IntNode) {
+            return new IntNode(((IntNode) value).getVal());
+        } else if (value instanceof RealNode) {
+            return new RealNode(((RealNode) value).getVal());
+        } else if (value instanceof StringNode) {
+            return new StringNode(((StringNode) value).getVal());
+        } else if (value instanceof CharNode) {
+            return new CharNode(((CharNode) value).getVal());
+        }
+        return new BooleanNode(((BooleanNode) value).getVal());
+    }
+}
@@ -3,19 +3,42 @@ import java.util.HashMap;
 
 public class Parser {
 	public Lexer l;
-	ArrayList<Token> tokens;
-	int index;
+	TokenBuffer tokens;
+	TokenCursor cursor;
 	Token currentToken;
 	ProgramNode p;
 	HashMap<String, FunctionNode> functions;
 	
 	public Parser(String input) {
 		p = new ProgramNode();
-		l = new Lexer(input);
-		tokens = new ArrayList<>(l.tokens());
+		l = new Lexer(input, true);
+		tokens = l.buffer();
 		l.printTokens();
-		currentToken = tokens.get(0);
-		index = 0;
+		cursor = new TokenCursor(tokens);
+		currentToken = cursor.current();
+	}
+	
+	/*
+	 * Lexes the file from its bytes mapped into memory
+	 */
+	public Parser(java.nio.file.Path file) throws java.io.IOException {
+		p = new ProgramNode();
+		l = new Lexer(file);
+		tokens = l.buffer();
+		l.printTokens();
+		cursor = new TokenCursor(tokens);
+		currentToken = cursor.current();
+	}
+	
+	/*
+	 * Lexes input as the tokens are needed, so the source and its tokens are
+	 * never all in memory. The tokens aren't printed
+	 */
+	
+	public Parser(java.io.Reader input) {
+		p = new ProgramNode();
+		cursor = new TokenCursor(new TokenStream(input));
+		currentToken = cursor.current();
 	}
 	
 	
@@ -113,7 +136,7 @@ public class Parser {
 		expectEndOfLine();
 		AssignmentNode n = null;
 		Node arrayIndexExpr = null;
-		Token name = new Token(currentToken);
+		Token name = currentToken;
 		matchAndRemove(Token.tokenType.IDENTIFIER);
 		if(currentToken.getTokenType() == Token.tokenType.LBRACKET) {
 			matchAndRemove(Token.tokenType.LBRACKET);
@@ -544,22 +567,16 @@ public class Parser {
 	}
 	
 	private Token next() {
-		if(tokens.get(index + 1) == null) {
-			return null;
-		}
-		if(index < tokens.size() - 1) {
-			return tokens.get(++index);
-		}
-		return currentToken;
+		return cursor.advance();
 	}
 
 	private Token matchAndRemove(Token.tokenType t) throws SyntaxErrorException {
 		Token returned;
-		if(index == tokens.size() - 1) {
+		if(cursor.atLast()) {
 			return null;
 		}
 		if(currentToken.getTokenType() == t) {
-			returned = new Token(currentToken);
+			returned = currentToken;
 			currentToken = next();
 			return returned;
 		}
@@ -569,26 +586,19 @@ public class Parser {
 	}
 	
 	@SuppressWarnings("unused")
-	private Token peek(int n) throws IndexOutOfBoundsException {
+	private Token peek(int n) {
 		if(n <= 0) {
 			return currentToken;
 		}
-		return tokens.get(tokens.indexOf(currentToken) + n);
+		return cursor.peek(n);
 	}
 	
 	private Token peek() {
-		Token t = null;
-		try {
-			t = tokens.get(tokens.indexOf(currentToken) + 1);
-		}
-		catch(Exception e) {
-			return null;
-		}
-		return t;
+		return cursor.peek(1);
 	}
 	
 	private Token expectEndOfLine() throws SyntaxErrorException, IndexOutOfBoundsException {
-		if(currentToken == tokens.get(tokens.size() - 1)) {
+		if(cursor.atLast()) {
 			return currentToken;
 		}
 		while(currentToken.getTokenType().equals(Token.tokenType.ENDOFLINE)) {
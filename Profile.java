@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/*
+Execution profile of a program, kept in a text file between runs. The
+Interpreter records into it while it runs:
+- how often every statement ran, which for a call statement is how
+  often that call site was used
+- how often each branch of an if chain was taken
+- how often every condition came out true and false
+- how often every function was called
+
+number() gives each of those nodes a name that only depends on where it
+is in the parsed program, so the counts of one run can be matched to the
+tree of the next one. It has to run on the tree straight from the
+Parser, before any pass moves things around. Nodes a pass makes later
+have no name and aren't counted. A call site the Inliner or the
+Specializer replaces is counted through the SiteNode left in its place,
+which keeps the site's name however later passes move or copy it.
+
+The file holds one line per node, "name count count", with the counts of
+all runs saved to it added up.
+ */
+public class Profile {
+
+    /*
+    Calls through one site for the Inliner to give it a bigger budget
+     */
+    static final long HOT = 1000;
+
+    private final IdentityHashMap<Node, String> names;
+    private final IdentityHashMap<Node, long[]> counts;
+    private final HashMap<String, long[]> saved;
+    private final HashMap<String, long[]> sites;
+
+    public Profile() {
+        names = new IdentityHashMap<>();
+        counts = new IdentityHashMap<>();
+        saved = new HashMap<>();
+        sites = new HashMap<>();
+    }
+
+    /*
+    Reads a profile file, an empty profile if there is none yet
+     */
+    public static Profile load(Path file) throws IOException {
+        Profile p = new Profile();
+        if (!Files.exists(file)) {
+            return p;
+        }
+        for (String line: Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 3) {
+                throw new IOException("Bad profile line: " + line);
+            }
+            try {
+                p.saved.put(parts[0], new long[] {Long.parseLong(parts[1]), Long.parseLong(parts[2])});
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad profile line: " + line);
+            }
+        }
+        return p;
+    }
+
+    /*
+    Writes what was loaded plus what was recorded since
+     */
+    public void save(Path file) throws IOException {
+        HashMap<String, long[]> all = new HashMap<>();
+        for (String name: saved.keySet()) {
+            all.put(name, saved.get(name).clone());
+        }
+        for (Node n: counts.keySet()) {
+            long[] c = counts.get(n);
+            long[] total = all.computeIfAbsent(names.get(n), k -> new long[2]);
+            total[0] += c[0];
+            total[1] += c[1];
+        }
+        for (String name: sites.keySet()) {
+            all.computeIfAbsent(name, k -> new long[2])[0] += sites.get(name)[0];
+        }
+        ArrayList<String> lines = new ArrayList<>();
+        for (String name: all.keySet()) {
+            lines.add(name + " " + all.get(name)[0] + " " + all.get(name)[1]);
+        }
+        Collections.sort(lines);
+        lines.add(0, "# Shank execution profile: name count count");
+        Files.write(file, lines);
+    }
+
+    /*
+    Names the functions, statements, if branches and conditions of a
+    freshly parsed program: "f" for function f, "f:3" for its fourth
+    statement counting nested ones in order, "f:3/1" for the second
+    branch of the if chain that statement starts, and a "?" after the
+    name of a statement or branch for its condition
+     */
+    public void number(ProgramNode pn) {
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                name(fn, fn.getName());
+                number(fn.statements(), fn.getName(), new int[1]);
+            }
+        }
+    }
+
+    private void number(ArrayList<StatementNode> statements, String function, int[] next) {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            String name = function + ":" + next[0]++;
+            name(s, name);
+            if (s instanceof IfNode) {
+                int branch = 0;
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock(), branch++) {
+                    String b = branch == 0 ? name : name + "/" + branch;
+                    name(i, b);
+                    name(i.getCondition(), b + "?");
+                    number(i.statements(), function, next);
+                }
+            } else if (s instanceof ForNode) {
+                number(((ForNode) s).statements(), function, next);
+            } else if (s instanceof WhileNode) {
+                name(((WhileNode) s).getCondition(), name + "?");
+                number(((WhileNode) s).statements(), function, next);
+            } else if (s instanceof RepeatNode) {
+                name(((RepeatNode) s).getCondition(), name + "?");
+                number(((RepeatNode) s).statements(), function, next);
+            }
+        }
+    }
+
+    private void name(Node n, String name) {
+        names.put(n, name);
+        counts.put(n, new long[2]);
+    }
+
+    /*
+    Marker for a call site that is replaced, null when the site has no
+    name
+     */
+    SiteNode site(FunctionCallNode fc) {
+        String name = names.get(fc);
+        return name == null ? null : new SiteNode(name);
+    }
+
+    /*
+    Recording, called by the Interpreter. Nodes without a name are
+    ignored
+     */
+
+    void record(Node n) {
+        if (n instanceof SiteNode) {
+            sites.computeIfAbsent(((SiteNode) n).getSite(), k -> new long[2])[0]++;
+            return;
+        }
+        long[] c = counts.get(n);
+        if (c != null) {
+            c[0]++;
+        }
+    }
+
+    void recordTaken(IfNode branch) {
+        long[] c = counts.get(branch);
+        if (c != null) {
+            c[1]++;
+        }
+    }
+
+    void recordOutcome(BoolCompNode condition, boolean result) {
+        long[] c = counts.get(condition);
+        if (c != null) {
+            c[result ? 0 : 1]++;
+        }
+    }
+
+    /*
+    Queries, counting the loaded runs and this one
+     */
+
+    /*
+    Times a statement ran or a function was called
+     */
+    public long executed(Node n) {
+        return count(n, 0);
+    }
+
+    /*
+    Times a branch of an if chain was taken
+     */
+    public long taken(IfNode branch) {
+        return count(branch, 1);
+    }
+
+    /*
+    True and false outcomes of a condition
+     */
+    public long[] outcomes(BoolCompNode condition) {
+        return new long[] {count(condition, 0), count(condition, 1)};
+    }
+
+    /*
+    True when the node has a name, so the counts mean something
+     */
+    public boolean knows(Node n) {
+        return names.containsKey(n);
+    }
+
+    private long count(Node n, int which) {
+        String name = names.get(n);
+        if (name == null) {
+            return 0;
+        }
+        long[] s = saved.get(name);
+        long[] site = sites.get(name);
+        return counts.get(n)[which] + (s == null ? 0 : s[which]) + (site == null ? 0 : site[which]);
+    }
+}
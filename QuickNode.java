@@ -0,0 +1,843 @@
+import java.util.ArrayList;
+
+/*
+Self-specializing expression nodes for the quickening mode of the
+Interpreter. Every expression node of a function gets a QuickNode.
+Variable references, math operations and comparisons start out
+uninitialized. On their first execution they look at the operand types
+they actually get and replace themselves with a variant for those types,
+like int + int or real < real, that evaluates without checking what
+kind of node or value it has. Literals get a constant variant right away.
+
+A specialized variant trusts the types it was made for. When it is
+asked for another type, or an operand turns out to have another type
+because a variable was given a value of another type, it replaces
+itself with the generic version of the node. The generic version checks
+the types on every execution like the plain Interpreter does, and
+throws UnexpectedType when the value really has another type.
+ */
+public abstract class QuickNode {
+
+    final Node owner;
+
+    QuickNode(Node owner) {
+        this.owner = owner;
+    }
+
+    /*
+    Type of the value this node produces. Always looks at the current
+    types, so only the generic nodes and specialization use it
+     */
+    abstract Token.tokenType type(InterpreterDataType[] f);
+
+    /*
+    Version of this node that checks types on every execution
+     */
+    abstract QuickNode generic();
+
+    int executeInt(InterpreterDataType[] f) {
+        return deoptimize().executeInt(f);
+    }
+
+    float executeReal(InterpreterDataType[] f) {
+        return deoptimize().executeReal(f);
+    }
+
+    // Value of an integer or real node as a real, for comparisons and real math
+    float executeNumber(InterpreterDataType[] f) {
+        return deoptimize().executeNumber(f);
+    }
+
+    String executeString(InterpreterDataType[] f) {
+        return deoptimize().executeString(f);
+    }
+
+    char executeChar(InterpreterDataType[] f) {
+        return deoptimize().executeChar(f);
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        return deoptimize().executeBool(f);
+    }
+
+    /*
+    Replaces this node with its generic version. A node that already is
+    generic can't produce the type it was asked for
+     */
+    QuickNode deoptimize() {
+        QuickNode g = generic();
+        if (g == this) {
+            throw UnexpectedType.INSTANCE;
+        }
+        return replace(g);
+    }
+
+    /*
+    Puts q in place of this node and returns it
+     */
+    QuickNode replace(QuickNode q) {
+        owner.setQuick(q);
+        return q;
+    }
+
+    static QuickNode of(Node n) {
+        return n.getQuick();
+    }
+
+    /*
+    Gives every expression node in the program its starting QuickNode
+     */
+    static void install(ProgramNode pn) {
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                installBlock(fn.statements());
+            }
+        }
+    }
+
+    private static void installBlock(ArrayList<StatementNode> statements) {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof AssignmentNode) {
+                installExpression(((AssignmentNode) s).getVal());
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    installExpression(i.getCondition());
+                    installBlock(i.statements());
+                }
+            } else if (s instanceof ForNode) {
+                installExpression(((ForNode) s).getFrom());
+                installExpression(((ForNode) s).getTo());
+                installBlock(((ForNode) s).statements());
+            } else if (s instanceof WhileNode) {
+                installExpression(((WhileNode) s).getCondition());
+                installBlock(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                installExpression(((RepeatNode) s).getCondition());
+                installBlock(((RepeatNode) s).statements());
+            } else if (s instanceof FunctionCallNode) {
+                for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                    installExpression(p.getVar());
+                }
+            }
+        }
+    }
+
+    private static void installExpression(Node n) {
+        if (n instanceof IntNode) {
+            n.setQuick(new IntConstant(n, ((IntNode) n).getVal()));
+        } else if (n instanceof RealNode) {
+            n.setQuick(new RealConstant(n, ((RealNode) n).getVal()));
+        } else if (n instanceof StringNode) {
+            n.setQuick(new StringConstant(n, ((StringNode) n).getVal()));
+        } else if (n instanceof CharNode) {
+            n.setQuick(new CharConstant(n, ((CharNode) n).getVal()));
+        } else if (n instanceof BooleanNode) {
+            n.setQuick(new BoolConstant(n, ((BooleanNode) n).getVal()));
+        } else if (n instanceof MathOpNode) {
+            installExpression(((MathOpNode) n).left());
+            installExpression(((MathOpNode) n).right());
+            n.setQuick(new Uninitialized(n));
+        } else if (n instanceof BoolCompNode) {
+            installExpression(((BoolCompNode) n).left());
+            installExpression(((BoolCompNode) n).right());
+            n.setQuick(new Uninitialized(n));
+        } else if (n instanceof VariableRefNode) {
+            n.setQuick(new Uninitialized(n));
+        }
+    }
+
+    static boolean isNumber(Token.tokenType t) {
+        return t == Token.tokenType.INTEGERLIT || t == Token.tokenType.REALLIT;
+    }
+
+    static Token.tokenType typeOf(InterpreterDataType d) {
+        if (d instanceof IntegerDataType) {
+            return Token.tokenType.INTEGERLIT;
+        } else if (d instanceof RealDataType) {
+            return Token.tokenType.REALLIT;
+        } else if (d instanceof StringDataType) {
+            return Token.tokenType.STRINGLIT;
+        } else if (d instanceof CharacterDataType) {
+            return Token.tokenType.CHARLIT;
+        }
+        return Token.tokenType.BOOLEAN;
+    }
+}
+
+/*
+Thrown by a generic node asked for a type it can't produce. Carries no
+stack trace, the Interpreter turns it into a proper error
+ */
+class UnexpectedType extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    static final UnexpectedType INSTANCE = new UnexpectedType();
+
+    private UnexpectedType() {
+        super(null, null, false, false);
+    }
+}
+
+/*
+State of a node that hasn't run yet. Picks a variant from the types of
+the operands on the first execution
+ */
+class Uninitialized extends QuickNode {
+
+    Uninitialized(Node owner) {
+        super(owner);
+    }
+
+    QuickNode specialize(InterpreterDataType[] f) {
+        if (owner instanceof VariableRefNode) {
+            int slot = ((VariableRefNode) owner).getSlot();
+            return replace(switch (typeOf(f[slot])) {
+                case INTEGERLIT -> new IntRead(owner, slot);
+                case REALLIT -> new RealRead(owner, slot);
+                case STRINGLIT -> new StringRead(owner, slot);
+                case CHARLIT -> new CharRead(owner, slot);
+                default -> new BoolRead(owner, slot);
+            });
+        } else if (owner instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) owner;
+            Token.tokenType l = of(m.left()).type(f);
+            Token.tokenType r = of(m.right()).type(f);
+            if (l == Token.tokenType.INTEGERLIT && r == Token.tokenType.INTEGERLIT) {
+                return replace(IntMath.create(m));
+            } else if (l == Token.tokenType.REALLIT && isNumber(r)) {
+                return replace(RealMath.create(m));
+            }
+            return replace(generic());
+        } else {
+            BoolCompNode b = (BoolCompNode) owner;
+            Token.tokenType l = of(b.left()).type(f);
+            Token.tokenType r = of(b.right()).type(f);
+            if (l == Token.tokenType.INTEGERLIT && r == Token.tokenType.INTEGERLIT) {
+                return replace(IntCompare.create(b));
+            } else if (isNumber(l) && isNumber(r)) {
+                return replace(RealCompare.create(b));
+            }
+            return replace(generic());
+        }
+    }
+
+    QuickNode generic() {
+        if (owner instanceof VariableRefNode) {
+            return new GenericRead(owner, ((VariableRefNode) owner).getSlot());
+        } else if (owner instanceof MathOpNode) {
+            return new GenericMath((MathOpNode) owner);
+        }
+        return new GenericCompare((BoolCompNode) owner);
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return specialize(f).type(f);
+    }
+
+    int executeInt(InterpreterDataType[] f) {
+        return specialize(f).executeInt(f);
+    }
+
+    float executeReal(InterpreterDataType[] f) {
+        return specialize(f).executeReal(f);
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        return specialize(f).executeNumber(f);
+    }
+
+    String executeString(InterpreterDataType[] f) {
+        return specialize(f).executeString(f);
+    }
+
+    char executeChar(InterpreterDataType[] f) {
+        return specialize(f).executeChar(f);
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        return specialize(f).executeBool(f);
+    }
+}
+
+/*
+Literals never change type, so they are their own generic version
+ */
+
+class IntConstant extends QuickNode {
+    final int value;
+
+    IntConstant(Node owner, int value) {
+        super(owner);
+        this.value = value;
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return Token.tokenType.INTEGERLIT;
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    int executeInt(InterpreterDataType[] f) {
+        return value;
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        return value;
+    }
+}
+
+class RealConstant extends QuickNode {
+    final float value;
+
+    RealConstant(Node owner, float value) {
+        super(owner);
+        this.value = value;
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return Token.tokenType.REALLIT;
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    float executeReal(InterpreterDataType[] f) {
+        return value;
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        return value;
+    }
+}
+
+class StringConstant extends QuickNode {
+    final String value;
+
+    StringConstant(Node owner, String value) {
+        super(owner);
+        this.value = value;
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return Token.tokenType.STRINGLIT;
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    String executeString(InterpreterDataType[] f) {
+        return value;
+    }
+}
+
+class CharConstant extends QuickNode {
+    final char value;
+
+    CharConstant(Node owner, char value) {
+        super(owner);
+        this.value = value;
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return Token.tokenType.CHARLIT;
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    char executeChar(InterpreterDataType[] f) {
+        return value;
+    }
+}
+
+class BoolConstant extends QuickNode {
+    final boolean value;
+
+    BoolConstant(Node owner, boolean value) {
+        super(owner);
+        this.value = value;
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return Token.tokenType.BOOLEAN;
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        return value;
+    }
+}
+
+/*
+Variable reads. The cell type check is the guard, the JIT folds it into
+the cast that follows
+ */
+
+abstract class Read extends QuickNode {
+    final int slot;
+
+    Read(Node owner, int slot) {
+        super(owner);
+        this.slot = slot;
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return typeOf(f[slot]);
+    }
+
+    QuickNode generic() {
+        return new GenericRead(owner, slot);
+    }
+}
+
+class IntRead extends Read {
+
+    IntRead(Node owner, int slot) {
+        super(owner, slot);
+    }
+
+    int executeInt(InterpreterDataType[] f) {
+        if (f[slot] instanceof IntegerDataType) {
+            return ((IntegerDataType) f[slot]).getVal();
+        }
+        return deoptimize().executeInt(f);
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        if (f[slot] instanceof IntegerDataType) {
+            return ((IntegerDataType) f[slot]).getVal();
+        }
+        return deoptimize().executeNumber(f);
+    }
+}
+
+class RealRead extends Read {
+
+    RealRead(Node owner, int slot) {
+        super(owner, slot);
+    }
+
+    float executeReal(InterpreterDataType[] f) {
+        if (f[slot] instanceof RealDataType) {
+            return ((RealDataType) f[slot]).getVal();
+        }
+        return deoptimize().executeReal(f);
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        if (f[slot] instanceof RealDataType) {
+            return ((RealDataType) f[slot]).getVal();
+        }
+        return deoptimize().executeNumber(f);
+    }
+}
+
+class StringRead extends Read {
+
+    StringRead(Node owner, int slot) {
+        super(owner, slot);
+    }
+
+    String executeString(InterpreterDataType[] f) {
+        if (f[slot] instanceof StringDataType) {
+            return ((StringDataType) f[slot]).getVal();
+        }
+        return deoptimize().executeString(f);
+    }
+}
+
+class CharRead extends Read {
+
+    CharRead(Node owner, int slot) {
+        super(owner, slot);
+    }
+
+    char executeChar(InterpreterDataType[] f) {
+        if (f[slot] instanceof CharacterDataType) {
+            return ((CharacterDataType) f[slot]).getVal();
+        }
+        return deoptimize().executeChar(f);
+    }
+}
+
+class BoolRead extends Read {
+
+    BoolRead(Node owner, int slot) {
+        super(owner, slot);
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        if (f[slot] instanceof BoolDataType) {
+            return ((BoolDataType) f[slot]).getVal();
+        }
+        return deoptimize().executeBool(f);
+    }
+}
+
+class GenericRead extends Read {
+
+    GenericRead(Node owner, int slot) {
+        super(owner, slot);
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    int executeInt(InterpreterDataType[] f) {
+        if (f[slot] instanceof IntegerDataType) {
+            return ((IntegerDataType) f[slot]).getVal();
+        }
+        throw UnexpectedType.INSTANCE;
+    }
+
+    float executeReal(InterpreterDataType[] f) {
+        if (f[slot] instanceof RealDataType) {
+            return ((RealDataType) f[slot]).getVal();
+        }
+        throw UnexpectedType.INSTANCE;
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        if (f[slot] instanceof IntegerDataType) {
+            return ((IntegerDataType) f[slot]).getVal();
+        }
+        return executeReal(f);
+    }
+
+    String executeString(InterpreterDataType[] f) {
+        if (f[slot] instanceof StringDataType) {
+            return ((StringDataType) f[slot]).getVal();
+        }
+        throw UnexpectedType.INSTANCE;
+    }
+
+    char executeChar(InterpreterDataType[] f) {
+        if (f[slot] instanceof CharacterDataType) {
+            return ((CharacterDataType) f[slot]).getVal();
+        }
+        throw UnexpectedType.INSTANCE;
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        if (f[slot] instanceof BoolDataType) {
+            return ((BoolDataType) f[slot]).getVal();
+        }
+        throw UnexpectedType.INSTANCE;
+    }
+}
+
+/*
+Math operations. One subclass per operator, so a specialized node does
+no dispatch besides calling its operands. As in the Interpreter, the
+left operand decides the type
+ */
+
+abstract class Arithmetic extends QuickNode {
+    final MathOpNode m;
+    final Node left;
+    final Node right;
+
+    Arithmetic(MathOpNode m) {
+        super(m);
+        this.m = m;
+        left = m.left();
+        right = m.right();
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return of(left).type(f);
+    }
+
+    QuickNode generic() {
+        return new GenericMath(m);
+    }
+}
+
+abstract class IntMath extends Arithmetic {
+
+    IntMath(MathOpNode m) {
+        super(m);
+    }
+
+    abstract int apply(int l, int r);
+
+    static IntMath create(MathOpNode m) {
+        return switch (m.op) {
+            case ADD -> new IntMath(m) { int apply(int l, int r) { return l + r; } };
+            case SUB -> new IntMath(m) { int apply(int l, int r) { return l - r; } };
+            case MUL -> new IntMath(m) { int apply(int l, int r) { return l * r; } };
+            case DIV -> new IntMath(m) { int apply(int l, int r) { return l / r; } };
+            case MOD -> new IntMath(m) { int apply(int l, int r) { return l % r; } };
+        };
+    }
+
+    int executeInt(InterpreterDataType[] f) {
+        int l, r;
+        try {
+            l = of(left).executeInt(f);
+            r = of(right).executeInt(f);
+        } catch (UnexpectedType e) {
+            return deoptimize().executeInt(f);
+        }
+        return apply(l, r);
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        int l, r;
+        try {
+            l = of(left).executeInt(f);
+            r = of(right).executeInt(f);
+        } catch (UnexpectedType e) {
+            return deoptimize().executeNumber(f);
+        }
+        return apply(l, r);
+    }
+}
+
+abstract class RealMath extends Arithmetic {
+
+    RealMath(MathOpNode m) {
+        super(m);
+    }
+
+    abstract float apply(float l, float r);
+
+    static RealMath create(MathOpNode m) {
+        return switch (m.op) {
+            case ADD -> new RealMath(m) { float apply(float l, float r) { return l + r; } };
+            case SUB -> new RealMath(m) { float apply(float l, float r) { return l - r; } };
+            case MUL -> new RealMath(m) { float apply(float l, float r) { return l * r; } };
+            case DIV -> new RealMath(m) { float apply(float l, float r) { return l / r; } };
+            case MOD -> new RealMath(m) { float apply(float l, float r) { return l % r; } };
+        };
+    }
+
+    float executeReal(InterpreterDataType[] f) {
+        float l, r;
+        try {
+            l = of(left).executeReal(f);
+            r = of(right).executeNumber(f);
+        } catch (UnexpectedType e) {
+            return deoptimize().executeReal(f);
+        }
+        return apply(l, r);
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        float l, r;
+        try {
+            l = of(left).executeReal(f);
+            r = of(right).executeNumber(f);
+        } catch (UnexpectedType e) {
+            return deoptimize().executeNumber(f);
+        }
+        return apply(l, r);
+    }
+}
+
+class GenericMath extends Arithmetic {
+
+    GenericMath(MathOpNode m) {
+        super(m);
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    int executeInt(InterpreterDataType[] f) {
+        if (type(f) != Token.tokenType.INTEGERLIT) {
+            throw UnexpectedType.INSTANCE;
+        }
+        int l = of(left).executeInt(f);
+        int r = of(right).executeInt(f);
+        return switch (m.op) {
+            case ADD -> l + r;
+            case SUB -> l - r;
+            case MUL -> l * r;
+            case DIV -> l / r;
+            case MOD -> l % r;
+        };
+    }
+
+    float executeReal(InterpreterDataType[] f) {
+        if (type(f) != Token.tokenType.REALLIT) {
+            throw UnexpectedType.INSTANCE;
+        }
+        float l = of(left).executeReal(f);
+        float r = of(right).executeNumber(f);
+        return switch (m.op) {
+            case ADD -> l + r;
+            case SUB -> l - r;
+            case MUL -> l * r;
+            case DIV -> l / r;
+            case MOD -> l % r;
+        };
+    }
+
+    float executeNumber(InterpreterDataType[] f) {
+        if (type(f) == Token.tokenType.INTEGERLIT) {
+            return executeInt(f);
+        }
+        return executeReal(f);
+    }
+
+    String executeString(InterpreterDataType[] f) {
+        if (type(f) != Token.tokenType.STRINGLIT || m.op != MathOpNode.MathOp.ADD) {
+            throw UnexpectedType.INSTANCE;
+        }
+        return of(left).executeString(f) + of(right).executeString(f);
+    }
+}
+
+/*
+Comparisons
+ */
+
+abstract class Compare extends QuickNode {
+    final BoolCompNode b;
+    final Node left;
+    final Node right;
+
+    Compare(BoolCompNode b) {
+        super(b);
+        this.b = b;
+        left = b.left();
+        right = b.right();
+    }
+
+    Token.tokenType type(InterpreterDataType[] f) {
+        return Token.tokenType.BOOLEAN;
+    }
+
+    QuickNode generic() {
+        return new GenericCompare(b);
+    }
+}
+
+abstract class IntCompare extends Compare {
+
+    IntCompare(BoolCompNode b) {
+        super(b);
+    }
+
+    abstract boolean apply(int l, int r);
+
+    static IntCompare create(BoolCompNode b) {
+        return switch (b.condition()) {
+            case EQUALS -> new IntCompare(b) { boolean apply(int l, int r) { return l == r; } };
+            case NOTEQ -> new IntCompare(b) { boolean apply(int l, int r) { return l != r; } };
+            case LESSTHAN -> new IntCompare(b) { boolean apply(int l, int r) { return l < r; } };
+            case LESSEQ -> new IntCompare(b) { boolean apply(int l, int r) { return l <= r; } };
+            case GREATERTHAN -> new IntCompare(b) { boolean apply(int l, int r) { return l > r; } };
+            case GREATEREQ -> new IntCompare(b) { boolean apply(int l, int r) { return l >= r; } };
+            default -> throw new RuntimeException("Unexpected boolean comparison operation type");
+        };
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        int l, r;
+        try {
+            l = of(left).executeInt(f);
+            r = of(right).executeInt(f);
+        } catch (UnexpectedType e) {
+            return deoptimize().executeBool(f);
+        }
+        return apply(l, r);
+    }
+}
+
+abstract class RealCompare extends Compare {
+
+    RealCompare(BoolCompNode b) {
+        super(b);
+    }
+
+    abstract boolean apply(float l, float r);
+
+    static RealCompare create(BoolCompNode b) {
+        return switch (b.condition()) {
+            case EQUALS -> new RealCompare(b) { boolean apply(float l, float r) { return l == r; } };
+            case NOTEQ -> new RealCompare(b) { boolean apply(float l, float r) { return l != r; } };
+            case LESSTHAN -> new RealCompare(b) { boolean apply(float l, float r) { return l < r; } };
+            case LESSEQ -> new RealCompare(b) { boolean apply(float l, float r) { return l <= r; } };
+            case GREATERTHAN -> new RealCompare(b) { boolean apply(float l, float r) { return l > r; } };
+            case GREATEREQ -> new RealCompare(b) { boolean apply(float l, float r) { return l >= r; } };
+            default -> throw new RuntimeException("Unexpected boolean comparison operation type");
+        };
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        float l, r;
+        try {
+            l = of(left).executeNumber(f);
+            r = of(right).executeNumber(f);
+        } catch (UnexpectedType e) {
+            return deoptimize().executeBool(f);
+        }
+        return apply(l, r);
+    }
+}
+
+/*
+Same rules as Interpreter.boolCompareHelper
+ */
+class GenericCompare extends Compare {
+
+    GenericCompare(BoolCompNode b) {
+        super(b);
+    }
+
+    QuickNode generic() {
+        return this;
+    }
+
+    boolean executeBool(InterpreterDataType[] f) {
+        Token.tokenType l = of(left).type(f);
+        Token.tokenType r = of(right).type(f);
+        Token.tokenType condition = b.condition();
+        if (l == Token.tokenType.INTEGERLIT && r == Token.tokenType.INTEGERLIT) {
+            int lv = of(left).executeInt(f);
+            int rv = of(right).executeInt(f);
+            return switch (condition) {
+                case GREATERTHAN -> lv > rv;
+                case LESSTHAN -> lv < rv;
+                case GREATEREQ -> lv >= rv;
+                case LESSEQ -> lv <= rv;
+                case NOTEQ -> lv != rv;
+                case EQUALS -> lv == rv;
+                default -> throw new RuntimeException("Unexpected boolean comparison operation type");
+            };
+        } else if (isNumber(l) && isNumber(r)) {
+            float lv = of(left).executeNumber(f);
+            float rv = of(right).executeNumber(f);
+            return switch (condition) {
+                case GREATERTHAN -> lv > rv;
+                case LESSTHAN -> lv < rv;
+                case GREATEREQ -> lv >= rv;
+                case LESSEQ -> lv <= rv;
+                case NOTEQ -> lv != rv;
+                case EQUALS -> lv == rv;
+                default -> throw new RuntimeException("Unexpected boolean comparison operation type");
+            };
+        } else if (l == Token.tokenType.STRINGLIT && r == Token.tokenType.STRINGLIT) {
+            if (condition == Token.tokenType.EQUALS) {
+                return of(left).executeString(f).equals(of(right).executeString(f));
+            } else if (condition == Token.tokenType.NOTEQ) {
+                return !of(left).executeString(f).equals(of(right).executeString(f));
+            }
+        }
+        throw new RuntimeException("Incompatible operands for " + condition);
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Resolution pass that runs after Parser.parse(). Gives every parameter,
+variable and constant of a function a fixed frame slot and stores that
+slot on each VariableRefNode, so the interpreter can index an array
+instead of hashing the variable name.
+ */
+public class Resolver {
+
+    private HashMap<String, Integer> slotIndex;
+    private VariableNode[] slots;
+    private FunctionNode current;
+
+    public void resolve(ProgramNode pn) throws SyntaxErrorException {
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                resolveFunction(fn);
+            }
+        }
+    }
+
+    /*
+    Params take the first slots in declaration order so arguments can be
+    copied straight in, followed by variables and constants
+     */
+    public void resolveFunction(FunctionNode fn) throws SyntaxErrorException {
+        current = fn;
+        slotIndex = new HashMap<>();
+        ArrayList<VariableNode> decls = new ArrayList<>();
+        for (VariableNode v: fn.getParams()) {
+            declare(v, decls);
+        }
+        for (VariableNode v: fn.vars()) {
+            declare(v, decls);
+        }
+        slots = decls.toArray(new VariableNode[0]);
+        fn.setSlots(slots);
+        resolveBlock(fn.statements());
+    }
+
+    /*
+    A ranged variable is declared twice by the parser, both entries share
+    the first slot
+     */
+    private void declare(VariableNode v, ArrayList<VariableNode> decls) {
+        if (!slotIndex.containsKey(v.name())) {
+            slotIndex.put(v.name(), decls.size());
+            decls.add(v);
+        }
+    }
+
+    private void resolveBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof AssignmentNode) {
+                AssignmentNode a = (AssignmentNode) s;
+                resolveRef(a.getTarget());
+                if (isConstant(a.getTarget())) {
+                    throw new SyntaxErrorException("Cannot reassign constant " + a.getTarget().getName());
+                }
+                resolveExpression(a.getVal());
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    resolveExpression(i.getCondition());
+                    resolveBlock(i.statements());
+                }
+            } else if (s instanceof ForNode) {
+                ForNode f = (ForNode) s;
+                resolveExpression(f.getExpr());
+                resolveExpression(f.getFrom());
+                resolveExpression(f.getTo());
+                resolveBlock(f.statements());
+            } else if (s instanceof WhileNode) {
+                resolveExpression(((WhileNode) s).getCondition());
+                resolveBlock(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                resolveExpression(((RepeatNode) s).getCondition());
+                resolveBlock(((RepeatNode) s).statements());
+            } else if (s instanceof FunctionCallNode) {
+                for (ParameterNode p: ((FunctionCallNode) s).getParams()) {
+                    resolveExpression(p.getVar());
+                }
+            }
+        }
+    }
+
+    private void resolveExpression(Node n) throws SyntaxErrorException {
+        if (n instanceof VariableRefNode) {
+            resolveRef((VariableRefNode) n);
+        } else if (n instanceof MathOpNode) {
+            resolveExpression(((MathOpNode) n).left());
+            resolveExpression(((MathOpNode) n).right());
+        } else if (n instanceof BoolCompNode) {
+            resolveExpression(((BoolCompNode) n).left());
+            resolveExpression(((BoolCompNode) n).right());
+        }
+    }
+
+    private void resolveRef(VariableRefNode v) throws SyntaxErrorException {
+        Integer slot = slotIndex.get(v.getName());
+        if (slot == null) {
+            throw new SyntaxErrorException("Variable " + v.getName() + " does not exist in function " + current.getName() + ".");
+        }
+        v.setSlot(slot);
+        if (v.getArrIndexExpr() != null) {
+            resolveExpression(v.getArrIndexExpr());
+        }
+    }
+
+    /*
+    Constants are the non-changeable entries after the params
+     */
+    private boolean isConstant(VariableRefNode v) {
+        return v.getSlot() >= current.getParams().size() && !slots[v.getSlot()].isChangeable();
+    }
+}
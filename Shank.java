@@ -1,9 +1,8 @@
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class Shank {
 	private static void usage() {
-		System.out.println("USAGE: Shank.java <filename>");
+		System.out.println("USAGE: Shank.java [-dump-optimized] [-entry <function>] [-profile <file>] <filename>");
 	}
 	public static void main(String[] args) throws SyntaxErrorException, java.io.IOException{
 		String input;
@@ -17,6 +16,31 @@ public class Shank {
 //		}
 		//Path filePath = Path.of(args[1]);
 		//input = Files.readString(filePath);
-		Interpreter i = new Interpreter(input);
+		boolean dumpOptimized = false;
+		String entry = null;
+		Path profileFile = null;
+		Path file = null;
+		for (int a = 0; a < args.length; a++) {
+			if(args[a].equals("-dump-optimized")) {
+				dumpOptimized = true;
+			} else if(args[a].equals("-entry") && a + 1 < args.length) {
+				entry = args[++a];
+			} else if(args[a].equals("-profile") && a + 1 < args.length) {
+				profileFile = Path.of(args[++a]);
+			} else if(args[a].startsWith("-") || file != null) {
+				// A flag without its value, an unknown flag or a second file
+				usage();
+				System.exit(1);
+			} else {
+				file = Path.of(args[a]);
+			}
+		}
+		// The profile of earlier runs guides the optimizer, this run is added to it
+		Profile profile = profileFile == null ? null : Profile.load(profileFile);
+		// A file is lexed from its mapped bytes instead of being read into a String
+		Interpreter i = file == null ? new Interpreter(input, false, dumpOptimized, entry, profile) : new Interpreter(file, false, dumpOptimized, entry, profile);
+		if(profile != null) {
+			profile.save(profileFile);
+		}
 	}
 }
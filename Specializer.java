@@ -0,0 +1,319 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+Makes copies of functions for calls that pass literals, with the literal
+in place of the parameter. The Optimizer then folds it through the copy,
+and branches of ifs and while loops whose conditions came out false are
+removed, so a flag argument picks its code once instead of on every
+test. The call is changed to the copy, which has the remaining
+parameters only.
+
+Copies are cached by function and literal arguments, calls with the same
+literals share one. Each copy adds its size (statements plus expression
+nodes) to the program, once that would go past the growth limit calls
+are left as they are. Copies are processed like any other function, so
+a literal passed on to another call specializes that too, and a self
+call with the same literals finds its own copy in the cache.
+
+Only value parameters that the function never writes are replaced, and
+functions that use array elements aren't copied. Copies can't be called
+by name, so this should only run when there is an entry function.
+
+With a profile, a SiteNode goes in front of every call that is changed,
+so the Profile keeps counting the call site under its name.
+ */
+public class Specializer {
+
+    static final int DEFAULT_GROWTH = 400;
+
+    private final int growth;
+    private final Profile profile;
+    private ProgramNode pn;
+    private Optimizer folder;
+    private HashMap<String, FunctionNode> cache;
+    private int grown;
+    private int calls;
+    private int pruned;
+
+    public Specializer() {
+        this(DEFAULT_GROWTH);
+    }
+
+    /*
+    growth is how many nodes the copies may add to the program in total
+     */
+    public Specializer(int growth) {
+        this(growth, null);
+    }
+
+    public Specializer(int growth, Profile profile) {
+        this.growth = growth;
+        this.profile = profile;
+    }
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        this.pn = pn;
+        folder = new Optimizer();
+        cache = new HashMap<>();
+        ArrayList<FunctionNode> work = new ArrayList<>();
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                work.add(fn);
+            }
+        }
+        for (int k = 0; k < work.size(); k++) {
+            specializeBlock(work.get(k).statements(), work);
+        }
+    }
+
+    /*
+    Number of copies made, calls changed to use one, and branches and
+    loops removed from the copies
+     */
+    public int specialized() {
+        return cache.size();
+    }
+
+    public int calls() {
+        return calls;
+    }
+
+    public int pruned() {
+        return pruned;
+    }
+
+    private void specializeBlock(ArrayList<StatementNode> statements, ArrayList<FunctionNode> work) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (int k = 0; k < statements.size(); k++) {
+            StatementNode s = statements.get(k);
+            if (s instanceof FunctionCallNode) {
+                FunctionCallNode call = specialize((FunctionCallNode) s, work);
+                if (call != null) {
+                    statements.set(k, call);
+                    calls++;
+                    SiteNode site = profile == null ? null : profile.site((FunctionCallNode) s);
+                    if (site != null) {
+                        statements.add(k++, site);
+                    }
+                }
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    specializeBlock(i.statements(), work);
+                }
+            } else if (s instanceof ForNode) {
+                specializeBlock(((ForNode) s).statements(), work);
+            } else if (s instanceof WhileNode) {
+                specializeBlock(((WhileNode) s).statements(), work);
+            } else if (s instanceof RepeatNode) {
+                specializeBlock(((RepeatNode) s).statements(), work);
+            }
+        }
+    }
+
+    /*
+    The call to the copy, null when the call stays as it is
+     */
+    private FunctionCallNode specialize(FunctionCallNode fc, ArrayList<FunctionNode> work) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(fc.getName());
+        if (fn == null || fn instanceof BuiltInFunction || fc.getParams().size() != fn.getParams().size()) {
+            return null;
+        }
+        HashSet<String> written = new HashSet<>();
+        writes(fn.statements(), written);
+        HashSet<String> seen = new HashSet<>();
+        boolean[] constant = new boolean[fn.getParams().size()];
+        StringBuilder key = new StringBuilder(fn.getName());
+        boolean any = false;
+        for (int i = 0; i < constant.length; i++) {
+            VariableNode p = fn.getParams().get(i);
+            Node arg = fc.getParams().get(i).getVar();
+            constant[i] = seen.add(p.name()) && !p.isChangeable() && !written.contains(p.name()) && fits(arg, p);
+            if (constant[i]) {
+                String text = arg.toString(); // a String's value, unescaped, so its length goes first
+                key.append(" ").append(arg.getClass().getSimpleName()).append(":").append(text.length()).append(":").append(text);
+            } else {
+                key.append(" _");
+            }
+            any |= constant[i];
+        }
+        if (!any) {
+            return null;
+        }
+        FunctionNode copy = cache.get(key.toString());
+        if (copy == null) {
+            copy = copy(fn, fc, constant);
+            if (copy == null) {
+                return null;
+            }
+            cache.put(key.toString(), copy);
+            pn.addFunc(copy);
+            work.add(copy);
+        }
+        ArrayList<ParameterNode> args = new ArrayList<>();
+        for (int i = 0; i < constant.length; i++) {
+            if (!constant[i]) {
+                args.add(fc.getParams().get(i));
+            }
+        }
+        return new FunctionCallNode(copy.getName(), args);
+    }
+
+    /*
+    The copy of fn for the literals of fc, folded and pruned. null when it
+    would grow the program past the limit
+     */
+    private FunctionNode copy(FunctionNode fn, FunctionCallNode fc, boolean[] constant) throws SyntaxErrorException {
+        int size = Inliner.size(fn.statements(), null);
+        if (size < 0 || grown + size > growth) {
+            return null;
+        }
+        HashMap<String, Node> names = new HashMap<>();
+        ArrayList<VariableNode> params = new ArrayList<>();
+        for (int i = 0; i < constant.length; i++) {
+            VariableNode p = fn.getParams().get(i);
+            if (constant[i]) {
+                names.put(p.name(), fc.getParams().get(i).getVar());
+            } else {
+                names.putIfAbsent(p.name(), new VariableRefNode(p.name()));
+                params.add(p);
+            }
+        }
+        for (VariableNode v: fn.vars()) {
+            names.putIfAbsent(v.name(), new VariableRefNode(v.name()));
+        }
+        ArrayList<StatementNode> body = new ArrayList<>();
+        for (StatementNode s: fn.statements()) {
+            body.add(Inliner.copy(s, names));
+        }
+        String name = Inliner.hidden("spec", cache.size(), "_" + fn.getName());
+        FunctionNode copy = new FunctionNode(name, params, new ArrayList<>(fn.vars()), body);
+        folder.optimizeFunction(pn, copy);
+        prune(copy.statements());
+        size = Inliner.size(copy.statements(), null);
+        if (grown + size > growth) {
+            return null;
+        }
+        grown += size;
+        return copy;
+    }
+
+    /*
+    Removes the branches of ifs and the while loops whose conditions the
+    Optimizer left comparing two literals that are false. A branch that
+    is always true ends its chain, and replaces the if when it comes first
+     */
+    private void prune(ArrayList<StatementNode> statements) {
+        if (statements == null) {
+            return;
+        }
+        ArrayList<StatementNode> result = new ArrayList<>(statements.size());
+        for (StatementNode s: statements) {
+            if (s instanceof IfNode) {
+                ArrayList<IfNode> kept = new ArrayList<>();
+                boolean always = false;
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    prune(i.statements());
+                    Boolean c = value(i.getCondition());
+                    if (c != null && !c) {
+                        pruned++;
+                        continue;
+                    }
+                    kept.add(i);
+                    if (c != null) {
+                        always = true;
+                        if (i.getElseBlock() != null) {
+                            pruned++;
+                        }
+                        break;
+                    }
+                }
+                if (kept.isEmpty()) {
+                    continue;
+                }
+                if (always && kept.size() == 1) {
+                    result.addAll(kept.get(0).statements());
+                    continue;
+                }
+                for (int k = 0; k < kept.size(); k++) {
+                    kept.get(k).addElseBlock(k + 1 < kept.size() ? kept.get(k + 1) : null);
+                }
+                result.add(kept.get(0));
+                continue;
+            } else if (s instanceof ForNode) {
+                prune(((ForNode) s).statements());
+            } else if (s instanceof WhileNode) {
+                Boolean c = value(((WhileNode) s).getCondition());
+                if (c != null && !c) {
+                    pruned++;
+                    continue;
+                }
+                prune(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                prune(((RepeatNode) s).statements());
+            }
+            result.add(s);
+        }
+        statements.clear();
+        statements.addAll(result);
+    }
+
+    private static Boolean value(BoolCompNode b) {
+        return Optimizer.compare(b.condition(), b.left(), b.right());
+    }
+
+    /*
+    A literal of the parameter's own type
+     */
+    private static boolean fits(Node arg, VariableNode p) throws SyntaxErrorException {
+        return switch (ClosureInterpreter.normalize(p.type())) {
+            case INTEGERLIT -> arg instanceof IntNode;
+            case REALLIT -> arg instanceof RealNode;
+            case STRINGLIT -> arg instanceof StringNode;
+            case CHARLIT -> arg instanceof CharNode;
+            case BOOLEAN -> arg instanceof BooleanNode;
+            default -> false;
+        };
+    }
+
+    /*
+    Names that are assigned, used as a for variable, or passed to a var
+    parameter
+     */
+    private void writes(ArrayList<StatementNode> statements, HashSet<String> written) {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof AssignmentNode) {
+                written.add(((AssignmentNode) s).getTarget().getName());
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    writes(i.statements(), written);
+                }
+            } else if (s instanceof ForNode) {
+                if (((ForNode) s).getExpr() instanceof VariableRefNode) {
+                    written.add(((VariableRefNode) ((ForNode) s).getExpr()).getName());
+                }
+                writes(((ForNode) s).statements(), written);
+            } else if (s instanceof WhileNode) {
+                writes(((WhileNode) s).statements(), written);
+            } else if (s instanceof RepeatNode) {
+                writes(((RepeatNode) s).statements(), written);
+            } else if (s instanceof FunctionCallNode) {
+                FunctionNode callee = pn.getFunctions().get(((FunctionCallNode) s).getName());
+                ArrayList<ParameterNode> args = ((FunctionCallNode) s).getParams();
+                for (int i = 0; i < args.size(); i++) {
+                    boolean var = callee == null || callee instanceof BuiltInFunction
+                            || i >= callee.getParams().size() || callee.getParams().get(i).isChangeable();
+                    if (var && args.get(i).getVar() instanceof VariableRefNode) {
+                        written.add(((VariableRefNode) args.get(i).getVar()).getName());
+                    }
+                }
+            }
+        }
+    }
+}
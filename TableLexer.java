@@ -0,0 +1,774 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/*
+Lexer mode that makes the same tokens as Lexer.generateTokens with less
+work per character. It is the same state machine, case for case, so
+every token, value and line number comes out as before, including the
+odd ones. What changed is how it keeps its state:
+- the accumulated token text is a reused char buffer, a String is only
+  made when a token is added
+- characters are classified with lookup tables instead of building a
+  one-character String for a HashMap
+- keywords are found by comparing the buffer with the keywords of its
+  length
+- the indentation of the line is counted as the line is read, instead
+  of scanning it again for every character
+- the state is a token type instead of a new Token on every change
+The tokens go into a TokenBuffer as offsets into the source, the
+ArrayList of Tokens is only made when it is asked for.
+
+Made from the bytes of a UTF-8 file, it reads them as chars as long as
+they are ASCII, which gives the same tokens with a byte for a char. A
+string literal can hold any bytes, its value is decoded from them when
+it is asked for. Any other byte that isn't ASCII makes lex(ByteBuffer)
+decode the file and lex that instead.
+
+Made from a Reader instead, it lexes as its tokens are asked for with
+next(), and only keeps the part of the source it still has to look at,
+read a chunk at a time. All of its state is in fields, so a token, an
+indentation change or a comment can go across the end of a chunk.
+ */
+class TableLexer {
+
+    private static final byte OTHER = 0;
+    private static final byte LETTER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte[] CLASSES = new byte[128];
+    private static final Token.tokenType[] SPECIAL = new Token.tokenType[128];
+    private static final String[][] KEYWORDS = new String[10][];
+    private static final Token.tokenType[][] KEYWORD_TYPES = new Token.tokenType[10][];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            CLASSES[c] = Character.isLetter(c) ? LETTER : Character.isDigit(c) ? DIGIT : OTHER;
+        }
+        SPECIAL['('] = Token.tokenType.LPAREN;
+        SPECIAL[')'] = Token.tokenType.RPAREN;
+        SPECIAL['['] = Token.tokenType.LBRACKET;
+        SPECIAL[']'] = Token.tokenType.RBRACKET;
+        SPECIAL['+'] = Token.tokenType.PLUS;
+        SPECIAL['-'] = Token.tokenType.MINUS;
+        SPECIAL['*'] = Token.tokenType.MUL;
+        SPECIAL['/'] = Token.tokenType.DIV;
+        SPECIAL['='] = Token.tokenType.EQUALS;
+        SPECIAL[':'] = Token.tokenType.COLON;
+        SPECIAL[','] = Token.tokenType.COMMA;
+        SPECIAL['>'] = Token.tokenType.GREATERTHAN;
+        SPECIAL['<'] = Token.tokenType.LESSTHAN;
+        SPECIAL['.'] = Token.tokenType.DOT;
+        SPECIAL['%'] = Token.tokenType.MODULO;
+        SPECIAL[';'] = Token.tokenType.SEMICOLON;
+        String[] words = {"constants", "define", "variables", "var", "char", "string", "integer", "boolean", ":=", "==",
+                "while", "for", "if", "else", "do", "true", "false", "array", "of", "repeat", "until"};
+        Token.tokenType[] types = {Token.tokenType.CONST, Token.tokenType.DEFINE, Token.tokenType.VARIABLES, Token.tokenType.VAR,
+                Token.tokenType.CHAR, Token.tokenType.STRING, Token.tokenType.INTEGER, Token.tokenType.BOOLEAN, Token.tokenType.ASSIGN,
+                Token.tokenType.BOOLEQ, Token.tokenType.WHILE, Token.tokenType.FOR, Token.tokenType.IF, Token.tokenType.ELSE,
+                Token.tokenType.DO, Token.tokenType.TRUE, Token.tokenType.FALSE, Token.tokenType.ARRAY, Token.tokenType.OF,
+                Token.tokenType.REPEAT, Token.tokenType.UNTIL};
+        for (int length = 0; length < KEYWORDS.length; length++) {
+            ArrayList<String> w = new ArrayList<>();
+            ArrayList<Token.tokenType> t = new ArrayList<>();
+            for (int k = 0; k < words.length; k++) {
+                if (words[k].length() == length) {
+                    w.add(words[k]);
+                    t.add(types[k]);
+                }
+            }
+            KEYWORDS[length] = w.toArray(new String[0]);
+            KEYWORD_TYPES[length] = t.toArray(new Token.tokenType[0]);
+        }
+    }
+
+    // Char k of the source is window[k - base], the window holds limit
+    // chars. Only a streaming lexer has a reader, and moves its window
+    private char[] window;
+    private int base;
+    private int limit;
+    private Reader reader;
+
+    // A file's UTF-8 bytes, read in place of the window. The bytes up to
+    // checked have been looked at, and string literals in them took extra
+    // bytes more than chars
+    private final ByteBuffer bytes;
+    private int checked = -1;
+    private int extra;
+
+    // Warnings of a pass over bytes, printed once the pass gets through.
+    // A pass that turns out not to be ASCII is done again from a String,
+    // which prints them itself
+    private StringBuilder deferred;
+
+    // Where the tokens go, the buffer for a whole source and pending for
+    // a stream
+    private final TokenBuffer buffer;
+    private final ArrayDeque<Token> pending;
+
+    // Where lexing goes on from, nothing before it is looked at again
+    private int position;
+    private boolean finished;
+    private Token.tokenType state;
+    private int line;
+    private boolean startOfLine;
+    private int currentIndentLevel;
+    private int prevIndentLevel;
+
+    // Text of the token being read, and where it starts in the source
+    // while it is still one run of it
+    private char[] acc;
+    private int accLength;
+    private int accStart;
+    private boolean accInSource;
+
+    // Length and leading tabs of what Lexer keeps of the current line
+    private int lineLength;
+    private int lineTabs;
+
+    TableLexer(String source) {
+        window = source.toCharArray();
+        limit = window.length;
+        bytes = null;
+        // Sources run about 2.8 chars a token, so this is rarely outgrown
+        buffer = new TokenBuffer(source, source.length() / 2);
+        pending = null;
+        state = Token.tokenType.NONE;
+        line = 1;
+        startOfLine = true;
+        acc = new char[64];
+        lex(false);
+        buffer.trim();
+    }
+
+    /*
+    A lexer that reads from reader chunk chars at a time as its tokens
+    are asked for
+     */
+    TableLexer(Reader reader, int chunk) {
+        this.reader = reader;
+        window = new char[chunk];
+        bytes = null;
+        buffer = null;
+        pending = new ArrayDeque<>();
+        state = Token.tokenType.NONE;
+        line = 1;
+        startOfLine = true;
+        acc = new char[64];
+    }
+
+    private TableLexer(ByteBuffer bytes) {
+        this.bytes = bytes;
+        limit = bytes.limit();
+        buffer = new TokenBuffer(bytes, limit / 2);
+        pending = null;
+        state = Token.tokenType.NONE;
+        line = 1;
+        startOfLine = true;
+        acc = new char[64];
+        deferred = new StringBuilder();
+        lex(false);
+        buffer.trim();
+        System.err.print(deferred);
+    }
+
+    /*
+    The tokens of a UTF-8 file's bytes, straight from the bytes when
+    the text outside string literals is ASCII
+     */
+    static TokenBuffer lex(ByteBuffer bytes) throws java.nio.charset.CharacterCodingException {
+        try {
+            return new TableLexer(bytes).buffer();
+        } catch (NotAscii e) {
+            return new TableLexer(StandardCharsets.UTF_8.newDecoder().decode(bytes.duplicate().rewind()).toString()).buffer();
+        }
+    }
+
+    /*
+    The next token of a streaming lexer, null after the last one
+     */
+    Token next() {
+        while (pending.isEmpty() && !finished) {
+            lex(true);
+        }
+        return pending.poll();
+    }
+
+    TokenBuffer buffer() {
+        return buffer;
+    }
+
+    ArrayList<Token> tokens() {
+        return buffer.tokens();
+    }
+
+    /*
+    The ENDOFLINE state, which also ends a string literal like in Lexer
+     */
+    private void endOfLine(int i) {
+        startOfLine = true;
+        char c = at(i);
+        append(i);
+        lineAppend(c);
+        addText(Token.tokenType.ENDOFLINE);
+        state = Token.tokenType.NONE;
+        if (c == '\n') {
+            accLength = 0;
+            lineLength = 0;
+            lineTabs = 0;
+        } else {
+            accLength = 0;
+            append(i);
+            lineLength = 0;
+            lineTabs = 0;
+            lineAppend(c);
+        }
+        line++;
+    }
+
+    /*
+    Lexes to the end of the source, or with one set only until a token
+    has been made
+     */
+    private void lex(boolean one) {
+        for (int i = position; has(i); i++) {
+            if (one && !pending.isEmpty()) {
+                position = i;
+                return;
+            }
+            position = i;
+            prevIndentLevel = currentIndentLevel;
+            if (lineLength > 0) {
+                currentIndentLevel = lineTabs;
+            }
+            if (currentIndentLevel > prevIndentLevel) {
+                add("", Token.tokenType.INDENT);
+            } else if (currentIndentLevel < prevIndentLevel) {
+                add("", Token.tokenType.DEDENT);
+            }
+            char c = at(i);
+            switch (state) {
+                case IDENTIFIER:
+                    startOfLine = false;
+                    if (isLetter(c)) {
+                        append(i);
+                        lineAppend(c);
+                    } else if (c == ' ') {
+                        Token.tokenType keyword = keyword();
+                        if (keyword != null) {
+                            add("", keyword);
+                        } else {
+                            addStripped(Token.tokenType.IDENTIFIER, true);
+                        }
+                        state = Token.tokenType.NONE;
+                        accLength = 0;
+                        lineAppend(' ');
+                    } else if (isSpecial(c)) {
+                        if (accLength > 0) {
+                            Token.tokenType keyword = keyword();
+                            if (keyword != null) {
+                                add("", keyword);
+                            } else {
+                                addText(Token.tokenType.IDENTIFIER);
+                            }
+                            add("", SPECIAL[c]);
+                            accLength = 0;
+                            lineAppend(c);
+                        }
+                        state = Token.tokenType.NONE;
+                    } else if (c == '\n') {
+                        endOfLine(Token.tokenType.IDENTIFIER);
+                    } else {
+                        fail("Illegal character " + c + " in IDENTIFIER: " + stripped() + " (Line " + line + ")", 1);
+                    }
+                    break;
+
+                case INTEGERLIT:
+                    startOfLine = false;
+                    if (isDigit(c)) {
+                        append(i);
+                        lineAppend(c);
+                    } else if (c == ' ') {
+                        addStripped(Token.tokenType.INTEGERLIT, false);
+                        state = Token.tokenType.NONE;
+                        accLength = 0;
+                    } else if (isSpecial(c)) {
+                        if (c == '.') {
+                            if (isDigit(at(i + 1))) {
+                                append(i);
+                                lineAppend(c);
+                                state = Token.tokenType.REALLIT;
+                            } else {
+                                warn("Unexpected character after '.': [Line " + line + "]");
+                            }
+                        } else if (accLength > 0) {
+                            if (c == ')' || c == ']') {
+                                addText(Token.tokenType.INTEGERLIT);
+                                add("", SPECIAL[c]);
+                                state = Token.tokenType.NONE;
+                                accLength = 0;
+                                lineAppend(c);
+                            }
+                        } else {
+                            state = Token.tokenType.NONE;
+                        }
+                    } else if (c == '\n') {
+                        endOfLine(Token.tokenType.INTEGERLIT);
+                    } else {
+                        fail("Illegal character " + c + " in INTEGER: " + text() + " (Line " + line + ")", 0);
+                    }
+                    break;
+
+                case REALLIT:
+                    startOfLine = false;
+                    if (isDigit(c)) {
+                        append(i);
+                        lineAppend(c);
+                    } else if (c == ' ') {
+                        addStripped(Token.tokenType.REALLIT, false);
+                        state = Token.tokenType.NONE;
+                        accLength = 0;
+                    } else if (isSpecial(c)) {
+                        if (c == ')' || c == ']') {
+                            addText(Token.tokenType.INTEGERLIT);
+                            add("", SPECIAL[c]);
+                            state = Token.tokenType.NONE;
+                            accLength = 0;
+                        }
+                    } else if (c == '\n') {
+                        endOfLine(Token.tokenType.REALLIT);
+                    } else {
+                        fail("Illegal character " + c + " in real number: " + text() + " (Line " + line + ")", 0);
+                    }
+                    break;
+
+                case CHARLIT:
+                    startOfLine = false;
+                    if (at(i + 1) == '\'') {
+                        addRange(Token.tokenType.CHARLIT, i++, 1);
+                        state = Token.tokenType.NONE;
+                        accLength = 0;
+                        lineAppend(at(i));
+                    } else if (c == '\n') {
+                        endOfLine(Token.tokenType.CHARLIT);
+                    } else {
+                        fail("Illegal character " + at(i + 1) + "in character literal.", 1);
+                    }
+                    break;
+
+                case STRINGLIT:
+                    startOfLine = false;
+                    int start = i;
+                    while (at(i) != '\"') {
+                        // Lexer compares the char index here, not the char
+                        if (!has(i + 1) && i - extra != '\"') {
+                            fail("Unclosed string literal at: Line " + line, 1);
+                        }
+                        i++;
+                    }
+                    addRange(Token.tokenType.STRINGLIT, start, i - start);
+                    state = Token.tokenType.NONE;
+                    accLength = 0;
+                    i++;
+                    endOfLine(i); // Lexer has no break here, its ENDOFLINE case runs next
+                    break;
+
+                case ENDOFLINE:
+                    endOfLine(i);
+                    break;
+
+                case COMMENT:
+                    break;
+
+                case NONE:
+                    if (isLetter(c)) {
+                        append(i);
+                        lineAppend(c);
+                        state = Token.tokenType.IDENTIFIER;
+                    } else if (isDigit(c)) {
+                        append(i);
+                        lineAppend(c);
+                        state = Token.tokenType.INTEGERLIT;
+                    } else if (c == '\n') {
+                        addRange(Token.tokenType.ENDOFLINE, i, 1);
+                        lineLength = 0;
+                        lineTabs = 0;
+                        startOfLine = true;
+                        line++;
+                    } else if (c == '\t') {
+                        if (startOfLine) {
+                            lineAppend('\t');
+                            startOfLine = false;
+                        }
+                    } else if (c == '\'') {
+                        state = Token.tokenType.CHARLIT;
+                    } else if (c == '\"') {
+                        state = Token.tokenType.STRINGLIT;
+                    } else if (c == '=') {
+                        if (at(i + 1) == '=') {
+                            add("", Token.tokenType.BOOLEQ);
+                            i += 2;
+                        } else {
+                            add("", Token.tokenType.EQUALS);
+                        }
+                    } else if (isSpecial(c)) {
+                        if (c == '-') {
+                            if (isDigit(at(i + 1))) {
+                                append(i);
+                                lineAppend(c);
+                                state = Token.tokenType.INTEGERLIT;
+                            } else {
+                                add("", SPECIAL[c]);
+                            }
+                        } else if (c == ':') {
+                            if (at(i + 1) == '=') {
+                                add("", Token.tokenType.ASSIGN);
+                                lineAppend(':');
+                                lineAppend('=');
+                                i += 1;
+                            } else {
+                                add("", SPECIAL[c]);
+                            }
+                        } else if (c == '<') {
+                            if (at(i + 1) == '=') {
+                                add("", Token.tokenType.LESSEQ);
+                                i += 2;
+                            } else if (at(i + 1) == '>') {
+                                add("", Token.tokenType.NOTEQ);
+                                i += 2;
+                            } else {
+                                add("", SPECIAL[c]);
+                            }
+                        } else if (c == '>') {
+                            if (at(i + 1) == '=') {
+                                add("", Token.tokenType.GREATEREQ);
+                                i += 2;
+                            } else {
+                                add("", SPECIAL[c]);
+                            }
+                        } else {
+                            add("", SPECIAL[c]);
+                            lineAppend(c);
+                        }
+                    } else if (c == ' ') {
+                        if (startOfLine) {
+                            boolean indented = true;
+                            for (int j = 1; j < 3; j++) {
+                                if (at(i + j) != ' ') {
+                                    indented = false;
+                                }
+                            }
+                            if (indented) {
+                                currentIndentLevel++;
+                            }
+                            i += 4;
+                        }
+                        lineAppend(' ');
+                        state = Token.tokenType.NONE;
+                    } else {
+                        fail("Illegal character: " + c + " in token: " + text() + " (Line " + line + ")", 1);
+                    }
+                    break;
+
+                default:
+                    if (c == ' ') {
+                        warn("Character: SPACE not a valid token. (in Line " + line + ")");
+                    }
+                    fail("Character: " + c + " not a valid token. (in Line " + line + ")", 1);
+            }
+        }
+        if (bytes != null) {
+            skipped(limit);
+        }
+        finish();
+        finished = true;
+    }
+
+    /*
+    A newline in an identifier or literal. The ENDOFLINE token gets the
+    token's text as its value, as in Lexer
+     */
+    private void endOfLine(Token.tokenType type) {
+        Token.tokenType keyword = keyword();
+        if (keyword != null) {
+            add("", keyword);
+            addText(Token.tokenType.ENDOFLINE);
+            line++;
+            startOfLine = true;
+            accLength = 0;
+            lineLength = 0;
+            lineTabs = 0;
+        }
+        if (accLength > 0) {
+            addText(type);
+            addText(Token.tokenType.ENDOFLINE);
+            line++;
+            startOfLine = true;
+            accLength = 0;
+            lineLength = 0;
+            lineTabs = 0;
+        }
+        state = Token.tokenType.NONE;
+    }
+
+    /*
+    The token still being read when the source ends
+     */
+    private void finish() {
+        switch (state) {
+            case IDENTIFIER:
+                Token.tokenType keyword = keyword();
+                if (keyword != null) {
+                    add("", keyword);
+                } else {
+                    addText(Token.tokenType.IDENTIFIER);
+                }
+                break;
+            case STRINGLIT, CHARLIT, INTEGERLIT, REALLIT, ENDOFLINE:
+                addText(state);
+                break;
+            case NONE:
+                break;
+            default:
+                fail("Illegal character", 1);
+        }
+    }
+
+    private void add(String value, Token.tokenType type) {
+        if (buffer != null) {
+            buffer.add(type, value, line);
+        } else {
+            pending.add(new Token(value, type, line));
+        }
+    }
+
+    /*
+    A token with length chars of the source from offset as its value
+     */
+    private void addRange(Token.tokenType type, int offset, int length) {
+        if (buffer != null) {
+            buffer.add(type, offset, length, line);
+        } else {
+            add(length == 0 ? "" : new String(window, offset - base, length), type);
+        }
+    }
+
+    /*
+    A token with the text as its value. A stream may have moved its
+    window past where the text started
+     */
+    private void addText(Token.tokenType type) {
+        if (buffer != null && (accInSource || accLength == 0)) {
+            buffer.add(type, accStart, accLength, line);
+        } else {
+            add(text(), type);
+        }
+    }
+
+    /*
+    A token with the text without spaces as its value, and without
+    newlines too if newlines is set
+     */
+    private void addStripped(Token.tokenType type, boolean newlines) {
+        for (int k = 0; k < accLength; k++) {
+            if (acc[k] == ' ' || (newlines && acc[k] == '\n')) {
+                add(newlines ? stripped() : stripped(' '), type);
+                return;
+            }
+        }
+        addText(type);
+    }
+
+    /*
+    Adds the char at the given offset of the source to the text
+     */
+    private void append(int at) {
+        if (accLength == 0) {
+            accStart = at;
+            accInSource = true;
+        } else if (accStart + accLength != at) {
+            accInSource = false;
+        }
+        if (accLength == acc.length) {
+            acc = java.util.Arrays.copyOf(acc, acc.length * 2);
+        }
+        acc[accLength++] = at(at);
+    }
+
+    /*
+    True if the source has a char k, reading more of a stream if needed
+     */
+    private boolean has(int k) {
+        return k - base < limit || fill(k);
+    }
+
+    /*
+    Char k of the source. Past the end this fails as indexing the whole
+    source would
+     */
+    private char at(int k) {
+        int r = k - base;
+        if (r < limit || fill(k)) {
+            return bytes == null ? window[k - base] : ascii(k);
+        }
+        throw new ArrayIndexOutOfBoundsException("Index " + k + " out of bounds for length " + (base + limit));
+    }
+
+    private char ascii(int k) {
+        skipped(k);
+        byte b = bytes.get(k);
+        if (b < 0) {
+            if (state != Token.tokenType.STRINGLIT) {
+                throw NotAscii.INSTANCE;
+            }
+            if (k > checked) {
+                // a continuation byte is one more byte of a char, and four
+                // bytes are two chars
+                extra += (b & 0xC0) == 0x80 ? 1 : (b & 0xF8) == 0xF0 ? -1 : 0;
+            }
+        }
+        checked = Math.max(checked, k);
+        return (char) (b & 0xFF);
+    }
+
+    /*
+    The Lexer skips some chars without looking at them, a byte skipped
+    over has to be ASCII for the bytes to line up with the chars
+     */
+    private void skipped(int k) {
+        while (checked < k - 1) {
+            if (bytes.get(++checked) < 0) {
+                throw NotAscii.INSTANCE;
+            }
+        }
+    }
+
+    /*
+    Reads chunks of a stream until char k is in the window, false at the
+    end of the source. What's before position is dropped first
+     */
+    private boolean fill(int k) {
+        while (reader != null && k - base >= limit) {
+            int keep = position - base;
+            if (keep > 0) {
+                System.arraycopy(window, keep, window, 0, limit - keep);
+                limit -= keep;
+                base = position;
+            }
+            if (limit == window.length) {
+                window = java.util.Arrays.copyOf(window, window.length * 2);
+            }
+            try {
+                int read = reader.read(window, limit, window.length - limit);
+                if (read < 0) {
+                    reader.close();
+                    reader = null;
+                } else {
+                    limit += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return k - base < limit;
+    }
+
+    private void lineAppend(char c) {
+        if (lineTabs == lineLength && c == '\t') {
+            lineTabs++;
+        }
+        lineLength++;
+    }
+
+    private String text() {
+        return accLength == 0 ? "" : new String(acc, 0, accLength);
+    }
+
+    /*
+    The text without newlines and spaces
+     */
+    private String stripped() {
+        StringBuilder sb = new StringBuilder(accLength);
+        for (int k = 0; k < accLength; k++) {
+            if (acc[k] != '\n' && acc[k] != ' ') {
+                sb.append(acc[k]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /*
+    The text without c
+     */
+    private String stripped(char c) {
+        return text().replace(String.valueOf(c), "");
+    }
+
+    /*
+    Type of the keyword the text spells, null for any other text
+     */
+    private Token.tokenType keyword() {
+        if (accLength >= KEYWORDS.length) {
+            return null;
+        }
+        String[] words = KEYWORDS[accLength];
+        for (int w = 0; w < words.length; w++) {
+            String word = words[w];
+            int k = 0;
+            while (k < accLength && word.charAt(k) == acc[k]) {
+                k++;
+            }
+            if (k == accLength) {
+                return KEYWORD_TYPES[accLength][w];
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLetter(char c) {
+        return c < 128 ? CLASSES[c] == LETTER : Character.isLetter(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c < 128 ? CLASSES[c] == DIGIT : Character.isDigit(c);
+    }
+
+    private static boolean isSpecial(char c) {
+        return c < 128 && SPECIAL[c] != null;
+    }
+
+    private void warn(String message) {
+        if (deferred != null) {
+            deferred.append(message).append(System.lineSeparator());
+        } else {
+            System.err.println(message);
+        }
+    }
+
+    /*
+    The Lexer stops the program here, an error in a pass over bytes came
+    before any byte that isn't ASCII so its warnings are printed first
+     */
+    private void fail(String message, int status) {
+        if (deferred != null) {
+            System.err.print(deferred);
+        }
+        System.err.println(message);
+        System.exit(status);
+    }
+
+    /*
+    A byte that isn't ASCII outside a string literal of a file
+     */
+    private static final class NotAscii extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final NotAscii INSTANCE = new NotAscii();
+
+        private NotAscii() {
+            super(null, null, false, false);
+        }
+    }
+}
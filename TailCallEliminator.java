@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+
+/*
+Turns calls a function makes to itself as its very last statement into
+a jump back to its start, so deep recursion runs in one frame on every
+engine. A call is in tail position when it is the last statement of the
+body, or of a branch of an if that is itself in tail position. Calls
+inside loops never are.
+
+The body is wrapped in
+    repeat
+        $tail := 0
+        ...
+    until $tail = 0
+and a tail call becomes assignments of its arguments to the parameters,
+resetting the locals to the values a new frame starts with, and
+$tail := 1. The frame is reused, so a var parameter has to get itself
+back as the argument for the call to be eliminated, anything else
+would change what it aliases.
+ */
+public class TailCallEliminator {
+
+    private FunctionNode current;
+    private int eliminated;
+
+    public void optimize(ProgramNode pn) throws SyntaxErrorException {
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                optimizeFunction(fn);
+            }
+        }
+    }
+
+    /*
+    Number of calls turned into jumps
+     */
+    public int eliminated() {
+        return eliminated;
+    }
+
+    private void optimizeFunction(FunctionNode fn) throws SyntaxErrorException {
+        current = fn;
+        ArrayList<ArrayList<StatementNode>> blocks = new ArrayList<>();
+        tailBlocks(fn.statements(), blocks);
+        if (blocks.isEmpty()) {
+            return;
+        }
+        ArrayList<VariableNode> locals = new ArrayList<>();
+        for (VariableNode v: fn.vars()) {
+            if (v.isChangeable() || v.getVal() == null) {
+                locals.add(v);
+            }
+        }
+        String flag = Inliner.temp(fn, "tail", "", Token.tokenType.INTEGER);
+        for (ArrayList<StatementNode> block: blocks) {
+            FunctionCallNode call = (FunctionCallNode) block.remove(block.size() - 1);
+            block.addAll(jump(call, locals, flag));
+            eliminated++;
+        }
+        ArrayList<StatementNode> body = new ArrayList<>();
+        body.add(new AssignmentNode(flag, new IntNode(0)));
+        body.addAll(fn.statements());
+        fn.statements().clear();
+        fn.statements().add(new RepeatNode(new BoolCompNode(Token.tokenType.EQUALS, new VariableRefNode(flag), new IntNode(0)), body));
+    }
+
+    /*
+    Collects the blocks that end in a call that can be eliminated
+     */
+    private void tailBlocks(ArrayList<StatementNode> statements, ArrayList<ArrayList<StatementNode>> blocks) {
+        if (statements == null || statements.isEmpty()) {
+            return;
+        }
+        StatementNode last = statements.get(statements.size() - 1);
+        if (last instanceof FunctionCallNode && eliminable((FunctionCallNode) last)) {
+            blocks.add(statements);
+        } else if (last instanceof IfNode) {
+            for (IfNode i = (IfNode) last; i != null; i = i.getElseBlock()) {
+                tailBlocks(i.statements(), blocks);
+            }
+        }
+    }
+
+    private boolean eliminable(FunctionCallNode call) {
+        ArrayList<VariableNode> params = current.getParams();
+        if (!call.getName().equals(current.getName()) || call.getParams().size() != params.size()) {
+            return false;
+        }
+        for (int i = 0; i < params.size(); i++) {
+            Node arg = call.getParams().get(i).getVar();
+            if (params.get(i).isChangeable() && !same(arg, params.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+    The statements that replace the call. Every argument is worked out
+    before any parameter changes, through new variables when more than
+    one parameter does
+     */
+    private ArrayList<StatementNode> jump(FunctionCallNode call, ArrayList<VariableNode> locals, String flag) throws SyntaxErrorException {
+        ArrayList<VariableNode> params = current.getParams();
+        ArrayList<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < params.size(); i++) {
+            if (!same(call.getParams().get(i).getVar(), params.get(i))) {
+                changed.add(i);
+            }
+        }
+        ArrayList<StatementNode> statements = new ArrayList<>();
+        if (changed.size() == 1) {
+            int i = changed.get(0);
+            statements.add(new AssignmentNode(params.get(i).name(), call.getParams().get(i).getVar()));
+        } else {
+            ArrayList<String> temps = new ArrayList<>();
+            for (int i: changed) {
+                VariableNode p = params.get(i);
+                String temp = Inliner.temp(current, "tail", "_" + p.name(), LoopInvariantCodeMotion.declaredType(ClosureInterpreter.normalize(p.type())));
+                statements.add(new AssignmentNode(temp, call.getParams().get(i).getVar()));
+                temps.add(temp);
+            }
+            for (int k = 0; k < changed.size(); k++) {
+                statements.add(new AssignmentNode(params.get(changed.get(k)).name(), new VariableRefNode(temps.get(k))));
+            }
+        }
+        for (VariableNode v: locals) {
+            statements.add(new AssignmentNode(v.name(), Inliner.initial(ClosureInterpreter.normalize(v.type()))));
+        }
+        statements.add(new AssignmentNode(flag, new IntNode(1)));
+        return statements;
+    }
+
+    private static boolean same(Node arg, VariableNode param) {
+        return arg instanceof VariableRefNode && ((VariableRefNode) arg).getArrIndexExpr() == null
+                && ((VariableRefNode) arg).getName().equals(param.name());
+    }
+}
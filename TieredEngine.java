@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+Engine that starts every function in the typed Interpreter and moves the
+ones that get hot to the JvmEngine. A function is hot once it has been
+called callThreshold times or its loops have gone round
+backEdgeThreshold times. The first hot function starts the compile of
+the program, on a background thread unless asked otherwise, while the
+Interpreter carries on. Once the class is ready each hot function
+switches over on its next call: a volatile flag per function, so a call
+runs either entirely interpreted or entirely compiled. Compiled code
+calls the compiled versions of other functions directly.
+
+A loop that goes round backEdgeThreshold times in one run is moved to
+compiled code on the spot (on-stack replacement), so a program that is
+one long loop gets fast without another call. The loop is compiled on
+its own into a function taking every variable of its frame as a var
+parameter. Var parameters of the enclosing function are used through
+their cells as before, the function's own variables are copied into
+JVM locals on the way in and back out when the loop ends. A for loop
+also gets the next value of its control variable and its upper bound.
+The Interpreter carries on with the statement after the loop.
+
+A program that never gets hot never pays for the compile. Given a
+Profile, functions that were hot in earlier runs are compiled up front
+instead of waiting for their calls. Every change
+of tier is written to the log with the time since the engine was made.
+ */
+public class TieredEngine implements ExecutionEngine {
+
+    static final int DEFAULT_CALL_THRESHOLD = 1000;
+    static final int DEFAULT_BACK_EDGE_THRESHOLD = 100_000;
+
+    /*
+    Counters and tier of one function. The counters are only touched by
+    the thread running the program
+     */
+    private static class Tier {
+        final String name;
+        int calls;
+        long backEdges;
+        boolean hot;
+        volatile boolean compiled;
+
+        Tier(String name) {
+            this.name = name;
+        }
+    }
+
+    /*
+    Compiled version of one loop, for on-stack replacement
+     */
+    private static class Osr {
+        final String name;
+        final String label;
+        final ArrayList<Integer> slots;
+        FunctionNode function;
+        volatile JvmEngine engine;
+        boolean requested;
+        boolean entered;
+
+        Osr(String name, String label, ArrayList<Integer> slots) {
+            this.name = name;
+            this.label = label;
+            this.slots = slots;
+        }
+    }
+
+    private final ProgramNode pn;
+    private final Interpreter interpreter;
+    private final int callThreshold;
+    private final int backEdgeThreshold;
+    private final boolean background;
+    private final HashMap<String, Tier> tiers;
+    private final IdentityHashMap<StatementNode, Osr> loops;
+    private final ArrayList<String> log;
+    private final long created;
+    private JvmEngine compiled;
+    private boolean compiling;
+
+    public TieredEngine(ProgramNode pn) throws SyntaxErrorException {
+        this(pn, DEFAULT_CALL_THRESHOLD, DEFAULT_BACK_EDGE_THRESHOLD, true);
+    }
+
+    /*
+    With background false the compile runs on the thread that made the
+    function hot, which then waits for it
+     */
+    public TieredEngine(ProgramNode pn, int callThreshold, int backEdgeThreshold, boolean background) throws SyntaxErrorException {
+        this.pn = pn;
+        this.callThreshold = callThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        this.background = background;
+        created = System.nanoTime();
+        log = new ArrayList<>();
+        tiers = new HashMap<>();
+        loops = new IdentityHashMap<>();
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                tiers.put(fn.getName(), new Tier(fn.getName()));
+            }
+        }
+        interpreter = new Interpreter(pn, true, false, true);
+        interpreter.tiers = this;
+    }
+
+    /*
+    Functions an earlier run in the profile called callThreshold times are
+    hot from the start, so the compile begins before the first call
+     */
+    public TieredEngine(ProgramNode pn, int callThreshold, int backEdgeThreshold, boolean background, Profile profile) throws SyntaxErrorException {
+        this(pn, callThreshold, backEdgeThreshold, background);
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            Tier t = tiers.get(fn.getName());
+            if (t != null && profile.executed(fn) >= callThreshold) {
+                hot(t, profile.executed(fn) + " calls in the profile, compiled eagerly");
+            }
+        }
+    }
+
+    public void run(String name, ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        interpreter.run(name, args);
+    }
+
+    /*
+    Tier changes so far, oldest first
+     */
+    public synchronized List<String> log() {
+        return new ArrayList<>(log);
+    }
+
+    /*
+    Called by the Interpreter before it runs fn. Returns true when fn ran
+    compiled instead
+     */
+    boolean enter(FunctionNode fn, ArrayList<InterpreterDataType> args) throws SyntaxErrorException {
+        Tier t = tiers.get(fn.getName());
+        if (!t.compiled && !t.hot && ++t.calls >= callThreshold) {
+            hot(t, t.calls + " calls");
+        }
+        if (t.compiled) {
+            compiled.run(fn.getName(), args);
+            return true;
+        }
+        return false;
+    }
+
+    /*
+    Called by the Interpreter every time a loop of fn goes round, with
+    the number of times this run of the loop has. Returns true when the
+    rest of the loop ran compiled. from and to are the rest of a for loop.
+    The compile is asked for every backEdgeThreshold iterations until it
+    has been, after that the loop moves as soon as the code is ready
+     */
+    boolean backEdge(FunctionNode fn, StatementNode loop, int iterations, InterpreterDataType[] frame, int from, int to) throws SyntaxErrorException {
+        Tier t = tiers.get(fn.getName());
+        if (!t.hot && ++t.backEdges >= backEdgeThreshold) {
+            hot(t, t.backEdges + " loop iterations");
+        }
+        if (iterations < backEdgeThreshold) {
+            return false;
+        }
+        Osr o = loops.get(loop);
+        if (o == null) {
+            o = prepare(fn, loop);
+            loops.put(loop, o);
+        }
+        if (!o.requested) {
+            if (iterations % backEdgeThreshold != 0) {
+                return false;
+            }
+            o.requested = true;
+            request(o, iterations);
+        }
+        JvmEngine engine = o.engine;
+        if (engine == null) {
+            return false; // Still compiling or failed, try again later
+        }
+        ArrayList<InterpreterDataType> args = new ArrayList<>();
+        for (int slot: o.slots) {
+            args.add(frame[slot]);
+        }
+        if (loop instanceof ForNode) {
+            args.add(new IntegerDataType(from));
+            args.add(new IntegerDataType(to));
+        }
+        if (!o.entered) {
+            o.entered = true;
+            synchronized (this) {
+                log(o.label + " moved to compiled code at iteration " + iterations);
+            }
+        }
+        engine.run(o.name, args);
+        return true;
+    }
+
+    /*
+    Builds the function a loop of fn is compiled into:
+        define $osrN(var $s0, $s1, ... [; $from, $to : integer])
+        variables $l1, ...
+            $l1 := $s1 ...
+            loop, reading $sK for var parameters, $lK for everything else
+            $s1 := $l1 ...
+    Constants become their value
+     */
+    private Osr prepare(FunctionNode fn, StatementNode loop) throws SyntaxErrorException {
+        VariableNode[] slots = fn.slots();
+        HashMap<String, Node> names = new HashMap<>();
+        ArrayList<VariableNode> params = new ArrayList<>();
+        ArrayList<VariableNode> vars = new ArrayList<>();
+        ArrayList<StatementNode> in = new ArrayList<>();
+        ArrayList<StatementNode> out = new ArrayList<>();
+        ArrayList<Integer> passed = new ArrayList<>();
+        for (int k = 0; k < slots.length; k++) {
+            VariableNode v = slots[k];
+            if (!v.isChangeable() && v.getVal() != null) {
+                names.put(v.name(), v.getVal());
+                continue;
+            }
+            Token.tokenType type = LoopInvariantCodeMotion.declaredType(ClosureInterpreter.normalize(v.type()));
+            String cell = "$s" + k;
+            params.add(new VariableNode(cell, type, true));
+            passed.add(k);
+            if (k < fn.getParams().size() && v.isChangeable()) {
+                names.put(v.name(), new VariableRefNode(cell));
+            } else {
+                String local = "$l" + k;
+                vars.add(new VariableNode(local, type, true));
+                in.add(new AssignmentNode(local, new VariableRefNode(cell)));
+                out.add(new AssignmentNode(cell, new VariableRefNode(local)));
+                names.put(v.name(), new VariableRefNode(local));
+            }
+        }
+        StatementNode copy;
+        if (loop instanceof ForNode) {
+            ForNode f = (ForNode) loop;
+            params.add(new VariableNode("$from", Token.tokenType.INTEGER, false));
+            params.add(new VariableNode("$to", Token.tokenType.INTEGER, false));
+            ArrayList<StatementNode> body = new ArrayList<>();
+            for (StatementNode s: f.statements()) {
+                body.add(Inliner.copy(s, names));
+            }
+            copy = new ForNode(Inliner.copy(f.getExpr(), names), new VariableRefNode("$from"), new VariableRefNode("$to"), body);
+        } else {
+            copy = Inliner.copy(loop, names);
+        }
+        ArrayList<StatementNode> body = new ArrayList<>(in);
+        body.add(copy);
+        body.addAll(out);
+        String name = "$osr" + loops.size();
+        String kind = loop instanceof ForNode ? "for" : loop instanceof WhileNode ? "while" : "repeat";
+        Osr o = new Osr(name, fn.getName() + ": " + kind + " loop " + name, passed);
+        o.function = new FunctionNode(o.name, params, vars, body);
+        return o;
+    }
+
+    private synchronized void request(Osr o, int iterations) {
+        log(o.label + " hot after " + iterations + " iterations, compiling it for on-stack replacement");
+        if (background) {
+            Thread compiler = new Thread(() -> compileLoop(o), "tiered-osr-compiler");
+            compiler.setDaemon(true);
+            compiler.start();
+        } else {
+            compileLoop(o);
+        }
+    }
+
+    /*
+    The loop's function goes into a program of its own, next to the
+    functions it might call. Only the new function is resolved and type
+    checked, the rest of the tree is read by the Interpreter meanwhile
+     */
+    private void compileLoop(Osr o) {
+        try {
+            long start = System.nanoTime();
+            ProgramNode program = new ProgramNode();
+            for (FunctionNode f: pn.getFunctions().values()) {
+                if (!(f instanceof BuiltInFunction)) {
+                    program.addFunc(f);
+                }
+            }
+            program.addFunc(o.function);
+            new Resolver().resolveFunction(o.function);
+            new TypeChecker().check(program, o.function);
+            JvmEngine engine = new JvmEngine(program, true);
+            synchronized (this) {
+                o.engine = engine;
+                log(String.format("%s compiled in %.1f ms", o.label, (System.nanoTime() - start) / 1e6));
+            }
+        } catch (SyntaxErrorException | RuntimeException e) {
+            synchronized (this) {
+                log(o.label + " failed to compile, staying interpreted: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void hot(Tier t, String why) {
+        t.hot = true;
+        log(t.name + ": hot after " + why);
+        if (compiled != null) {
+            install(t);
+        } else if (!compiling) {
+            compiling = true;
+            if (background) {
+                Thread compiler = new Thread(this::compileQuietly, "tiered-compiler");
+                compiler.setDaemon(true);
+                compiler.start();
+            } else {
+                compileQuietly();
+            }
+        }
+    }
+
+    /*
+    A program the compiler can't handle keeps running in the Interpreter
+     */
+    private void compileQuietly() {
+        try {
+            compile();
+        } catch (SyntaxErrorException | RuntimeException e) {
+            synchronized (this) {
+                log("compile failed, staying interpreted: " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+    The Interpreter has resolved and type checked the tree already, the
+    compiler only reads it
+     */
+    private void compile() throws SyntaxErrorException {
+        long start = System.nanoTime();
+        JvmEngine engine = new JvmEngine(pn, true);
+        synchronized (this) {
+            compiled = engine;
+            log(String.format("program compiled in %.1f ms", (System.nanoTime() - start) / 1e6));
+            for (Tier t: tiers.values()) {
+                if (t.hot) {
+                    install(t);
+                }
+            }
+        }
+    }
+
+    private void install(Tier t) {
+        t.compiled = true;
+        log(t.name + ": interpreted -> compiled");
+    }
+
+    private void log(String line) {
+        log.add(String.format("[%.1f ms] %s", (System.nanoTime() - created) / 1e6, line));
+    }
+}
@@ -0,0 +1,186 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+Tokens packed into parallel arrays instead of a Token object each. A
+token is its kind and the offset and length of its value in the source,
+so a value only becomes a String when it is asked for. The source is a
+String, or the UTF-8 bytes of a mapped file, where offsets and lengths
+count bytes and a value is decoded when it is asked for. A line number
+is kept once for the run of tokens on it, with the first of them.
+
+A few malformed inputs make the Lexer join text from different places of
+the source, those values, and values too long for a char length, are
+kept in a list and their offset is -1 - their index in it.
+ */
+class TokenBuffer implements TokenSource {
+
+    private static final Token.tokenType[] TYPES = Token.tokenType.values();
+
+    private final String source;
+    private final ByteBuffer bytes;
+    private final ArrayList<String> values;
+    private byte[] kinds;
+    private int[] offsets;
+    private char[] lengths;
+    private int size;
+
+    // lines[k] is the line of the tokens from firsts[k] to firsts[k + 1]
+    private int[] firsts;
+    private int[] lines;
+    private int lineCount;
+    private int lastLine;
+
+    TokenBuffer(String source, int capacity) {
+        this(source, null, capacity);
+    }
+
+    TokenBuffer(ByteBuffer bytes, int capacity) {
+        this(null, bytes, capacity);
+    }
+
+    private TokenBuffer(String source, ByteBuffer bytes, int capacity) {
+        this.source = source;
+        this.bytes = bytes;
+        values = new ArrayList<>();
+        capacity = Math.max(16, capacity);
+        kinds = new byte[capacity];
+        offsets = new int[capacity];
+        lengths = new char[capacity];
+        firsts = new int[16];
+        lines = new int[16];
+    }
+
+    /*
+    A buffer holding the tokens of the original Lexer
+     */
+    static TokenBuffer of(ArrayList<Token> tokens) {
+        TokenBuffer buffer = new TokenBuffer("", tokens.size());
+        for (Token t: tokens) {
+            buffer.add(t.getTokenType(), t.getValue(), t.getLine());
+        }
+        return buffer;
+    }
+
+    /*
+    A token whose value is length chars of the source from offset
+     */
+    void add(Token.tokenType type, int offset, int length, int line) {
+        if (length > Character.MAX_VALUE) {
+            add(type, decode(offset, length), line);
+            return;
+        }
+        if (size == kinds.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            kinds = Arrays.copyOf(kinds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        if (lineCount == 0 || lines[lineCount - 1] != line) {
+            if (lineCount == lines.length) {
+                firsts = Arrays.copyOf(firsts, Math.max(16, lineCount * 2));
+                lines = Arrays.copyOf(lines, Math.max(16, lineCount * 2));
+            }
+            firsts[lineCount] = size;
+            lines[lineCount] = line;
+            lineCount++;
+        }
+        kinds[size] = (byte) type.ordinal();
+        offsets[size] = offset;
+        lengths[size] = (char) length;
+        size++;
+    }
+
+    /*
+    A token whose value isn't in the source as it is
+     */
+    void add(Token.tokenType type, String value, int line) {
+        if (value.isEmpty()) {
+            add(type, 0, 0, line);
+        } else {
+            values.add(value);
+            add(type, -values.size(), 0, line);
+        }
+    }
+
+    /*
+    Drops the room left for more tokens when it is more than half of what
+    is used, less isn't worth copying the arrays for
+     */
+    void trim() {
+        if (kinds.length - size > size >> 1) {
+            kinds = Arrays.copyOf(kinds, size);
+            offsets = Arrays.copyOf(offsets, size);
+            lengths = Arrays.copyOf(lengths, size);
+        }
+        if (lines.length - lineCount > lineCount >> 1) {
+            firsts = Arrays.copyOf(firsts, lineCount);
+            lines = Arrays.copyOf(lines, lineCount);
+        }
+        values.trimToSize();
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public boolean has(int i) {
+        return i < size;
+    }
+
+    Token.tokenType kind(int i) {
+        return TYPES[kinds[i]];
+    }
+
+    /*
+    Tokens are mostly asked for in order, so the run of the last token
+    asked for and the one after it are tried first
+     */
+    int line(int i) {
+        int k = lastLine;
+        if (!(firsts[k] <= i && (k + 1 == lineCount || i < firsts[k + 1]))) {
+            k++;
+            if (!(k < lineCount && firsts[k] <= i && (k + 1 == lineCount || i < firsts[k + 1]))) {
+                k = Arrays.binarySearch(firsts, 0, lineCount, i);
+                k = k >= 0 ? k : -k - 2;
+            }
+        }
+        lastLine = k;
+        return lines[k];
+    }
+
+    String value(int i) {
+        if (offsets[i] < 0) {
+            return values.get(-1 - offsets[i]);
+        }
+        return lengths[i] == 0 ? "" : decode(offsets[i], lengths[i]);
+    }
+
+    private String decode(int offset, int length) {
+        if (bytes == null) {
+            return source.substring(offset, offset + length);
+        }
+        byte[] value = new byte[length];
+        bytes.get(offset, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Token token(int i) {
+        return new Token(value(i), kind(i), line(i));
+    }
+
+    /*
+    The tokens as the original Lexer lists them
+     */
+    ArrayList<Token> tokens() {
+        ArrayList<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(token(i));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+Where the Parser is in its tokens. The cursor keeps the index of the
+current token in the TokenSource, so looking ahead is an array access,
+and only the tokens the Parser looks at are made into Token objects.
+Moving on releases the tokens before the current one, which lets a
+TokenStream drop them.
+The last few made are kept, the Parser peeks at a token and then moves
+on to it, and it gets the same Token both times.
+ */
+class TokenCursor {
+    private static final int KEPT = 8;
+
+    private final TokenSource tokens;
+    private final Token[] made;
+    private final int[] madeAt;
+    private int index;
+
+    TokenCursor(TokenSource tokens) {
+        this.tokens = tokens;
+        made = new Token[KEPT];
+        madeAt = new int[KEPT];
+        java.util.Arrays.fill(madeAt, -1);
+    }
+
+    Token current() {
+        return token(index);
+    }
+
+    /*
+    The token n after the current one, null past the end
+     */
+    Token peek(int n) {
+        int at = index + n;
+        return tokens.has(at) ? token(at) : null;
+    }
+
+    /*
+    True on the last token, the Parser never moves past it
+     */
+    boolean atLast() {
+        return !tokens.has(index + 1);
+    }
+
+    /*
+    Moves to the next token and returns it. Stays on the last token
+     */
+    Token advance() {
+        if (tokens.has(index + 1)) {
+            index++;
+            tokens.release(index);
+        }
+        return token(index);
+    }
+
+    private Token token(int at) {
+        int slot = at % KEPT;
+        if (madeAt[slot] != at) {
+            made[slot] = tokens.token(at);
+            madeAt[slot] = at;
+        }
+        return made[slot];
+    }
+}
@@ -0,0 +1,20 @@
+/*
+Tokens as the Parser's TokenCursor reads them, by their index from the
+first token of the program. A TokenBuffer has them all already, a
+TokenStream lexes them as they are asked for.
+ */
+interface TokenSource {
+
+    /*
+    True if there is a token i
+     */
+    boolean has(int i);
+
+    Token token(int i);
+
+    /*
+    The cursor won't ask for the tokens before i again
+     */
+    default void release(int i) {
+    }
+}
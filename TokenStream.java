@@ -0,0 +1,71 @@
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+Tokens of a source that is read as they are asked for, so a program
+never has to be in memory as a whole, as a String or as tokens. The
+TableLexer reads CHUNK chars at a time, and only the tokens from the
+last one released on are kept.
+ */
+class TokenStream implements TokenSource {
+
+    static final int CHUNK = 8192;
+
+    private final TableLexer lexer;
+
+    // Token i is tokens[i % tokens.length] for first <= i < end
+    private Token[] tokens;
+    private int first;
+    private int end;
+    private boolean ended;
+
+    TokenStream(Reader reader) {
+        lexer = new TableLexer(reader, CHUNK);
+        tokens = new Token[16];
+    }
+
+    /*
+    A channel of UTF-8 text
+     */
+    TokenStream(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean has(int i) {
+        while (i >= end && !ended) {
+            Token t = lexer.next();
+            if (t == null) {
+                ended = true;
+            } else {
+                if (end - first == tokens.length) {
+                    Token[] grown = new Token[tokens.length * 2];
+                    for (int k = first; k < end; k++) {
+                        grown[k % grown.length] = tokens[k % tokens.length];
+                    }
+                    tokens = grown;
+                }
+                tokens[end % tokens.length] = t;
+                end++;
+            }
+        }
+        return i < end;
+    }
+
+    @Override
+    public Token token(int i) {
+        if (i < first || !has(i)) {
+            throw new IndexOutOfBoundsException("Token " + i + " is not in the stream");
+        }
+        return tokens[i % tokens.length];
+    }
+
+    @Override
+    public void release(int i) {
+        for (; first < i && first < end; first++) {
+            tokens[first % tokens.length] = null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Semantic analysis pass that runs after Parser.parse(). Works out the
+static type of every expression from the declared types of the
+variables, stores it on the node and rejects programs whose operands,
+assignments, conditions or call arguments don't fit together. Engines
+then read the stored type instead of looking at values at runtime.
+ */
+public class TypeChecker {
+
+    private ProgramNode pn;
+    private HashMap<String, VariableNode> declarations;
+    private FunctionNode current;
+
+    public void check(ProgramNode pn) throws SyntaxErrorException {
+        this.pn = pn;
+        for (FunctionNode fn: pn.getFunctions().values()) {
+            if (!(fn instanceof BuiltInFunction)) {
+                checkFunction(fn);
+            }
+        }
+    }
+
+    /*
+    Checks a function added to a program that was checked already
+     */
+    public void check(ProgramNode pn, FunctionNode fn) throws SyntaxErrorException {
+        this.pn = pn;
+        checkFunction(fn);
+    }
+
+    public void checkFunction(FunctionNode fn) throws SyntaxErrorException {
+        current = fn;
+        declarations = new HashMap<>();
+        for (VariableNode v: fn.getParams()) {
+            declarations.putIfAbsent(v.name(), v);
+        }
+        for (VariableNode v: fn.vars()) {
+            declarations.putIfAbsent(v.name(), v);
+        }
+        checkBlock(fn.statements());
+    }
+
+    private void checkBlock(ArrayList<StatementNode> statements) throws SyntaxErrorException {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode s: statements) {
+            if (s instanceof AssignmentNode) {
+                AssignmentNode a = (AssignmentNode) s;
+                Token.tokenType target = typeOf(a.getTarget());
+                Token.tokenType val = typeOf(a.getVal());
+                if (target != val) {
+                    throw new SyntaxErrorException("Cannot assign " + val + " to " + a.getTarget().getName() + " (" + target + ")");
+                }
+            } else if (s instanceof IfNode) {
+                for (IfNode i = (IfNode) s; i != null; i = i.getElseBlock()) {
+                    expect(i.getCondition(), Token.tokenType.BOOLEAN, "If condition");
+                    checkBlock(i.statements());
+                }
+            } else if (s instanceof ForNode) {
+                ForNode f = (ForNode) s;
+                expect(f.getExpr(), Token.tokenType.INTEGERLIT, "For loop variable");
+                expect(f.getFrom(), Token.tokenType.INTEGERLIT, "For loop start");
+                expect(f.getTo(), Token.tokenType.INTEGERLIT, "For loop end");
+                checkBlock(f.statements());
+            } else if (s instanceof WhileNode) {
+                expect(((WhileNode) s).getCondition(), Token.tokenType.BOOLEAN, "While condition");
+                checkBlock(((WhileNode) s).statements());
+            } else if (s instanceof RepeatNode) {
+                expect(((RepeatNode) s).getCondition(), Token.tokenType.BOOLEAN, "Repeat condition");
+                checkBlock(((RepeatNode) s).statements());
+            } else if (s instanceof FunctionCallNode) {
+                checkCall((FunctionCallNode) s);
+            }
+        }
+    }
+
+    /*
+    Built-ins take any number and type of arguments, user functions must
+    get one argument of the declared type per parameter
+     */
+    private void checkCall(FunctionCallNode fc) throws SyntaxErrorException {
+        FunctionNode fn = pn.getFunctions().get(fc.getName());
+        if (fn == null) {
+            throw new SyntaxErrorException("Function " + fc.getName() + " is not defined.");
+        }
+        ArrayList<ParameterNode> args = fc.getParams();
+        for (ParameterNode p: args) {
+            typeOf(p.getVar());
+        }
+        if (fn instanceof BuiltInFunction) {
+            return;
+        }
+        ArrayList<VariableNode> params = fn.getParams();
+        if (args.size() != params.size()) {
+            throw new SyntaxErrorException("Incorrect number of parameters in " + fc.getName() + ".");
+        }
+        for (int i = 0; i < params.size(); i++) {
+            expect(args.get(i).getVar(), ClosureInterpreter.normalize(params.get(i).type()), "Argument " + (i + 1) + " of " + fc.getName());
+        }
+    }
+
+    private void expect(Node n, Token.tokenType type, String what) throws SyntaxErrorException {
+        Token.tokenType t = typeOf(n);
+        if (t != type) {
+            throw new SyntaxErrorException(what + " must be " + type + ", not " + t);
+        }
+    }
+
+    /*
+    Type of an expression, stored on every node on the way. Math needs two
+    operands of the same type and only + works on Strings. Integers and
+    reals can be compared with each other, Strings only for equality
+     */
+    private Token.tokenType typeOf(Node n) throws SyntaxErrorException {
+        Token.tokenType t;
+        if (n instanceof IntNode) {
+            t = Token.tokenType.INTEGERLIT;
+        } else if (n instanceof RealNode) {
+            t = Token.tokenType.REALLIT;
+        } else if (n instanceof StringNode) {
+            t = Token.tokenType.STRINGLIT;
+        } else if (n instanceof CharNode) {
+            t = Token.tokenType.CHARLIT;
+        } else if (n instanceof BooleanNode) {
+            t = Token.tokenType.BOOLEAN;
+        } else if (n instanceof VariableRefNode) {
+            VariableRefNode v = (VariableRefNode) n;
+            VariableNode decl = declarations.get(v.getName());
+            if (decl == null) {
+                throw new SyntaxErrorException("Variable " + v.getName() + " does not exist in function " + current.getName() + ".");
+            }
+            if (v.getArrIndexExpr() != null) {
+                expect(v.getArrIndexExpr(), Token.tokenType.INTEGERLIT, "Array index");
+            }
+            t = ClosureInterpreter.normalize(decl.type());
+        } else if (n instanceof MathOpNode) {
+            MathOpNode m = (MathOpNode) n;
+            Token.tokenType l = typeOf(m.left());
+            Token.tokenType r = typeOf(m.right());
+            if (l == r && ClosureInterpreter.isNumeric(l)) {
+                t = l;
+            } else if (l == Token.tokenType.STRINGLIT && r == Token.tokenType.STRINGLIT && m.op == MathOpNode.MathOp.ADD) {
+                t = l;
+            } else {
+                throw new SyntaxErrorException("Invalid types for operands of MathOpNode: " + m);
+            }
+        } else if (n instanceof BoolCompNode) {
+            BoolCompNode b = (BoolCompNode) n;
+            Token.tokenType l = typeOf(b.left());
+            Token.tokenType r = typeOf(b.right());
+            boolean equality = b.condition() == Token.tokenType.EQUALS || b.condition() == Token.tokenType.NOTEQ;
+            if (!(ClosureInterpreter.isNumeric(l) && ClosureInterpreter.isNumeric(r)) && !(l == Token.tokenType.STRINGLIT && r == Token.tokenType.STRINGLIT && equality)) {
+                throw new SyntaxErrorException("Incompatible operands for " + b.condition() + ": " + b);
+            }
+            t = Token.tokenType.BOOLEAN;
+        } else {
+            throw new SyntaxErrorException("Illegal Node type in expression: " + n);
+        }
+        n.setStaticType(t);
+        return t;
+    }
+}